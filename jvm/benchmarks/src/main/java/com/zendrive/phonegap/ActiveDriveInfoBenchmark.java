@@ -0,0 +1,62 @@
+package com.zendrive.phonegap;
+
+import com.zendrive.sdk.DriveStartInfo;
+import com.zendrive.sdk.LocationPoint;
+
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link ZendriveManager#getActiveDriveInfo} during a drive, served from the cached snapshot,
+ * and {@link ZendriveManager#refreshActiveDrive}, which asks the SDK again.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = PluginFixture.FORK_ARGS)
+public class ActiveDriveInfoBenchmark {
+    private PluginFixture fixture;
+    private ZendriveManager manager;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        fixture = new PluginFixture();
+        manager = fixture.manager();
+        DriveStartInfo start = new DriveStartInfo();
+        start.driveId = "benchmark-drive";
+        start.startTimeMillis = System.currentTimeMillis();
+        start.startLocation = new LocationPoint(37.7749, -122.4194);
+        start.trackingId = "benchmark-tracking";
+        manager.onDriveStart(start);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        fixture.tearDown();
+    }
+
+    @Benchmark
+    public JSONObject cached() {
+        return manager.getActiveDriveInfo(fixture.activity);
+    }
+
+    @Benchmark
+    public ActiveDriveSnapshot refresh() {
+        return manager.refreshActiveDrive();
+    }
+}
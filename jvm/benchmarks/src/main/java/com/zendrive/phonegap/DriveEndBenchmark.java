@@ -0,0 +1,72 @@
+package com.zendrive.phonegap;
+
+import com.zendrive.sdk.EstimatedDriveInfo;
+
+import org.apache.cordova.PluginResult;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link ZendriveManager#onDriveEnd} with a live end-of-drive listener: the event is built,
+ * its waypoints simplified and encoded, and the batch handed to the listener's callback.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = PluginFixture.FORK_ARGS)
+public class DriveEndBenchmark {
+    @Param({"100", "1000", "10000", "100000"})
+    public int waypoints;
+
+    @Param({"OBJECTS", "COLUMNAR", "DELTA"})
+    public String encoding;
+
+    // Tolerance of the waypoint simplification, 0 for none.
+    @Param({"0", "5"})
+    public double toleranceMeters;
+
+    private PluginFixture fixture;
+    private PluginFixture.Call listener;
+    private EstimatedDriveInfo drive;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        fixture = new PluginFixture();
+        fixture.callSucceeding("setWaypointEncoding", new JSONArray().put(encoding));
+        Object simplification = toleranceMeters > 0
+                ? new JSONObject().put(WaypointSimplifier.TOLERANCE_METERS_KEY, toleranceMeters) : JSONObject.NULL;
+        fixture.callSucceeding("setWaypointSimplification", new JSONArray().put(simplification));
+        listener = new PluginFixture.Call();
+        fixture.plugin.execute("setProcessEndOfDriveDelegateCallback", new JSONArray().put(true), listener);
+        listener.await();
+        drive = PluginFixture.drive(waypoints);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        fixture.tearDown();
+    }
+
+    @Benchmark
+    public PluginResult onDriveEnd() {
+        fixture.manager().onDriveEnd(drive);
+        return listener.getLastResult();
+    }
+}
@@ -0,0 +1,309 @@
+package com.zendrive.phonegap;
+
+import com.zendrive.sdk.AccidentInfo;
+import com.zendrive.sdk.AnalyzedDriveInfo;
+import com.zendrive.sdk.DriveInfo;
+import com.zendrive.sdk.DriveResumeInfo;
+import com.zendrive.sdk.DriveStartInfo;
+import com.zendrive.sdk.EstimatedDriveInfo;
+import com.zendrive.sdk.LocationPoint;
+import com.zendrive.sdk.LocationPointWithTimestamp;
+import com.zendrive.sdk.ZendriveAccidentConfidence;
+import com.zendrive.sdk.ZendriveDriveScore;
+import com.zendrive.sdk.ZendriveDriveType;
+import com.zendrive.sdk.ZendriveInsurancePeriod;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A timeline of SDK drive events for {@link SimulatedZendriveSdk} to replay, either recorded
+ * ({@link #fromJson}) or generated ({@link #synthetic}). Every event carries the SDK object the
+ * broadcast receiver would get and its offset from the start of the trace.
+ */
+final class DriveTrace {
+
+    enum Type {
+        DRIVE_START("driveStart"),
+        DRIVE_RESUME("driveResume"),
+        DRIVE_END("driveEnd"),
+        DRIVE_ANALYZED("driveAnalyzed"),
+        ACCIDENT("accident");
+
+        final String name;
+
+        Type(String name) {
+            this.name = name;
+        }
+
+        static Type fromString(String name) {
+            for (Type type : values()) {
+                if (type.name.equals(name)) {
+                    return type;
+                }
+            }
+            throw new IllegalArgumentException("Unknown trace event type: " + name);
+        }
+    }
+
+    static final class Event {
+        final Type type;
+        final long offsetMillis;
+        // DriveStartInfo, DriveResumeInfo, EstimatedDriveInfo, AnalyzedDriveInfo or AccidentInfo.
+        final Object info;
+
+        Event(Type type, long offsetMillis, Object info) {
+            this.type = type;
+            this.offsetMillis = offsetMillis;
+            this.info = info;
+        }
+    }
+
+    /**
+     * Shape of a generated trace. Drives follow each other, each one heading east at a constant
+     * speed with a waypoint every {@link #waypointIntervalMillis}.
+     */
+    static final class SyntheticOptions {
+        int driveCount = 10;
+        long driveDurationMillis = 15 * 60 * 1000;
+        long gapMillis = 5 * 60 * 1000;
+        long waypointIntervalMillis = 1000;
+        // Time from the end of a drive until it is analyzed; negative for no analyzed events.
+        long analyzedDelayMillis = 60 * 1000;
+        double speedMetersPerSecond = 15;
+        double startLatitude = 37.7749;
+        double startLongitude = -122.4194;
+        // Every n-th drive gets a resume or an accident half-way; 0 for none.
+        int resumeEvery = 0;
+        int accidentEvery = 0;
+        int insurancePeriod = 1;
+        String sessionId;
+        long baseTimeMillis = System.currentTimeMillis();
+
+        static SyntheticOptions fromJson(JSONObject json) {
+            SyntheticOptions options = new SyntheticOptions();
+            if (json == null) {
+                return options;
+            }
+            options.driveCount = json.optInt("driveCount", options.driveCount);
+            options.driveDurationMillis = json.optLong("driveDurationMillis", options.driveDurationMillis);
+            options.gapMillis = json.optLong("gapMillis", options.gapMillis);
+            options.waypointIntervalMillis = Math.max(1,
+                    json.optLong("waypointIntervalMillis", options.waypointIntervalMillis));
+            options.analyzedDelayMillis = json.optLong("analyzedDelayMillis", options.analyzedDelayMillis);
+            options.speedMetersPerSecond = json.optDouble("speedMetersPerSecond", options.speedMetersPerSecond);
+            options.startLatitude = json.optDouble("startLatitude", options.startLatitude);
+            options.startLongitude = json.optDouble("startLongitude", options.startLongitude);
+            options.resumeEvery = json.optInt("resumeEvery", options.resumeEvery);
+            options.accidentEvery = json.optInt("accidentEvery", options.accidentEvery);
+            options.insurancePeriod = json.optInt("insurancePeriod", options.insurancePeriod);
+            options.sessionId = json.optString("sessionId", null);
+            options.baseTimeMillis = json.optLong("baseTimeMillis", options.baseTimeMillis);
+            return options;
+        }
+    }
+
+    private final List<Event> events;
+
+    private DriveTrace(List<Event> events) {
+        Collections.sort(events, (a, b) -> Long.compare(a.offsetMillis, b.offsetMillis));
+        this.events = Collections.unmodifiableList(events);
+    }
+
+    List<Event> getEvents() {
+        return events;
+    }
+
+    static DriveTrace synthetic(SyntheticOptions options) {
+        List<Event> events = new ArrayList<>();
+        ZendriveInsurancePeriod period = toPeriod(options.insurancePeriod);
+        double latitude = options.startLatitude;
+        double longitude = options.startLongitude;
+        for (int i = 0; i < options.driveCount; i++) {
+            long offset = i * (options.driveDurationMillis + options.gapMillis);
+            long start = options.baseTimeMillis + offset;
+            long end = start + options.driveDurationMillis;
+            String driveId = "sim-" + options.baseTimeMillis + "-" + i;
+            String trackingId = period != null ? "sim-tracking-" + i : null;
+
+            List<LocationPointWithTimestamp> waypoints = new ArrayList<>();
+            double degreesPerStep = options.speedMetersPerSecond * options.waypointIntervalMillis / 1000
+                    / GeoMath.metersPerDegreeLongitude(latitude);
+            for (long t = start; t <= end; t += options.waypointIntervalMillis) {
+                waypoints.add(new LocationPointWithTimestamp(new LocationPoint(latitude, longitude), t));
+                longitude += degreesPerStep;
+            }
+
+            DriveStartInfo startInfo = new DriveStartInfo();
+            startInfo.driveId = driveId;
+            startInfo.startTimeMillis = start;
+            startInfo.startLocation = waypoints.get(0).location;
+            startInfo.trackingId = trackingId;
+            startInfo.sessionId = options.sessionId;
+            startInfo.insurancePeriod = period;
+            events.add(new Event(Type.DRIVE_START, offset, startInfo));
+
+            long halfWay = offset + options.driveDurationMillis / 2;
+            if (options.resumeEvery > 0 && i % options.resumeEvery == 0) {
+                DriveResumeInfo resumeInfo = new DriveResumeInfo();
+                resumeInfo.driveId = driveId;
+                resumeInfo.startTimeMillis = start;
+                resumeInfo.trackingId = trackingId;
+                resumeInfo.sessionId = options.sessionId;
+                resumeInfo.insurancePeriod = period;
+                events.add(new Event(Type.DRIVE_RESUME, halfWay, resumeInfo));
+            }
+            if (options.accidentEvery > 0 && i % options.accidentEvery == 0) {
+                AccidentInfo accidentInfo = new AccidentInfo();
+                accidentInfo.accidentId = driveId + "-accident";
+                accidentInfo.driveId = driveId;
+                accidentInfo.timestampMillis = start + options.driveDurationMillis / 2;
+                accidentInfo.location = waypoints.get(waypoints.size() / 2).location;
+                accidentInfo.confidence = ZendriveAccidentConfidence.HIGH;
+                accidentInfo.confidenceNumber = 90;
+                accidentInfo.trackingId = trackingId;
+                accidentInfo.sessionId = options.sessionId;
+                events.add(new Event(Type.ACCIDENT, halfWay, accidentInfo));
+            }
+
+            double distance = options.speedMetersPerSecond * options.driveDurationMillis / 1000;
+            EstimatedDriveInfo endInfo = new EstimatedDriveInfo();
+            fillDrive(endInfo, driveId, start, end, distance, options, trackingId, period, waypoints);
+            events.add(new Event(Type.DRIVE_END, offset + options.driveDurationMillis, endInfo));
+            if (options.analyzedDelayMillis >= 0) {
+                AnalyzedDriveInfo analyzedInfo = new AnalyzedDriveInfo();
+                fillDrive(analyzedInfo, driveId, start, end, distance, options, trackingId, period, waypoints);
+                analyzedInfo.score = new ZendriveDriveScore();
+                analyzedInfo.score.zendriveScore = 80;
+                events.add(new Event(Type.DRIVE_ANALYZED,
+                        offset + options.driveDurationMillis + options.analyzedDelayMillis, analyzedInfo));
+            }
+        }
+        return new DriveTrace(events);
+    }
+
+    private static void fillDrive(DriveInfo info, String driveId, long start, long end, double distance,
+                                  SyntheticOptions options, String trackingId, ZendriveInsurancePeriod period,
+                                  List<LocationPointWithTimestamp> waypoints) {
+        info.driveId = driveId;
+        info.startTimeMillis = start;
+        info.endTimeMillis = end;
+        info.distanceMeters = distance;
+        info.averageSpeed = options.speedMetersPerSecond;
+        info.maxSpeed = options.speedMetersPerSecond;
+        info.trackingId = trackingId;
+        info.sessionId = options.sessionId;
+        info.insurancePeriod = period;
+        info.driveType = ZendriveDriveType.DRIVE;
+        info.waypoints = waypoints;
+    }
+
+    /**
+     * Reads a recorded trace: an array of {@code {"type":..,"at":<offset millis>,..}} objects whose
+     * other fields use the names of the plugin's own events (driveId, startTimestamp, waypoints
+     * as {@code {latitude, longitude, timestamp}} objects, and so on).
+     */
+    static DriveTrace fromJson(JSONArray json) throws JSONException {
+        List<Event> events = new ArrayList<>(json.length());
+        for (int i = 0; i < json.length(); i++) {
+            JSONObject event = json.getJSONObject(i);
+            Type type = Type.fromString(event.getString("type"));
+            long offset = event.optLong("at", 0);
+            String driveId = event.optString(ZendriveManager.DRIVE_ID_KEY, null);
+            String trackingId = event.optString(ZendriveManager.TRACKING_ID_KEY, null);
+            String sessionId = event.optString(ZendriveManager.SESSION_ID_KEY, null);
+            ZendriveInsurancePeriod period = toPeriod(event.optInt(ZendriveManager.INSURANCE_PERIOD_KEY, 0));
+            long start = event.optLong(ZendriveManager.START_TIMESTAMP_KEY, 0);
+            switch (type) {
+                case DRIVE_START: {
+                    DriveStartInfo info = new DriveStartInfo();
+                    info.driveId = driveId;
+                    info.startTimeMillis = start;
+                    info.startLocation = toLocation(event.optJSONObject(ZendriveManager.START_LOCATION_KEY));
+                    info.trackingId = trackingId;
+                    info.sessionId = sessionId;
+                    info.insurancePeriod = period;
+                    events.add(new Event(type, offset, info));
+                    break;
+                }
+                case DRIVE_RESUME: {
+                    DriveResumeInfo info = new DriveResumeInfo();
+                    info.driveId = driveId;
+                    info.startTimeMillis = start;
+                    info.trackingId = trackingId;
+                    info.sessionId = sessionId;
+                    info.insurancePeriod = period;
+                    events.add(new Event(type, offset, info));
+                    break;
+                }
+                case DRIVE_END:
+                case DRIVE_ANALYZED: {
+                    DriveInfo info = type == Type.DRIVE_END ? new EstimatedDriveInfo() : new AnalyzedDriveInfo();
+                    info.driveId = driveId;
+                    info.startTimeMillis = start;
+                    info.endTimeMillis = event.optLong(ZendriveManager.END_TIMESTAMP_KEY, start);
+                    info.distanceMeters = event.optDouble(ZendriveManager.DISTANCE_KEY, 0);
+                    info.averageSpeed = event.optDouble(ZendriveManager.AVERAGE_SPEED_KEY, 0);
+                    info.maxSpeed = event.optDouble(ZendriveManager.MAX_SPEED_KEY, 0);
+                    info.trackingId = trackingId;
+                    info.sessionId = sessionId;
+                    info.insurancePeriod = period;
+                    info.driveType = ZendriveDriveType.DRIVE;
+                    info.waypoints = toWaypoints(event.optJSONArray(ZendriveManager.WAYPOINTS_KEY));
+                    events.add(new Event(type, offset, info));
+                    break;
+                }
+                case ACCIDENT: {
+                    AccidentInfo info = new AccidentInfo();
+                    info.accidentId = event.optString(ZendriveManager.ACCIDENT_ID_KEY, null);
+                    info.driveId = driveId;
+                    info.timestampMillis = event.optLong(ZendriveManager.TIMESTAMP_KEY, 0);
+                    info.location = toLocation(event.optJSONObject(ZendriveManager.LOCATION_KEY));
+                    info.confidence = ZendriveAccidentConfidence.valueOf(
+                            event.optString(ZendriveManager.CONFIDENCE_KEY, ZendriveAccidentConfidence.HIGH.name()));
+                    info.confidenceNumber = event.optInt(ZendriveManager.CONFIDENCE_NUMBER_KEY, 0);
+                    info.trackingId = trackingId;
+                    info.sessionId = sessionId;
+                    events.add(new Event(type, offset, info));
+                    break;
+                }
+            }
+        }
+        return new DriveTrace(events);
+    }
+
+    private static LocationPoint toLocation(JSONObject json) {
+        if (json == null) {
+            return null;
+        }
+        return new LocationPoint(json.optDouble(ZendriveManager.LATITUDE_KEY, 0),
+                json.optDouble(ZendriveManager.LONGITUDE_KEY, 0));
+    }
+
+    private static List<LocationPointWithTimestamp> toWaypoints(JSONArray json) throws JSONException {
+        List<LocationPointWithTimestamp> waypoints = new ArrayList<>();
+        if (json == null) {
+            return waypoints;
+        }
+        for (int i = 0; i < json.length(); i++) {
+            JSONObject point = json.getJSONObject(i);
+            waypoints.add(new LocationPointWithTimestamp(toLocation(point),
+                    point.optLong(ZendriveManager.TIMESTAMP_KEY, 0)));
+        }
+        return waypoints;
+    }
+
+    static ZendriveInsurancePeriod toPeriod(int period) {
+        switch (period) {
+            case 1: return ZendriveInsurancePeriod.Period1;
+            case 2: return ZendriveInsurancePeriod.Period2;
+            case 3: return ZendriveInsurancePeriod.Period3;
+            default: return null;
+        }
+    }
+}
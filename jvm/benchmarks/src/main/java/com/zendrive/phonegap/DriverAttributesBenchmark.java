@@ -0,0 +1,64 @@
+package com.zendrive.phonegap;
+
+import com.zendrive.sdk.ZendriveDriverAttributes;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link ZendriveCordovaPlugin#getDriverAttrsFromJsonObject} on a setup configuration with
+ * the standard driver attributes and {@link #customAttributes} custom ones.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DriverAttributesBenchmark {
+    @Param({"10", "100", "1000", "10000"})
+    public int customAttributes;
+
+    private final ZendriveCordovaPlugin plugin = new ZendriveCordovaPlugin();
+    private JSONObject configuration;
+
+    @Setup(Level.Trial)
+    public void setUp() throws JSONException {
+        JSONObject custom = new JSONObject();
+        for (int i = 0; i < customAttributes; i++) {
+            custom.put("attribute" + i, "value of attribute " + i);
+        }
+        JSONObject attributes = new JSONObject()
+                .put("firstName", "Jane")
+                .put("lastName", "Doe")
+                .put("email", "jane.doe@example.com")
+                .put("group", "benchmark")
+                .put("phoneNumber", "+15555550100")
+                .put("driverStartDate", 1500000000L)
+                .put("customAttributes", custom);
+        configuration = new JSONObject()
+                .put("applicationKey", "benchmark-key")
+                .put("driverId", "benchmark-driver")
+                .put("driveDetectionMode", 0)
+                .put("driverAttributes", attributes);
+    }
+
+    @Benchmark
+    public ZendriveDriverAttributes getDriverAttrsFromJsonObject() throws JSONException {
+        return plugin.getDriverAttrsFromJsonObject(configuration);
+    }
+}
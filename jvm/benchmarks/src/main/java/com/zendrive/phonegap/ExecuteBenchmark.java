@@ -0,0 +1,142 @@
+package com.zendrive.phonegap;
+
+import com.zendrive.sdk.EstimatedDriveInfo;
+
+import org.apache.cordova.PluginResult;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link ZendriveCordovaPlugin#execute} for every action, from the call until its first result,
+ * including the hop to the serial executor or the thread pool and, for SDK operations, the
+ * simulated SDK's callback thread. Listener registrations reuse their ids, so each call
+ * replaces the previous one.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = PluginFixture.FORK_ARGS)
+public class ExecuteBenchmark {
+    private static final String DRIVE_ID = "benchmark-drive";
+    private static final int HISTORY_DRIVES = 50;
+    private static final int HISTORY_WAYPOINTS = 1000;
+    private static final long HISTORY_TIMEOUT_SECONDS = 30;
+
+    @Param({
+            "setup", "teardown", "startDrive", "getActiveDriveInfo", "setActiveDriveChangeCallback",
+            "stopDrive", "startSession", "stopSession", "acknowledgeAccident", "setDriveDetectionMode",
+            "setProcessStartOfDriveDelegateCallback", "setProcessEndOfDriveDelegateCallback",
+            "addEventListener", "removeEventListener", "setEventBufferCapacity", "setWaypointEncoding",
+            "setWaypointSimplification", "pickupPassenger", "dropoffPassenger", "acceptPassengerRequest",
+            "cancelPassengerRequest", "goOnDuty", "goOffDuty", "requestPermissions", "getMetrics",
+            "setLiveDriveNotification", "getSettingsHealth", "getShiftTotals", "queryDrives",
+            "getDriveWaypoints", "batch"
+    })
+    public String action;
+
+    private PluginFixture fixture;
+    private JSONArray args;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        fixture = new PluginFixture();
+        DriveHistoryStore history = DriveHistoryStore.getInstance(fixture.activity);
+        for (int i = HISTORY_DRIVES - 1; i >= 0; i--) {
+            EstimatedDriveInfo drive = PluginFixture.drive(HISTORY_WAYPOINTS);
+            drive.driveId = i == 0 ? DRIVE_ID : DRIVE_ID + "-" + i;
+            drive.startTimeMillis -= i * 3600 * 1000L;
+            history.record(drive, false);
+        }
+        // Drives are written in order on the store's own thread; wait for the last one.
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(HISTORY_TIMEOUT_SECONDS);
+        while (history.getWaypoints(DRIVE_ID, DriveInfoEncoder.WaypointEncoding.OBJECTS) == null) {
+            if (System.nanoTime() > deadline) {
+                throw new IllegalStateException("Drive history not written within " + HISTORY_TIMEOUT_SECONDS + " s");
+            }
+            Thread.sleep(10);
+        }
+        args = argsFor(action);
+        fixture.callSucceeding(action, args);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        fixture.tearDown();
+    }
+
+    @Benchmark
+    public PluginResult execute() throws JSONException, InterruptedException {
+        return fixture.call(action, args);
+    }
+
+    private static JSONArray argsFor(String action) throws JSONException {
+        switch (action) {
+            case "setup":
+                return new JSONArray().put(new JSONObject()
+                        .put("applicationKey", "benchmark-key")
+                        .put("driverId", "benchmark-driver")
+                        .put("driveDetectionMode", 0));
+            case "startDrive":
+            case "stopDrive":
+                return new JSONArray().put("benchmark-tracking");
+            case "startSession":
+                return new JSONArray().put("benchmark-session");
+            case "acknowledgeAccident":
+                return new JSONArray().put("benchmark-accident");
+            case "setDriveDetectionMode":
+                return new JSONArray().put(0);
+            case "setActiveDriveChangeCallback":
+                return new JSONArray().put(true);
+            case "setProcessStartOfDriveDelegateCallback":
+            case "setProcessEndOfDriveDelegateCallback":
+                return new JSONArray().put(true).put(JSONObject.NULL);
+            case "addEventListener":
+                return new JSONArray().put(ZendriveManager.EVENT_DRIVE_END).put("benchmark")
+                        .put(JSONObject.NULL).put(JSONObject.NULL);
+            case "removeEventListener":
+                return new JSONArray().put(ZendriveManager.EVENT_DRIVE_END).put("benchmark");
+            case "setEventBufferCapacity":
+                return new JSONArray().put(PendingEventBuffer.DEFAULT_CAPACITY);
+            case "setWaypointEncoding":
+                return new JSONArray().put("delta");
+            case "setWaypointSimplification":
+                return new JSONArray().put(new JSONObject().put(WaypointSimplifier.TOLERANCE_METERS_KEY, 5));
+            case "getMetrics":
+                return new JSONArray().put(false);
+            case "setLiveDriveNotification":
+                return new JSONArray().put(true).put(15);
+            case "queryDrives":
+                return new JSONArray().put(new JSONObject());
+            case "getDriveWaypoints":
+                return new JSONArray().put(DRIVE_ID).put(JSONObject.NULL);
+            case PluginBatch.ACTION:
+                return new JSONArray()
+                        .put(new JSONArray()
+                                .put(new JSONObject().put("action", "startSession")
+                                        .put("args", new JSONArray().put("benchmark-session")))
+                                .put(new JSONObject().put("action", "getActiveDriveInfo"))
+                                .put(new JSONObject().put("action", "stopSession")))
+                        .put(new JSONObject().put("stopOnError", true));
+            default:
+                return new JSONArray();
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package com.zendrive.phonegap;
+
+import android.app.Activity;
+import android.content.Context;
+
+import com.zendrive.sdk.EstimatedDriveInfo;
+
+import org.apache.cordova.CallbackContext;
+import org.apache.cordova.CordovaInterface;
+import org.apache.cordova.CordovaPlugin;
+import org.apache.cordova.PluginResult;
+import org.json.JSONArray;
+import org.json.JSONException;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An initialized plugin on the simulated SDK, as the benchmarks' starting point. The plugin
+ * and its singletons live in this JVM, so every benchmark runs in its own fork. The plugin's
+ * executors are static and never shut down, as on a device, so forks are told not to wait for
+ * them to exit ({@link #FORK_ARGS}).
+ */
+final class PluginFixture {
+    static final String FORK_ARGS = "-Djmh.shutdownTimeout=0";
+    private static final long CALL_TIMEOUT_SECONDS = 10;
+
+    final Activity activity = new Activity();
+    final SimulatedZendriveSdk sdk = new SimulatedZendriveSdk(activity);
+    final ZendriveCordovaPlugin plugin = new ZendriveCordovaPlugin();
+    private final ExecutorService threadPool = Executors.newCachedThreadPool();
+
+    /**
+     * Completes once the plugin has sent its first result.
+     */
+    static final class Call extends CallbackContext {
+        private final CountDownLatch answered = new CountDownLatch(1);
+
+        Call() {
+            super("benchmark", null);
+        }
+
+        @Override
+        public void sendPluginResult(PluginResult pluginResult) {
+            super.sendPluginResult(pluginResult);
+            answered.countDown();
+        }
+
+        PluginResult await() throws InterruptedException {
+            if (!answered.await(CALL_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                throw new IllegalStateException("No result within " + CALL_TIMEOUT_SECONDS + " s");
+            }
+            return getLastResult();
+        }
+    }
+
+    PluginFixture() {
+        ZendriveSdk.install(sdk);
+        plugin.cordova = new CordovaInterface() {
+            @Override
+            public Activity getActivity() {
+                return activity;
+            }
+
+            @Override
+            public Context getContext() {
+                return activity;
+            }
+
+            @Override
+            public ExecutorService getThreadPool() {
+                return threadPool;
+            }
+
+            @Override
+            public void requestPermission(CordovaPlugin plugin, int requestCode, String permission) {
+            }
+
+            @Override
+            public boolean hasPermission(String permission) {
+                return true;
+            }
+        };
+        plugin.OverrideContext = activity;
+        plugin.manuallyInitializePlugin();
+    }
+
+    ZendriveManager manager() {
+        return ZendriveManager.getSharedInstance();
+    }
+
+    /**
+     * Runs {@code action} and waits for its first result.
+     */
+    PluginResult call(String action, JSONArray args) throws JSONException, InterruptedException {
+        Call call = new Call();
+        if (!plugin.execute(action, args, call)) {
+            throw new IllegalArgumentException("Unknown action " + action);
+        }
+        return call.await();
+    }
+
+    /**
+     * Like {@link #call}, but fails unless the result is a success.
+     */
+    PluginResult callSucceeding(String action, JSONArray args) throws JSONException, InterruptedException {
+        PluginResult result = call(action, args);
+        if (result.getStatus() == PluginResult.Status.ERROR.ordinal()) {
+            throw new IllegalStateException(action + " failed: " + result.getMessage());
+        }
+        return result;
+    }
+
+    /**
+     * A drive of {@code waypointCount} waypoints, one a second, as the SDK reports its end.
+     */
+    static EstimatedDriveInfo drive(int waypointCount) {
+        DriveTrace.SyntheticOptions options = new DriveTrace.SyntheticOptions();
+        options.driveCount = 1;
+        options.driveDurationMillis = (waypointCount - 1) * options.waypointIntervalMillis;
+        options.analyzedDelayMillis = -1;
+        for (DriveTrace.Event event : DriveTrace.synthetic(options).getEvents()) {
+            if (event.type == DriveTrace.Type.DRIVE_END) {
+                return (EstimatedDriveInfo) event.info;
+            }
+        }
+        throw new IllegalStateException("Trace has no drive end");
+    }
+
+    void tearDown() {
+        plugin.onDestroy();
+        sdk.shutdown();
+        threadPool.shutdown();
+    }
+}
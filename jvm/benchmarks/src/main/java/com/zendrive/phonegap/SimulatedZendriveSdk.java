@@ -0,0 +1,250 @@
+package com.zendrive.phonegap;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.zendrive.sdk.AccidentInfo;
+import com.zendrive.sdk.ActiveDriveInfo;
+import com.zendrive.sdk.AnalyzedDriveInfo;
+import com.zendrive.sdk.DriveResumeInfo;
+import com.zendrive.sdk.DriveStartInfo;
+import com.zendrive.sdk.EstimatedDriveInfo;
+import com.zendrive.sdk.ZendriveConfiguration;
+import com.zendrive.sdk.ZendriveDriveDetectionMode;
+import com.zendrive.sdk.ZendriveDriveType;
+import com.zendrive.sdk.ZendriveInsurancePeriod;
+import com.zendrive.sdk.ZendriveOperationCallback;
+import com.zendrive.sdk.ZendriveOperationResult;
+import com.zendrive.sdk.ZendriveSettingsCallback;
+
+import java.util.ArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Stand-in for the Zendrive SDK that needs no device sensors, for load testing the event
+ * pipeline. Install it with {@link ZendriveSdk#install} before the plugin is initialized, then
+ * {@link #replay} a {@link DriveTrace}: its events are handed to the broadcast receiver on the
+ * simulator's own thread, at the trace's pace divided by a speed factor.
+ *
+ * Operations always succeed; their callbacks run on a separate thread, as the SDK's do.
+ * Settings are reported as unavailable, like an SDK that is not set up.
+ */
+class SimulatedZendriveSdk implements ZendriveSdk {
+    private static final String TAG = "ZendriveSimulatedSdk";
+
+    private final Context context;
+    private final ZendriveCordovaBroadcastReceiver receiver = new ZendriveCordovaBroadcastReceiver();
+    private final ExecutorService callbacks = Executors.newSingleThreadExecutor();
+    private final ExecutorService replayer = Executors.newSingleThreadExecutor();
+    private final AtomicLong delivered = new AtomicLong();
+
+    // Guarded by this.
+    private boolean setUp;
+    private String sessionId;
+    private ZendriveInsurancePeriod period;
+    private ActiveDriveInfo activeDrive;
+
+    SimulatedZendriveSdk(Context context) {
+        this.context = context.getApplicationContext();
+    }
+
+    /**
+     * Replays {@code trace}, starting now.
+     *
+     * @param speedFactor how much faster than recorded to replay; 0 or less, or infinite,
+     *                    delivers all events back to back.
+     * @return completes after the last event; cancel it to stop the replay.
+     */
+    Future<?> replay(final DriveTrace trace, final double speedFactor) {
+        return replayer.submit(() -> {
+            boolean paced = speedFactor > 0 && !Double.isInfinite(speedFactor);
+            long startNanos = System.nanoTime();
+            for (DriveTrace.Event event : trace.getEvents()) {
+                if (paced) {
+                    long dueNanos = startNanos + (long) (TimeUnit.MILLISECONDS.toNanos(event.offsetMillis) / speedFactor);
+                    long waitNanos = dueNanos - System.nanoTime();
+                    if (waitNanos > 0) {
+                        try {
+                            TimeUnit.NANOSECONDS.sleep(waitNanos);
+                        } catch (InterruptedException e) {
+                            return;
+                        }
+                    }
+                }
+                if (Thread.currentThread().isInterrupted()) {
+                    return;
+                }
+                deliver(event);
+            }
+        });
+    }
+
+    /**
+     * Number of trace events handed to the receiver so far.
+     */
+    long getDeliveredCount() {
+        return delivered.get();
+    }
+
+    void shutdown() {
+        replayer.shutdownNow();
+        callbacks.shutdown();
+    }
+
+    private void deliver(DriveTrace.Event event) {
+        try {
+            switch (event.type) {
+                case DRIVE_START:
+                    onDriveStarted((DriveStartInfo) event.info);
+                    receiver.onDriveStart(context, (DriveStartInfo) event.info);
+                    break;
+                case DRIVE_RESUME:
+                    receiver.onDriveResume(context, (DriveResumeInfo) event.info);
+                    break;
+                case DRIVE_END:
+                    synchronized (this) {
+                        activeDrive = null;
+                    }
+                    receiver.onDriveEnd(context, (EstimatedDriveInfo) event.info);
+                    break;
+                case DRIVE_ANALYZED:
+                    receiver.onDriveAnalyzed(context, (AnalyzedDriveInfo) event.info);
+                    break;
+                case ACCIDENT:
+                    receiver.onAccident(context, (AccidentInfo) event.info);
+                    break;
+            }
+        } catch (RuntimeException e) {
+            Log.e(TAG, "Receiver failed on " + event.type, e);
+        }
+        delivered.incrementAndGet();
+    }
+
+    private synchronized void onDriveStarted(DriveStartInfo info) {
+        ActiveDriveInfo drive = new ActiveDriveInfo();
+        drive.driveId = info.driveId;
+        drive.startTimeMillis = info.startTimeMillis;
+        drive.trackingId = info.trackingId;
+        drive.sessionId = info.sessionId;
+        drive.insurancePeriod = info.insurancePeriod;
+        activeDrive = drive;
+    }
+
+    private void succeed(final ZendriveOperationCallback callback) {
+        if (callback != null) {
+            callbacks.execute(() -> callback.onCompletion(ZendriveOperationResult.success()));
+        }
+    }
+
+    @Override
+    public synchronized void setup(Context context, ZendriveConfiguration configuration,
+                                   ZendriveOperationCallback callback) {
+        setUp = true;
+        succeed(callback);
+    }
+
+    @Override
+    public synchronized boolean isSDKSetup(Context context) {
+        return setUp;
+    }
+
+    @Override
+    public synchronized void teardown(Context context, ZendriveOperationCallback callback) {
+        setUp = false;
+        period = null;
+        activeDrive = null;
+        succeed(callback);
+    }
+
+    @Override
+    public void setZendriveDriveDetectionMode(Context context, ZendriveDriveDetectionMode mode,
+                                              ZendriveOperationCallback callback) {
+        succeed(callback);
+    }
+
+    @Override
+    public void startDrive(Context context, String trackingId, ZendriveOperationCallback callback) {
+        DriveStartInfo info = new DriveStartInfo();
+        synchronized (this) {
+            info.driveId = "sim-manual-" + System.currentTimeMillis();
+            info.startTimeMillis = System.currentTimeMillis();
+            info.trackingId = trackingId;
+            info.sessionId = sessionId;
+            info.insurancePeriod = period;
+        }
+        succeed(callback);
+        replayer.execute(() -> deliver(new DriveTrace.Event(DriveTrace.Type.DRIVE_START, 0, info)));
+    }
+
+    @Override
+    public void stopManualDrive(Context context, ZendriveOperationCallback callback) {
+        final ActiveDriveInfo drive;
+        synchronized (this) {
+            drive = activeDrive;
+        }
+        succeed(callback);
+        if (drive == null) {
+            return;
+        }
+        EstimatedDriveInfo info = new EstimatedDriveInfo();
+        info.driveId = drive.driveId;
+        info.startTimeMillis = drive.startTimeMillis;
+        info.endTimeMillis = System.currentTimeMillis();
+        info.trackingId = drive.trackingId;
+        info.sessionId = drive.sessionId;
+        info.insurancePeriod = drive.insurancePeriod;
+        info.driveType = ZendriveDriveType.DRIVE;
+        info.waypoints = new ArrayList<>();
+        replayer.execute(() -> deliver(new DriveTrace.Event(DriveTrace.Type.DRIVE_END, 0, info)));
+    }
+
+    @Override
+    public synchronized void startSession(Context context, String sessionId) {
+        this.sessionId = sessionId;
+    }
+
+    @Override
+    public synchronized void stopSession(Context context) {
+        this.sessionId = null;
+    }
+
+    @Override
+    public synchronized ActiveDriveInfo getActiveDriveInfo(Context context) {
+        return activeDrive;
+    }
+
+    @Override
+    public void getZendriveSettings(Context context, final ZendriveSettingsCallback callback) {
+        callbacks.execute(() -> callback.onComplete(null));
+    }
+
+    @Override
+    public synchronized void startPeriod1(Context context, ZendriveOperationCallback callback) {
+        period = ZendriveInsurancePeriod.Period1;
+        succeed(callback);
+    }
+
+    @Override
+    public synchronized void startDriveWithPeriod2(Context context, String trackingId,
+                                                   ZendriveOperationCallback callback) {
+        period = ZendriveInsurancePeriod.Period2;
+        succeed(callback);
+    }
+
+    @Override
+    public synchronized void startDriveWithPeriod3(Context context, String trackingId,
+                                                   ZendriveOperationCallback callback) {
+        period = ZendriveInsurancePeriod.Period3;
+        succeed(callback);
+    }
+
+    @Override
+    public synchronized void stopPeriod(Context context, ZendriveOperationCallback callback) {
+        period = null;
+        succeed(callback);
+    }
+}
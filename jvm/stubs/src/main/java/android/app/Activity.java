@@ -0,0 +1,19 @@
+package android.app;
+
+import android.content.Context;
+import android.os.Bundle;
+
+public class Activity extends Context {
+    private final Application application = new Application();
+
+    public Application getApplication() {
+        return application;
+    }
+
+    protected void onCreate(Bundle savedInstanceState) {
+    }
+
+    public void runOnUiThread(Runnable action) {
+        action.run();
+    }
+}
@@ -0,0 +1,6 @@
+package android.app;
+
+public class Notification {
+    public static final int PRIORITY_MAX = 2;
+    public static final String CATEGORY_ERROR = "err";
+}
@@ -0,0 +1,27 @@
+package android.app;
+
+import java.util.List;
+
+public class NotificationManager {
+    public static final int IMPORTANCE_MIN = 1;
+    public static final int IMPORTANCE_LOW = 2;
+    public static final int IMPORTANCE_HIGH = 4;
+
+    public void createNotificationChannel(NotificationChannel channel) {
+    }
+
+    public void createNotificationChannels(List<NotificationChannel> channels) {
+    }
+
+    public void notify(int id, Notification notification) {
+    }
+
+    public void notify(String tag, int id, Notification notification) {
+    }
+
+    public void cancel(int id) {
+    }
+
+    public void cancel(String tag, int id) {
+    }
+}
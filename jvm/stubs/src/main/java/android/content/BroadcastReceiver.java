@@ -0,0 +1,17 @@
+package android.content;
+
+public abstract class BroadcastReceiver {
+    /**
+     * Outside of a broadcast, as on the JVM, there is nothing to keep alive.
+     */
+    public final PendingResult goAsync() {
+        return null;
+    }
+
+    public abstract void onReceive(Context context, Intent intent);
+
+    public static class PendingResult {
+        public final void finish() {
+        }
+    }
+}
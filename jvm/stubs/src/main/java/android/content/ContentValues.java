@@ -0,0 +1,41 @@
+package android.content;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+public class ContentValues {
+    private final Map<String, Object> values = new LinkedHashMap<>();
+
+    public void put(String key, String value) {
+        values.put(key, value);
+    }
+
+    public void put(String key, Long value) {
+        values.put(key, value);
+    }
+
+    public void put(String key, Integer value) {
+        values.put(key, value);
+    }
+
+    public void put(String key, Double value) {
+        values.put(key, value);
+    }
+
+    public void put(String key, byte[] value) {
+        values.put(key, value);
+    }
+
+    public void putNull(String key) {
+        values.put(key, null);
+    }
+
+    public Object get(String key) {
+        return values.get(key);
+    }
+
+    public Set<String> keySet() {
+        return values.keySet();
+    }
+}
@@ -0,0 +1,88 @@
+package android.content;
+
+import android.app.NotificationManager;
+import android.content.pm.ApplicationInfo;
+import android.content.res.Resources;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A context backed by a temporary directory, with in-memory shared preferences. Every
+ * context is its own application context.
+ */
+public class Context {
+    public static final String NOTIFICATION_SERVICE = "notification";
+    public static final int MODE_PRIVATE = 0;
+
+    private final File dataDir;
+    private final NotificationManager notificationManager = new NotificationManager();
+    private final Map<String, SharedPreferences> preferences = new HashMap<>();
+
+    public Context() {
+        try {
+            dataDir = Files.createTempDirectory("zendrive-plugin").toFile();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public Context getApplicationContext() {
+        return this;
+    }
+
+    public Object getSystemService(String name) {
+        return NOTIFICATION_SERVICE.equals(name) ? notificationManager : null;
+    }
+
+    public File getFilesDir() {
+        return directory("files");
+    }
+
+    public File getNoBackupFilesDir() {
+        return directory("no_backup");
+    }
+
+    public File getCacheDir() {
+        return directory("cache");
+    }
+
+    public File getDatabasePath(String name) {
+        return new File(directory("databases"), name);
+    }
+
+    public String getPackageName() {
+        return "com.zendrive.phonegap.jvm";
+    }
+
+    public synchronized SharedPreferences getSharedPreferences(String name, int mode) {
+        SharedPreferences shared = preferences.get(name);
+        if (shared == null) {
+            shared = new InMemorySharedPreferences();
+            preferences.put(name, shared);
+        }
+        return shared;
+    }
+
+    public int checkSelfPermission(String permission) {
+        return 0;
+    }
+
+    public Resources getResources() {
+        return new Resources();
+    }
+
+    public ApplicationInfo getApplicationInfo() {
+        return new ApplicationInfo();
+    }
+
+    private File directory(String name) {
+        File directory = new File(dataDir, name);
+        directory.mkdirs();
+        return directory;
+    }
+}
@@ -0,0 +1,51 @@
+package android.content;
+
+import java.util.HashMap;
+import java.util.Map;
+
+class InMemorySharedPreferences implements SharedPreferences {
+    private final Map<String, String> values = new HashMap<>();
+
+    @Override
+    public synchronized String getString(String key, String defaultValue) {
+        String value = values.get(key);
+        return value != null ? value : defaultValue;
+    }
+
+    @Override
+    public Editor edit() {
+        final Map<String, String> changes = new HashMap<>();
+        return new Editor() {
+            @Override
+            public Editor putString(String key, String value) {
+                changes.put(key, value);
+                return this;
+            }
+
+            @Override
+            public Editor remove(String key) {
+                changes.put(key, null);
+                return this;
+            }
+
+            @Override
+            public void apply() {
+                commit();
+            }
+
+            @Override
+            public boolean commit() {
+                synchronized (InMemorySharedPreferences.this) {
+                    for (Map.Entry<String, String> change : changes.entrySet()) {
+                        if (change.getValue() == null) {
+                            values.remove(change.getKey());
+                        } else {
+                            values.put(change.getKey(), change.getValue());
+                        }
+                    }
+                }
+                return true;
+            }
+        };
+    }
+}
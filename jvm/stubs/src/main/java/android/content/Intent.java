@@ -0,0 +1,24 @@
+package android.content;
+
+public class Intent {
+    public static final int FLAG_ACTIVITY_NEW_TASK = 0x10000000;
+    public static final int FLAG_ACTIVITY_SINGLE_TOP = 0x20000000;
+
+    public Intent(String action) {
+    }
+
+    public Intent(Context context, Class<?> cls) {
+    }
+
+    public Intent setFlags(int flags) {
+        return this;
+    }
+
+    public Intent putExtra(String name, boolean value) {
+        return this;
+    }
+
+    public Intent putExtra(String name, String value) {
+        return this;
+    }
+}
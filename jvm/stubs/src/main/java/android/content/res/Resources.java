@@ -0,0 +1,10 @@
+package android.content.res;
+
+/**
+ * Every resource exists, with an id derived from its type and name.
+ */
+public class Resources {
+    public int getIdentifier(String name, String defType, String defPackage) {
+        return 0x7f000000 | ((defType + "/" + name).hashCode() & 0xffffff);
+    }
+}
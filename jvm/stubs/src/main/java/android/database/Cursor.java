@@ -0,0 +1,24 @@
+package android.database;
+
+import java.io.Closeable;
+
+public interface Cursor extends Closeable {
+    boolean moveToNext();
+
+    int getCount();
+
+    boolean isNull(int column);
+
+    int getInt(int column);
+
+    long getLong(int column);
+
+    double getDouble(int column);
+
+    String getString(int column);
+
+    byte[] getBlob(int column);
+
+    @Override
+    void close();
+}
@@ -0,0 +1,21 @@
+package android.database;
+
+import android.database.sqlite.SQLiteDatabase;
+
+public class DatabaseUtils {
+    public static long queryNumEntries(SQLiteDatabase db, String table) {
+        return longForQuery(db, "SELECT COUNT(*) FROM " + table, null);
+    }
+
+    public static long longForQuery(SQLiteDatabase db, String query, String[] selectionArgs) {
+        Cursor cursor = db.rawQuery(query, selectionArgs);
+        try {
+            if (!cursor.moveToNext()) {
+                throw new SQLException("No rows for " + query, null);
+            }
+            return cursor.getLong(0);
+        } finally {
+            cursor.close();
+        }
+    }
+}
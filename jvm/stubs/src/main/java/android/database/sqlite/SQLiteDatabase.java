@@ -0,0 +1,219 @@
+package android.database.sqlite;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.SQLException;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A SQLite database file opened through JDBC. Queries are read into memory before they
+ * return; transactions nest like Android's, committing when the outermost one ends.
+ */
+public class SQLiteDatabase {
+    public static final int CONFLICT_REPLACE = 5;
+
+    private final Connection connection;
+    // Guarded by this.
+    private int transactionDepth;
+    private boolean transactionFailed;
+    private boolean successful;
+
+    SQLiteDatabase(File file) {
+        try {
+            connection = DriverManager.getConnection("jdbc:sqlite:" + file.getPath());
+        } catch (java.sql.SQLException e) {
+            throw new SQLException("Failed to open " + file, e);
+        }
+    }
+
+    public void execSQL(String sql) {
+        execSQL(sql, new Object[0]);
+    }
+
+    public synchronized void execSQL(String sql, Object[] bindArgs) {
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            bind(statement, bindArgs);
+            statement.execute();
+        } catch (java.sql.SQLException e) {
+            throw new SQLException(sql, e);
+        }
+    }
+
+    public synchronized long insertWithOnConflict(String table, String nullColumnHack, ContentValues values,
+                                                  int conflictAlgorithm) {
+        if (conflictAlgorithm != CONFLICT_REPLACE) {
+            throw new UnsupportedOperationException("Conflict algorithm " + conflictAlgorithm);
+        }
+        List<String> columns = new ArrayList<>(values.keySet());
+        StringBuilder sql = new StringBuilder("INSERT OR REPLACE INTO ").append(table).append(" (");
+        StringBuilder placeholders = new StringBuilder();
+        Object[] args = new Object[columns.size()];
+        for (int i = 0; i < columns.size(); i++) {
+            sql.append(i == 0 ? "" : ", ").append(columns.get(i));
+            placeholders.append(i == 0 ? "?" : ", ?");
+            args[i] = values.get(columns.get(i));
+        }
+        sql.append(") VALUES (").append(placeholders).append(")");
+        execSQL(sql.toString(), args);
+        try (Statement statement = connection.createStatement();
+             ResultSet rowId = statement.executeQuery("SELECT last_insert_rowid()")) {
+            return rowId.next() ? rowId.getLong(1) : -1;
+        } catch (java.sql.SQLException e) {
+            throw new SQLException(sql.toString(), e);
+        }
+    }
+
+    public synchronized Cursor rawQuery(String sql, String[] selectionArgs) {
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            bind(statement, selectionArgs);
+            try (ResultSet results = statement.executeQuery()) {
+                ResultSetMetaData metaData = results.getMetaData();
+                List<Object[]> rows = new ArrayList<>();
+                while (results.next()) {
+                    Object[] row = new Object[metaData.getColumnCount()];
+                    for (int i = 0; i < row.length; i++) {
+                        row[i] = results.getObject(i + 1);
+                    }
+                    rows.add(row);
+                }
+                return new RowsCursor(rows);
+            }
+        } catch (java.sql.SQLException e) {
+            throw new SQLException(sql, e);
+        }
+    }
+
+    public synchronized void beginTransaction() {
+        try {
+            if (transactionDepth == 0) {
+                connection.setAutoCommit(false);
+                transactionFailed = false;
+            }
+            transactionDepth++;
+            successful = false;
+        } catch (java.sql.SQLException e) {
+            throw new SQLException("beginTransaction", e);
+        }
+    }
+
+    public synchronized void setTransactionSuccessful() {
+        successful = true;
+    }
+
+    public synchronized void endTransaction() {
+        if (!successful) {
+            transactionFailed = true;
+        }
+        successful = false;
+        if (--transactionDepth > 0) {
+            return;
+        }
+        try {
+            if (transactionFailed) {
+                connection.rollback();
+            } else {
+                connection.commit();
+            }
+            connection.setAutoCommit(true);
+        } catch (java.sql.SQLException e) {
+            throw new SQLException("endTransaction", e);
+        }
+    }
+
+    int getVersion() {
+        return (int) android.database.DatabaseUtils.longForQuery(this, "PRAGMA user_version", null);
+    }
+
+    void setVersion(int version) {
+        execSQL("PRAGMA user_version = " + version);
+    }
+
+    synchronized void close() {
+        try {
+            connection.close();
+        } catch (java.sql.SQLException e) {
+            throw new SQLException("close", e);
+        }
+    }
+
+    private static void bind(PreparedStatement statement, Object[] args) throws java.sql.SQLException {
+        if (args == null) {
+            return;
+        }
+        for (int i = 0; i < args.length; i++) {
+            statement.setObject(i + 1, args[i]);
+        }
+    }
+
+    private static final class RowsCursor implements Cursor {
+        private final List<Object[]> rows;
+        private int position = -1;
+
+        RowsCursor(List<Object[]> rows) {
+            this.rows = rows;
+        }
+
+        @Override
+        public boolean moveToNext() {
+            if (position < rows.size()) {
+                position++;
+            }
+            return position < rows.size();
+        }
+
+        @Override
+        public int getCount() {
+            return rows.size();
+        }
+
+        @Override
+        public boolean isNull(int column) {
+            return value(column) == null;
+        }
+
+        @Override
+        public int getInt(int column) {
+            return (int) getLong(column);
+        }
+
+        @Override
+        public long getLong(int column) {
+            Object value = value(column);
+            return value == null ? 0 : ((Number) value).longValue();
+        }
+
+        @Override
+        public double getDouble(int column) {
+            Object value = value(column);
+            return value == null ? 0 : ((Number) value).doubleValue();
+        }
+
+        @Override
+        public String getString(int column) {
+            Object value = value(column);
+            return value == null ? null : value.toString();
+        }
+
+        @Override
+        public byte[] getBlob(int column) {
+            return (byte[]) value(column);
+        }
+
+        @Override
+        public void close() {
+        }
+
+        private Object value(int column) {
+            return rows.get(position)[column];
+        }
+    }
+}
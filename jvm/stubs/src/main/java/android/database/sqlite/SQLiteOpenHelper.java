@@ -0,0 +1,56 @@
+package android.database.sqlite;
+
+import android.content.Context;
+
+import java.io.File;
+
+public abstract class SQLiteOpenHelper {
+    private final File file;
+    private final int version;
+    private SQLiteDatabase database;
+
+    public SQLiteOpenHelper(Context context, String name, Object factory, int version) {
+        this.file = context.getDatabasePath(name);
+        this.version = version;
+    }
+
+    public abstract void onCreate(SQLiteDatabase db);
+
+    public abstract void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion);
+
+    public synchronized SQLiteDatabase getWritableDatabase() {
+        if (database != null) {
+            return database;
+        }
+        file.getParentFile().mkdirs();
+        SQLiteDatabase db = new SQLiteDatabase(file);
+        int current = db.getVersion();
+        if (current != version) {
+            db.beginTransaction();
+            try {
+                if (current == 0) {
+                    onCreate(db);
+                } else {
+                    onUpgrade(db, current, version);
+                }
+                db.setVersion(version);
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+        }
+        database = db;
+        return db;
+    }
+
+    public SQLiteDatabase getReadableDatabase() {
+        return getWritableDatabase();
+    }
+
+    public synchronized void close() {
+        if (database != null) {
+            database.close();
+            database = null;
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package android.os;
+
+public class Handler {
+    public Handler(Looper looper) {
+    }
+
+    public final boolean post(Runnable runnable) {
+        runnable.run();
+        return true;
+    }
+
+    public final boolean postDelayed(Runnable runnable, long delayMillis) {
+        return false;
+    }
+
+    public final void removeCallbacks(Runnable runnable) {
+    }
+}
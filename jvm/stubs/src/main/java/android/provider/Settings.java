@@ -0,0 +1,5 @@
+package android.provider;
+
+public class Settings {
+    public static final String ACTION_LOCATION_SOURCE_SETTINGS = "android.settings.LOCATION_SOURCE_SETTINGS";
+}
@@ -0,0 +1,17 @@
+package android.view;
+
+public final class Choreographer {
+    private static final Choreographer INSTANCE = new Choreographer();
+
+    public interface FrameCallback {
+        void doFrame(long frameTimeNanos);
+    }
+
+    public static Choreographer getInstance() {
+        return INSTANCE;
+    }
+
+    public void postFrameCallback(FrameCallback callback) {
+        callback.doFrame(System.nanoTime());
+    }
+}
@@ -0,0 +1,77 @@
+package androidx.core.app;
+
+import android.app.Notification;
+import android.app.PendingIntent;
+import android.content.Context;
+
+public class NotificationCompat {
+    public static final int PRIORITY_MIN = -2;
+    public static final int PRIORITY_LOW = -1;
+    public static final int PRIORITY_DEFAULT = 0;
+    public static final int PRIORITY_HIGH = 1;
+    public static final int PRIORITY_MAX = 2;
+    public static final String CATEGORY_ALARM = "alarm";
+    public static final String CATEGORY_ERROR = "err";
+    public static final String CATEGORY_SERVICE = "service";
+
+    public static class Builder {
+        public Builder(Context context, String channelId) {
+        }
+
+        public Builder setSmallIcon(int icon) {
+            return this;
+        }
+
+        public Builder setContentTitle(CharSequence title) {
+            return this;
+        }
+
+        public Builder setContentText(CharSequence text) {
+            return this;
+        }
+
+        public Builder setContentIntent(PendingIntent intent) {
+            return this;
+        }
+
+        public Builder setFullScreenIntent(PendingIntent intent, boolean highPriority) {
+            return this;
+        }
+
+        public Builder setPriority(int priority) {
+            return this;
+        }
+
+        public Builder setCategory(String category) {
+            return this;
+        }
+
+        public Builder setOngoing(boolean ongoing) {
+            return this;
+        }
+
+        public Builder setOnlyAlertOnce(boolean onlyAlertOnce) {
+            return this;
+        }
+
+        public Builder setAutoCancel(boolean autoCancel) {
+            return this;
+        }
+
+        public Builder setWhen(long when) {
+            return this;
+        }
+
+        public Builder setShowWhen(boolean show) {
+            return this;
+        }
+
+        public Builder setUsesChronometer(boolean usesChronometer) {
+            return this;
+        }
+
+        public Notification build() {
+            return new Notification();
+        }
+    }
+}
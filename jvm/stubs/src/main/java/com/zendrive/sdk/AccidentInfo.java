@@ -0,0 +1,12 @@
+package com.zendrive.sdk;
+
+public class AccidentInfo {
+    public String accidentId;
+    public String driveId;
+    public String trackingId;
+    public String sessionId;
+    public long timestampMillis;
+    public LocationPoint location;
+    public ZendriveAccidentConfidence confidence;
+    public int confidenceNumber;
+}
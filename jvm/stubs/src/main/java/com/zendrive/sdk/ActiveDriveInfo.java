@@ -0,0 +1,11 @@
+package com.zendrive.sdk;
+
+public class ActiveDriveInfo {
+    public String driveId;
+    public long startTimeMillis;
+    public String trackingId;
+    public String sessionId;
+    public ZendriveInsurancePeriod insurancePeriod;
+    public double currentSpeed;
+    public double distanceMeters;
+}
@@ -0,0 +1,4 @@
+package com.zendrive.sdk;
+
+public class AnalyzedDriveInfo extends DriveInfo {
+}
@@ -0,0 +1,18 @@
+package com.zendrive.sdk;
+
+import java.util.List;
+
+public class DriveInfo {
+    public String driveId;
+    public String trackingId;
+    public String sessionId;
+    public ZendriveInsurancePeriod insurancePeriod;
+    public ZendriveDriveType driveType;
+    public long startTimeMillis;
+    public long endTimeMillis;
+    public double averageSpeed;
+    public double maxSpeed;
+    public double distanceMeters;
+    public List<LocationPointWithTimestamp> waypoints;
+    public ZendriveDriveScore score;
+}
@@ -0,0 +1,9 @@
+package com.zendrive.sdk;
+
+public class DriveResumeInfo {
+    public String driveId;
+    public long startTimeMillis;
+    public String trackingId;
+    public String sessionId;
+    public ZendriveInsurancePeriod insurancePeriod;
+}
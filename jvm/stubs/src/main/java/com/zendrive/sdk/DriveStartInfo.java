@@ -0,0 +1,10 @@
+package com.zendrive.sdk;
+
+public class DriveStartInfo {
+    public String driveId;
+    public long startTimeMillis;
+    public LocationPoint startLocation;
+    public String trackingId;
+    public String sessionId;
+    public ZendriveInsurancePeriod insurancePeriod;
+}
@@ -0,0 +1,11 @@
+package com.zendrive.sdk;
+
+public class LocationPoint {
+    public final double latitude;
+    public final double longitude;
+
+    public LocationPoint(double latitude, double longitude) {
+        this.latitude = latitude;
+        this.longitude = longitude;
+    }
+}
@@ -0,0 +1,11 @@
+package com.zendrive.sdk;
+
+public class LocationPointWithTimestamp {
+    public final LocationPoint location;
+    public final long timestamp;
+
+    public LocationPointWithTimestamp(LocationPoint location, long timestamp) {
+        this.location = location;
+        this.timestamp = timestamp;
+    }
+}
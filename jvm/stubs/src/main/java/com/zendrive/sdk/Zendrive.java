@@ -0,0 +1,54 @@
+package com.zendrive.sdk;
+
+import android.content.Context;
+
+/**
+ * The SDK does not run on the JVM; install a {@code ZendriveSdk} that does not forward here.
+ */
+public class Zendrive {
+    public static void setup(Context context, ZendriveConfiguration configuration, Class<?> receiverClass,
+                             Class<?> notificationProviderClass, ZendriveOperationCallback callback) {
+        throw unsupported();
+    }
+
+    public static boolean isSDKSetup(Context context) {
+        throw unsupported();
+    }
+
+    public static void teardown(Context context, ZendriveOperationCallback callback) {
+        throw unsupported();
+    }
+
+    public static void setZendriveDriveDetectionMode(Context context, ZendriveDriveDetectionMode mode,
+                                                     ZendriveOperationCallback callback) {
+        throw unsupported();
+    }
+
+    public static void startDrive(Context context, String trackingId, ZendriveOperationCallback callback) {
+        throw unsupported();
+    }
+
+    public static void stopManualDrive(Context context, ZendriveOperationCallback callback) {
+        throw unsupported();
+    }
+
+    public static void startSession(Context context, String sessionId) {
+        throw unsupported();
+    }
+
+    public static void stopSession(Context context) {
+        throw unsupported();
+    }
+
+    public static ActiveDriveInfo getActiveDriveInfo(Context context) {
+        throw unsupported();
+    }
+
+    public static void getZendriveSettings(Context context, ZendriveSettingsCallback callback) {
+        throw unsupported();
+    }
+
+    static UnsupportedOperationException unsupported() {
+        return new UnsupportedOperationException("The Zendrive SDK is not available on the JVM");
+    }
+}
@@ -0,0 +1,5 @@
+package com.zendrive.sdk;
+
+public enum ZendriveAccidentConfidence {
+    LOW, HIGH
+}
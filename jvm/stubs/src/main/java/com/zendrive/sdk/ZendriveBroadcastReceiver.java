@@ -0,0 +1,23 @@
+package com.zendrive.sdk;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+
+public abstract class ZendriveBroadcastReceiver extends BroadcastReceiver {
+    @Override
+    public void onReceive(Context context, Intent intent) {
+    }
+
+    public abstract void onDriveStart(Context context, DriveStartInfo startInfo);
+
+    public abstract void onDriveResume(Context context, DriveResumeInfo resumeInfo);
+
+    public abstract void onDriveEnd(Context context, EstimatedDriveInfo estimatedDriveInfo);
+
+    public abstract void onDriveAnalyzed(Context context, AnalyzedDriveInfo analyzedDriveInfo);
+
+    public abstract void onAccident(Context context, AccidentInfo accidentInfo);
+
+    public abstract void onZendriveSettingsConfigChanged(Context context, boolean errorsFound, boolean warningsFound);
+}
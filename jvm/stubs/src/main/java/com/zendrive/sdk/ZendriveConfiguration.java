@@ -0,0 +1,9 @@
+package com.zendrive.sdk;
+
+public class ZendriveConfiguration {
+    public ZendriveConfiguration(String sdkKey, String driverId, ZendriveDriveDetectionMode driveDetectionMode) {
+    }
+
+    public void setDriverAttributes(ZendriveDriverAttributes driverAttributes) {
+    }
+}
@@ -0,0 +1,5 @@
+package com.zendrive.sdk;
+
+public enum ZendriveDriveDetectionMode {
+    AUTO_ON, AUTO_OFF, INSURANCE
+}
@@ -0,0 +1,19 @@
+package com.zendrive.sdk;
+
+import java.util.HashMap;
+import java.util.Map;
+
+public class ZendriveDriverAttributes {
+    private final Map<String, String> customAttributes = new HashMap<>();
+    private String group;
+
+    public boolean setCustomAttribute(String key, String value) {
+        customAttributes.put(key, value);
+        return true;
+    }
+
+    public boolean setGroup(String group) {
+        this.group = group;
+        return true;
+    }
+}
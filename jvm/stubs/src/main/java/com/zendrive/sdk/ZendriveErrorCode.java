@@ -0,0 +1,5 @@
+package com.zendrive.sdk;
+
+public enum ZendriveErrorCode {
+    INVALID_PARAMS, INTERNAL_ERROR
+}
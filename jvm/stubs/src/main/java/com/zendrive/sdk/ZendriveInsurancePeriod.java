@@ -0,0 +1,5 @@
+package com.zendrive.sdk;
+
+public enum ZendriveInsurancePeriod {
+    Period1, Period2, Period3
+}
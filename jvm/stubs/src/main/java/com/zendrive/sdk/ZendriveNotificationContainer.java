@@ -0,0 +1,8 @@
+package com.zendrive.sdk;
+
+import android.app.Notification;
+
+public class ZendriveNotificationContainer {
+    public ZendriveNotificationContainer(int id, Notification notification) {
+    }
+}
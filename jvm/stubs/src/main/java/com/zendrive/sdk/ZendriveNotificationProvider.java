@@ -0,0 +1,11 @@
+package com.zendrive.sdk;
+
+import android.content.Context;
+
+public interface ZendriveNotificationProvider {
+    ZendriveNotificationContainer getWaitingForDriveNotificationContainer(Context context);
+
+    ZendriveNotificationContainer getMaybeInDriveNotificationContainer(Context context);
+
+    ZendriveNotificationContainer getInDriveNotificationContainer(Context context);
+}
@@ -0,0 +1,5 @@
+package com.zendrive.sdk;
+
+public interface ZendriveOperationCallback {
+    void onCompletion(ZendriveOperationResult result);
+}
@@ -0,0 +1,31 @@
+package com.zendrive.sdk;
+
+public class ZendriveOperationResult {
+    private final ZendriveErrorCode errorCode;
+    private final String errorMessage;
+
+    private ZendriveOperationResult(ZendriveErrorCode errorCode, String errorMessage) {
+        this.errorCode = errorCode;
+        this.errorMessage = errorMessage;
+    }
+
+    public static ZendriveOperationResult success() {
+        return new ZendriveOperationResult(null, null);
+    }
+
+    public static ZendriveOperationResult error(ZendriveErrorCode errorCode, String errorMessage) {
+        return new ZendriveOperationResult(errorCode, errorMessage);
+    }
+
+    public boolean isSuccess() {
+        return errorCode == null;
+    }
+
+    public ZendriveErrorCode getErrorCode() {
+        return errorCode;
+    }
+
+    public String getErrorMessage() {
+        return errorMessage;
+    }
+}
@@ -0,0 +1,5 @@
+package com.zendrive.sdk;
+
+public class ZendriveSettingError {
+    public ZendriveSettingErrorType type;
+}
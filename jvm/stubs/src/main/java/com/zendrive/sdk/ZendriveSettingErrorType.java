@@ -0,0 +1,10 @@
+package com.zendrive.sdk;
+
+public enum ZendriveSettingErrorType {
+    POWER_SAVER_MODE_ENABLED,
+    BACKGROUND_RESTRICTION_ENABLED,
+    GOOGLE_PLAY_SETTINGS_ERROR,
+    LOCATION_PERMISSION_DENIED,
+    LOCATION_SETTINGS_ERROR,
+    WIFI_SCANNING_DISABLED
+}
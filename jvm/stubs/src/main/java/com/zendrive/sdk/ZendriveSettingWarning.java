@@ -0,0 +1,5 @@
+package com.zendrive.sdk;
+
+public class ZendriveSettingWarning {
+    public ZendriveSettingWarningType type;
+}
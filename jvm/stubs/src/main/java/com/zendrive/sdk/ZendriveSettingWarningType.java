@@ -0,0 +1,5 @@
+package com.zendrive.sdk;
+
+public enum ZendriveSettingWarningType {
+    POWER_SAVER_MODE_ENABLED
+}
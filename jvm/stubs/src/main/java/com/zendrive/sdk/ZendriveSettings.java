@@ -0,0 +1,8 @@
+package com.zendrive.sdk;
+
+import java.util.List;
+
+public class ZendriveSettings {
+    public List<ZendriveSettingError> errors;
+    public List<ZendriveSettingWarning> warnings;
+}
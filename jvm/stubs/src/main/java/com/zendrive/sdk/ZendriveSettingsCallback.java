@@ -0,0 +1,5 @@
+package com.zendrive.sdk;
+
+public interface ZendriveSettingsCallback {
+    void onComplete(ZendriveSettings settings);
+}
@@ -0,0 +1,30 @@
+package com.zendrive.sdk.insurance;
+
+import android.content.Context;
+
+import com.zendrive.sdk.ZendriveOperationCallback;
+
+/**
+ * The SDK does not run on the JVM; install a {@code ZendriveSdk} that does not forward here.
+ */
+public class ZendriveInsurance {
+    public static void startPeriod1(Context context, ZendriveOperationCallback callback) {
+        throw unsupported();
+    }
+
+    public static void startDriveWithPeriod2(Context context, String trackingId, ZendriveOperationCallback callback) {
+        throw unsupported();
+    }
+
+    public static void startDriveWithPeriod3(Context context, String trackingId, ZendriveOperationCallback callback) {
+        throw unsupported();
+    }
+
+    public static void stopPeriod(Context context, ZendriveOperationCallback callback) {
+        throw unsupported();
+    }
+
+    private static UnsupportedOperationException unsupported() {
+        return new UnsupportedOperationException("The Zendrive SDK is not available on the JVM");
+    }
+}
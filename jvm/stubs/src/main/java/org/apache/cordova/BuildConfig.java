@@ -0,0 +1,5 @@
+package org.apache.cordova;
+
+public final class BuildConfig {
+    public static final boolean DEBUG = false;
+}
@@ -0,0 +1,63 @@
+package org.apache.cordova;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * Keeps the last result sent instead of handing it to a WebView.
+ */
+public class CallbackContext {
+    private final String callbackId;
+    private volatile boolean finished;
+    private volatile PluginResult lastResult;
+
+    public CallbackContext(String callbackId, CordovaWebView webView) {
+        this.callbackId = callbackId;
+    }
+
+    public String getCallbackId() {
+        return callbackId;
+    }
+
+    public boolean isFinished() {
+        return finished;
+    }
+
+    public PluginResult getLastResult() {
+        return lastResult;
+    }
+
+    public void sendPluginResult(PluginResult pluginResult) {
+        synchronized (this) {
+            if (finished) {
+                return;
+            }
+            finished = !pluginResult.getKeepCallback();
+        }
+        lastResult = pluginResult;
+    }
+
+    public void success() {
+        sendPluginResult(new PluginResult(PluginResult.Status.OK));
+    }
+
+    public void success(String message) {
+        sendPluginResult(new PluginResult(PluginResult.Status.OK, message));
+    }
+
+    public void success(JSONObject message) {
+        sendPluginResult(new PluginResult(PluginResult.Status.OK, message));
+    }
+
+    public void success(JSONArray message) {
+        sendPluginResult(new PluginResult(PluginResult.Status.OK, message));
+    }
+
+    public void error(String message) {
+        sendPluginResult(new PluginResult(PluginResult.Status.ERROR, message));
+    }
+
+    public void error(JSONObject message) {
+        sendPluginResult(new PluginResult(PluginResult.Status.ERROR, message));
+    }
+}
@@ -0,0 +1,43 @@
+package org.apache.cordova;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+
+public class CordovaPlugin {
+    public CordovaInterface cordova;
+    public CordovaWebView webView;
+    protected CordovaPreferences preferences;
+
+    protected void pluginInitialize() {
+    }
+
+    public boolean execute(String action, JSONArray args, CallbackContext callbackContext) throws JSONException {
+        return false;
+    }
+
+    public void onRequestPermissionResult(int requestCode, String[] permissions, int[] grantResults)
+            throws JSONException {
+    }
+
+    public void onStart() {
+    }
+
+    public void onPause(boolean multitasking) {
+    }
+
+    public void onResume(boolean multitasking) {
+    }
+
+    public void onStop() {
+    }
+
+    public void onReset() {
+    }
+
+    public void onDestroy() {
+    }
+
+    public String getServiceName() {
+        return getClass().getSimpleName();
+    }
+}
@@ -0,0 +1,15 @@
+package org.apache.cordova;
+
+public class CordovaPreferences {
+    public boolean getBoolean(String name, boolean defaultValue) {
+        return defaultValue;
+    }
+
+    public int getInteger(String name, int defaultValue) {
+        return defaultValue;
+    }
+
+    public String getString(String name, String defaultValue) {
+        return defaultValue;
+    }
+}
@@ -0,0 +1,5 @@
+package org.apache.cordova;
+
+public interface CordovaWebView {
+    CordovaPreferences getPreferences();
+}
@@ -0,0 +1,26 @@
+package org.apache.cordova;
+
+import org.json.JSONException;
+
+import java.util.Arrays;
+
+/**
+ * Grants every permission asked for, at once, as if the user had accepted.
+ */
+public class PermissionHelper {
+    private static final int PERMISSION_GRANTED = 0;
+
+    public static void requestPermissions(CordovaPlugin plugin, int requestCode, String[] permissions) {
+        int[] grantResults = new int[permissions.length];
+        Arrays.fill(grantResults, PERMISSION_GRANTED);
+        try {
+            plugin.onRequestPermissionResult(requestCode, permissions, grantResults);
+        } catch (JSONException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public static boolean hasPermission(CordovaPlugin plugin, String permission) {
+        return true;
+    }
+}
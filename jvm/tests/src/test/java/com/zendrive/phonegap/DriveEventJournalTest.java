@@ -0,0 +1,179 @@
+package com.zendrive.phonegap;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class DriveEventJournalTest {
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private File file;
+    private DriveEventJournal journal;
+
+    @Before
+    public void setUp() {
+        file = new File(folder.getRoot(), "journal.bin");
+        journal = DriveEventJournal.at(file);
+    }
+
+    private static DriveEvent driveEnd(String trackingId, double distanceMeters) {
+        return DriveEvent.encoded(ZendriveManager.EVENT_DRIVE_END, "{\"distance\":" + distanceMeters + "}",
+                trackingId, 2, distanceMeters, 600000, DriveEvent.VALIDITY_VALID);
+    }
+
+    private void append(DriveEvent event) throws JSONException {
+        journal.append(event, event.encode(null));
+    }
+
+    private List<DriveEvent> replay() {
+        List<DriveEvent> events = new ArrayList<>();
+        journal.replay(events::add);
+        return events;
+    }
+
+    @Test
+    public void replaysEventsInOrderWithTheirFilterValues() throws JSONException {
+        DriveEvent start = DriveEvent.encoded(ZendriveManager.EVENT_DRIVE_START, "{\"startTimestamp\":1}");
+        append(start);
+        append(driveEnd("trip-\u00e9", 1234.5));
+        append(driveEnd(null, 10));
+
+        List<DriveEvent> events = replay();
+        assertEquals(3, events.size());
+
+        DriveEvent replayedStart = events.get(0);
+        assertEquals(ZendriveManager.EVENT_DRIVE_START, replayedStart.type);
+        assertEquals("{\"startTimestamp\":1}", replayedStart.encode(null));
+        assertNull(replayedStart.trackingId);
+        assertEquals(DriveEvent.UNKNOWN_PERIOD, replayedStart.insurancePeriod);
+        assertEquals(DriveEvent.UNKNOWN_DURATION, replayedStart.durationMillis);
+        assertEquals(DriveEvent.VALIDITY_UNKNOWN, replayedStart.validity);
+
+        DriveEvent end = events.get(1);
+        assertEquals(ZendriveManager.EVENT_DRIVE_END, end.type);
+        assertEquals("{\"distance\":1234.5}", end.encode(null));
+        assertEquals("trip-\u00e9", end.trackingId);
+        assertEquals(2, end.insurancePeriod);
+        assertEquals(1234.5, end.distanceMeters, 0);
+        assertEquals(600000, end.durationMillis);
+        assertEquals(DriveEvent.VALIDITY_VALID, end.validity);
+
+        assertNull(events.get(2).trackingId);
+    }
+
+    @Test
+    public void replayedEventsPassTheSameFilters() throws JSONException {
+        append(driveEnd("trip-1", 50));
+        append(driveEnd("trip-2", 5000));
+        DriveEventFilter filter = DriveEventFilter.fromJson(new JSONObject()
+                .put(DriveEventFilter.MIN_DISTANCE_KEY, 1000));
+        List<DriveEvent> events = replay();
+        assertFalse(filter.accepts(events.get(0)));
+        assertTrue(filter.accepts(events.get(1)));
+    }
+
+    @Test
+    public void replayDeletesTheJournal() throws JSONException {
+        append(driveEnd("trip-1", 1));
+        assertTrue(file.exists());
+        assertEquals(1, replay().size());
+        assertFalse(file.exists());
+        assertEquals(0, replay().size());
+    }
+
+    @Test
+    public void appendsAfterAReplayStartAFreshJournal() throws JSONException {
+        append(driveEnd("trip-1", 1));
+        replay();
+        append(driveEnd("trip-2", 2));
+        List<DriveEvent> events = replay();
+        assertEquals(1, events.size());
+        assertEquals("trip-2", events.get(0).trackingId);
+    }
+
+    @Test
+    public void skipsUnknownEventTypes() throws JSONException {
+        append(DriveEvent.encoded("unknown", "{}"));
+        assertFalse(file.exists());
+    }
+
+    @Test
+    public void replaysLegacyRecordsAsPlainJson() throws IOException, JSONException {
+        // Type code 1 is a drive end, without the filter values flag.
+        byte[] json = "{\"distance\":3}".getBytes(StandardCharsets.UTF_8);
+        CRC32 crc = new CRC32();
+        crc.update(1);
+        crc.update(json, 0, json.length);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream record = new DataOutputStream(bytes);
+        record.writeInt(json.length);
+        record.writeByte(1);
+        record.write(json);
+        record.writeInt((int) crc.getValue());
+        try (FileOutputStream output = new FileOutputStream(file)) {
+            bytes.writeTo(output);
+        }
+
+        List<DriveEvent> events = replay();
+        assertEquals(1, events.size());
+        DriveEvent event = events.get(0);
+        assertEquals(ZendriveManager.EVENT_DRIVE_END, event.type);
+        assertEquals("{\"distance\":3}", event.encode(null));
+        assertEquals(DriveEvent.UNKNOWN_PERIOD, event.insurancePeriod);
+        assertTrue(Double.isNaN(event.distanceMeters));
+    }
+
+    @Test
+    public void stopsAtATornRecord() throws JSONException, IOException {
+        append(driveEnd("trip-1", 1));
+        append(driveEnd("trip-2", 2));
+        append(driveEnd("trip-3", 3));
+        // The process died while writing the last record.
+        try (RandomAccessFile torn = new RandomAccessFile(file, "rw")) {
+            torn.setLength(torn.length() - 3);
+        }
+        List<DriveEvent> events = replay();
+        assertEquals(2, events.size());
+        assertEquals("trip-2", events.get(1).trackingId);
+        assertFalse(file.exists());
+    }
+
+    @Test
+    public void stopsAtACorruptRecord() throws JSONException, IOException {
+        append(driveEnd("trip-1", 1));
+        long secondRecord = file.length();
+        append(driveEnd("trip-2", 2));
+        append(driveEnd("trip-3", 3));
+        try (RandomAccessFile corrupt = new RandomAccessFile(file, "rw")) {
+            // A byte of the second record's payload, past its length and type.
+            long position = secondRecord + 8;
+            corrupt.seek(position);
+            int value = corrupt.read();
+            corrupt.seek(position);
+            corrupt.write(value ^ 0xff);
+        }
+        List<DriveEvent> events = replay();
+        assertEquals(1, events.size());
+        assertEquals("trip-1", events.get(0).trackingId);
+    }
+}
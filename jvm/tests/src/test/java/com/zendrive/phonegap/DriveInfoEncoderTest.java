@@ -0,0 +1,188 @@
+package com.zendrive.phonegap;
+
+import com.zendrive.sdk.AnalyzedDriveInfo;
+import com.zendrive.sdk.DriveInfo;
+import com.zendrive.sdk.EstimatedDriveInfo;
+import com.zendrive.sdk.LocationPoint;
+import com.zendrive.sdk.LocationPointWithTimestamp;
+import com.zendrive.sdk.ZendriveDriveScore;
+import com.zendrive.sdk.ZendriveDriveType;
+import com.zendrive.sdk.ZendriveInsurancePeriod;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class DriveInfoEncoderTest {
+    private static final double DEGREES_EPSILON = 1e-9;
+    private static final double FIXED_POINT_EPSILON = 0.5 / DriveInfoEncoder.FIXED_POINT_SCALE;
+
+    private final DriveInfoEncoder encoder = new DriveInfoEncoder();
+
+    private static List<LocationPointWithTimestamp> waypoints(int count) {
+        List<LocationPointWithTimestamp> waypoints = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            waypoints.add(new LocationPointWithTimestamp(
+                    new LocationPoint(37.7749 + i * 0.0001234567, -122.4194 - i * 0.0000987654),
+                    1500000000000L + i * 1000L));
+        }
+        return waypoints;
+    }
+
+    private static <T extends DriveInfo> T drive(T info, int waypointCount) {
+        info.driveId = "drive-1";
+        info.trackingId = "tracking \"1\"";
+        info.sessionId = null;
+        info.insurancePeriod = ZendriveInsurancePeriod.Period2;
+        info.driveType = ZendriveDriveType.DRIVE;
+        info.startTimeMillis = 1500000000000L;
+        info.endTimeMillis = 1500000600000L;
+        info.averageSpeed = 12.5;
+        info.maxSpeed = 30.25;
+        info.distanceMeters = 7500.5;
+        info.waypoints = waypoints(waypointCount);
+        return info;
+    }
+
+    private JSONObject encode(DriveInfo info, DriveInfoEncoder.WaypointEncoding encoding, boolean analyzed)
+            throws JSONException {
+        return new JSONObject(encoder.encodeDriveInfo(info, WaypointSimplifier.NONE, encoding, null, analyzed));
+    }
+
+    @Test
+    public void encodesTheEndOfDriveFields() throws JSONException {
+        JSONObject json = encode(drive(new EstimatedDriveInfo(), 3), DriveInfoEncoder.WaypointEncoding.OBJECTS, false);
+        assertEquals(1500000000000L, json.getLong(ZendriveManager.START_TIMESTAMP_KEY));
+        assertEquals(1500000600000L, json.getLong(ZendriveManager.END_TIMESTAMP_KEY));
+        assertEquals(12.5, json.getDouble(ZendriveManager.AVERAGE_SPEED_KEY), 0);
+        assertEquals(7500.5, json.getDouble(ZendriveManager.DISTANCE_KEY), 0);
+        // Only analyzed drives carry their ids, type, maximum speed and score.
+        assertFalse(json.has(ZendriveManager.DRIVE_ID_KEY));
+        assertFalse(json.has(ZendriveManager.MAX_SPEED_KEY));
+        assertFalse(json.has(ZendriveManager.SCORE_KEY));
+        assertEquals(3, json.getJSONArray(ZendriveManager.WAYPOINTS_KEY).length());
+    }
+
+    @Test
+    public void encodesTheAnalyzedFields() throws JSONException {
+        AnalyzedDriveInfo info = drive(new AnalyzedDriveInfo(), 1);
+        info.score = new ZendriveDriveScore();
+        info.score.zendriveScore = 87;
+        JSONObject json = encode(info, DriveInfoEncoder.WaypointEncoding.OBJECTS, true);
+        assertEquals("drive-1", json.getString(ZendriveManager.DRIVE_ID_KEY));
+        assertEquals("tracking \"1\"", json.getString(ZendriveManager.TRACKING_ID_KEY));
+        assertTrue(json.isNull(ZendriveManager.SESSION_ID_KEY));
+        assertEquals(2, json.getInt(ZendriveManager.INSURANCE_PERIOD_KEY));
+        assertEquals("DRIVE", json.getString(ZendriveManager.DRIVE_TYPE_KEY));
+        assertEquals(30.25, json.getDouble(ZendriveManager.MAX_SPEED_KEY), 0);
+        assertEquals(87, json.getInt(ZendriveManager.SCORE_KEY));
+    }
+
+    @Test
+    public void encodesOnlyTheRequestedFields() throws JSONException {
+        DriveInfo info = drive(new EstimatedDriveInfo(), 10);
+        String encoded = encoder.encodeDriveInfo(info, WaypointSimplifier.NONE,
+                DriveInfoEncoder.WaypointEncoding.OBJECTS,
+                new HashSet<>(Arrays.asList(ZendriveManager.DISTANCE_KEY, ZendriveManager.END_TIMESTAMP_KEY)), false);
+        JSONObject json = new JSONObject(encoded);
+        assertEquals(2, json.length());
+        assertEquals(7500.5, json.getDouble(ZendriveManager.DISTANCE_KEY), 0);
+        assertEquals(1500000600000L, json.getLong(ZendriveManager.END_TIMESTAMP_KEY));
+    }
+
+    @Test
+    public void encodesNonFiniteNumbersAsNull() throws JSONException {
+        DriveInfo info = drive(new EstimatedDriveInfo(), 0);
+        info.averageSpeed = Double.NaN;
+        info.distanceMeters = Double.POSITIVE_INFINITY;
+        JSONObject json = encode(info, DriveInfoEncoder.WaypointEncoding.OBJECTS, false);
+        assertTrue(json.isNull(ZendriveManager.AVERAGE_SPEED_KEY));
+        assertTrue(json.isNull(ZendriveManager.DISTANCE_KEY));
+        assertEquals(0, json.getJSONArray(ZendriveManager.WAYPOINTS_KEY).length());
+    }
+
+    @Test
+    public void objectsHoldEveryPoint() throws JSONException {
+        DriveInfo info = drive(new EstimatedDriveInfo(), 50);
+        JSONArray points = encode(info, DriveInfoEncoder.WaypointEncoding.OBJECTS, false)
+                .getJSONArray(ZendriveManager.WAYPOINTS_KEY);
+        assertEquals(50, points.length());
+        for (int i = 0; i < 50; i++) {
+            LocationPoint expected = info.waypoints.get(i).location;
+            JSONObject point = points.getJSONObject(i);
+            assertEquals(expected.latitude, point.getDouble(ZendriveManager.LATITUDE_KEY), DEGREES_EPSILON);
+            assertEquals(expected.longitude, point.getDouble(ZendriveManager.LONGITUDE_KEY), DEGREES_EPSILON);
+        }
+    }
+
+    @Test
+    public void columnarHoldsParallelArrays() throws JSONException {
+        DriveInfo info = drive(new EstimatedDriveInfo(), 50);
+        JSONObject waypoints = encode(info, DriveInfoEncoder.WaypointEncoding.COLUMNAR, false)
+                .getJSONObject(ZendriveManager.WAYPOINTS_KEY);
+        assertEquals("columnar", waypoints.getString("encoding"));
+        JSONArray latitudes = waypoints.getJSONArray(ZendriveManager.LATITUDE_KEY);
+        JSONArray longitudes = waypoints.getJSONArray(ZendriveManager.LONGITUDE_KEY);
+        JSONArray timestamps = waypoints.getJSONArray(ZendriveManager.TIMESTAMP_KEY);
+        assertEquals(50, latitudes.length());
+        for (int i = 0; i < 50; i++) {
+            LocationPointWithTimestamp expected = info.waypoints.get(i);
+            assertEquals(expected.location.latitude, latitudes.getDouble(i), DEGREES_EPSILON);
+            assertEquals(expected.location.longitude, longitudes.getDouble(i), DEGREES_EPSILON);
+            assertEquals(expected.timestamp, timestamps.getLong(i));
+        }
+    }
+
+    @Test
+    public void deltaDecodesToTheFixedPointValues() throws JSONException {
+        DriveInfo info = drive(new EstimatedDriveInfo(), 50);
+        JSONObject waypoints = encode(info, DriveInfoEncoder.WaypointEncoding.DELTA, false)
+                .getJSONObject(ZendriveManager.WAYPOINTS_KEY);
+        assertEquals("delta", waypoints.getString("encoding"));
+        long scale = waypoints.getLong("scale");
+        assertEquals(DriveInfoEncoder.FIXED_POINT_SCALE, scale);
+        JSONArray latitudes = waypoints.getJSONArray(ZendriveManager.LATITUDE_KEY);
+        JSONArray longitudes = waypoints.getJSONArray(ZendriveManager.LONGITUDE_KEY);
+        JSONArray timestamps = waypoints.getJSONArray(ZendriveManager.TIMESTAMP_KEY);
+        long latitude = 0;
+        long longitude = 0;
+        long timestamp = 0;
+        for (int i = 0; i < 50; i++) {
+            latitude += latitudes.getLong(i);
+            longitude += longitudes.getLong(i);
+            timestamp += timestamps.getLong(i);
+            LocationPointWithTimestamp expected = info.waypoints.get(i);
+            assertEquals(expected.location.latitude, (double) latitude / scale, FIXED_POINT_EPSILON);
+            assertEquals(expected.location.longitude, (double) longitude / scale, FIXED_POINT_EPSILON);
+            assertEquals(expected.timestamp, timestamp);
+        }
+    }
+
+    @Test
+    public void simplifiesOnlyTheEncodedWaypoints() throws JSONException {
+        DriveInfo info = drive(new EstimatedDriveInfo(), 100);
+        String encoded = encoder.encodeDriveInfo(info, new WaypointSimplifier(0, 10, 0),
+                DriveInfoEncoder.WaypointEncoding.OBJECTS, null, false);
+        assertEquals(10, new JSONObject(encoded).getJSONArray(ZendriveManager.WAYPOINTS_KEY).length());
+        assertEquals(100, info.waypoints.size());
+    }
+
+    @Test
+    public void encodesCorrectlyAfterALongDrive() throws JSONException {
+        // Large enough for the encoder to drop its buffer afterwards.
+        encode(drive(new EstimatedDriveInfo(), 20000), DriveInfoEncoder.WaypointEncoding.OBJECTS, false);
+        JSONObject json = encode(drive(new EstimatedDriveInfo(), 2), DriveInfoEncoder.WaypointEncoding.OBJECTS, false);
+        assertEquals(2, json.getJSONArray(ZendriveManager.WAYPOINTS_KEY).length());
+        assertEquals(7500.5, json.getDouble(ZendriveManager.DISTANCE_KEY), 0);
+    }
+}
@@ -0,0 +1,273 @@
+package com.zendrive.phonegap;
+
+import android.content.Context;
+
+import com.zendrive.sdk.ActiveDriveInfo;
+import com.zendrive.sdk.ZendriveConfiguration;
+import com.zendrive.sdk.ZendriveDriveDetectionMode;
+import com.zendrive.sdk.ZendriveErrorCode;
+import com.zendrive.sdk.ZendriveOperationCallback;
+import com.zendrive.sdk.ZendriveOperationResult;
+import com.zendrive.sdk.ZendriveSettingsCallback;
+
+import org.apache.cordova.PluginResult;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class InsurancePeriodStateMachineTest {
+    private static final Context context = new Context();
+
+    private final RecordingSdk sdk = new RecordingSdk();
+    private final List<InsurancePeriodStateMachine.Period> changes = new ArrayList<>();
+    private InsurancePeriodStateMachine machine;
+
+    /**
+     * Records the period calls; the test completes them.
+     */
+    private static final class RecordingSdk implements ZendriveSdk {
+        final List<String> calls = new ArrayList<>();
+        final List<ZendriveOperationCallback> callbacks = new ArrayList<>();
+
+        void complete(ZendriveOperationResult result) {
+            callbacks.remove(0).onCompletion(result);
+        }
+
+        private void record(String call, ZendriveOperationCallback callback) {
+            calls.add(call);
+            callbacks.add(callback);
+        }
+
+        @Override
+        public void startPeriod1(Context context, ZendriveOperationCallback callback) {
+            record("startPeriod1", callback);
+        }
+
+        @Override
+        public void startDriveWithPeriod2(Context context, String trackingId, ZendriveOperationCallback callback) {
+            record("startDriveWithPeriod2", callback);
+        }
+
+        @Override
+        public void startDriveWithPeriod3(Context context, String trackingId, ZendriveOperationCallback callback) {
+            record("startDriveWithPeriod3", callback);
+        }
+
+        @Override
+        public void stopPeriod(Context context, ZendriveOperationCallback callback) {
+            record("stopPeriod", callback);
+        }
+
+        @Override
+        public void setup(Context context, ZendriveConfiguration configuration, ZendriveOperationCallback callback) {
+        }
+
+        @Override
+        public boolean isSDKSetup(Context context) {
+            return true;
+        }
+
+        @Override
+        public void teardown(Context context, ZendriveOperationCallback callback) {
+        }
+
+        @Override
+        public void setZendriveDriveDetectionMode(Context context, ZendriveDriveDetectionMode mode,
+                                                  ZendriveOperationCallback callback) {
+        }
+
+        @Override
+        public void startDrive(Context context, String trackingId, ZendriveOperationCallback callback) {
+        }
+
+        @Override
+        public void stopManualDrive(Context context, ZendriveOperationCallback callback) {
+        }
+
+        @Override
+        public void startSession(Context context, String sessionId) {
+        }
+
+        @Override
+        public void stopSession(Context context) {
+        }
+
+        @Override
+        public ActiveDriveInfo getActiveDriveInfo(Context context) {
+            return null;
+        }
+
+        @Override
+        public void getZendriveSettings(Context context, ZendriveSettingsCallback callback) {
+        }
+    }
+
+    /**
+     * The results a caller received.
+     */
+    private static final class Caller {
+        final List<PluginResult> results = new ArrayList<>();
+        final CallResult call;
+
+        Caller(String action) {
+            call = new CallResult(action, results::add, null, 0);
+        }
+
+        PluginResult result() {
+            assertEquals(1, results.size());
+            return results.get(0);
+        }
+
+        boolean succeeded() {
+            return !results.isEmpty() && result().getStatus() == PluginResult.Status.OK.ordinal();
+        }
+
+        boolean failed() {
+            return !results.isEmpty() && result().getStatus() == PluginResult.Status.ERROR.ordinal();
+        }
+    }
+
+    @BeforeClass
+    public static void initManager() {
+        // Transitions to periods 0, 2 and 3 keep the tracking id on the manager.
+        ZendriveManager.init(context);
+    }
+
+    @Before
+    public void setUp() {
+        ZendriveSdk.install(sdk);
+        PluginStateStore stateStore = PluginStateStore.getInstance(context);
+        stateStore.setInsurancePeriod(PluginStateStore.UNKNOWN_PERIOD);
+        // Runs every task inline, so the SDK callbacks complete transitions on the test thread.
+        machine = new InsurancePeriodStateMachine(context, Runnable::run, stateStore);
+        machine.setListener(changes::add);
+    }
+
+    private Caller submit(InsurancePeriodStateMachine.Period target, String action) {
+        Caller caller = new Caller(action);
+        machine.submit(target, action, caller.call);
+        return caller;
+    }
+
+    @Test
+    public void appliesATransitionOnceTheSdkCompletes() {
+        Caller goOnDuty = submit(InsurancePeriodStateMachine.Period.PERIOD_1, "goOnDuty");
+        assertEquals(1, sdk.calls.size());
+        assertTrue(goOnDuty.results.isEmpty());
+
+        sdk.complete(ZendriveOperationResult.success());
+        assertTrue(goOnDuty.succeeded());
+        assertEquals("null", goOnDuty.result().getMessage());
+        assertEquals(1, changes.size());
+        assertEquals(InsurancePeriodStateMachine.Period.PERIOD_1, changes.get(0));
+        assertEquals(1, PluginStateStore.getInstance(context).getInsurancePeriod());
+    }
+
+    @Test
+    public void skipsATransitionToTheCurrentPeriod() {
+        submit(InsurancePeriodStateMachine.Period.PERIOD_1, "goOnDuty");
+        sdk.complete(ZendriveOperationResult.success());
+
+        Caller again = submit(InsurancePeriodStateMachine.Period.PERIOD_1, "goOnDuty");
+        assertTrue(again.succeeded());
+        assertEquals(1, sdk.calls.size());
+    }
+
+    @Test
+    public void alwaysRunsPeriod2ForANewPassengerRequest() {
+        submit(InsurancePeriodStateMachine.Period.PERIOD_2, "acceptPassengerRequest");
+        sdk.complete(ZendriveOperationResult.success());
+        Caller second = submit(InsurancePeriodStateMachine.Period.PERIOD_2, "acceptPassengerRequest");
+        assertEquals(2, sdk.calls.size());
+        sdk.complete(ZendriveOperationResult.success());
+        assertTrue(second.succeeded());
+    }
+
+    @Test
+    public void coalescesRequestsQueuedBehindACall() throws JSONException {
+        Caller goOnDuty = submit(InsurancePeriodStateMachine.Period.PERIOD_1, "goOnDuty");
+        Caller accept = submit(InsurancePeriodStateMachine.Period.PERIOD_2, "acceptPassengerRequest");
+        Caller pickup = submit(InsurancePeriodStateMachine.Period.PERIOD_3, "pickupPassenger");
+        assertEquals(1, sdk.calls.size());
+
+        sdk.complete(ZendriveOperationResult.success());
+        assertTrue(goOnDuty.succeeded());
+        // Only the newest queued request runs.
+        assertEquals(2, sdk.calls.size());
+        assertEquals("startDriveWithPeriod3", sdk.calls.get(1));
+        assertTrue(accept.results.isEmpty());
+
+        sdk.complete(ZendriveOperationResult.success());
+        assertTrue(pickup.succeeded());
+        assertEquals("null", pickup.result().getMessage());
+        assertTrue(accept.succeeded());
+        JSONObject coalesced = new JSONObject(accept.result().getMessage());
+        assertTrue(coalesced.getBoolean("coalesced"));
+        assertEquals("pickupPassenger", coalesced.getString("appliedAction"));
+        assertEquals(3, coalesced.getInt("insurancePeriod"));
+        assertEquals(2, changes.size());
+    }
+
+    @Test
+    public void collapsesARoundTripIntoNothing() throws JSONException {
+        Caller goOnDuty = submit(InsurancePeriodStateMachine.Period.PERIOD_1, "goOnDuty");
+        Caller accept = submit(InsurancePeriodStateMachine.Period.PERIOD_2, "acceptPassengerRequest");
+        Caller cancel = submit(InsurancePeriodStateMachine.Period.PERIOD_1, "cancelPassengerRequest");
+
+        sdk.complete(ZendriveOperationResult.success());
+        // Period 1 is already applied, so the request that replaced period 2 needs no call.
+        assertEquals(1, sdk.calls.size());
+        assertTrue(goOnDuty.succeeded());
+        assertTrue(cancel.succeeded());
+        assertTrue(accept.succeeded());
+        JSONObject coalesced = new JSONObject(accept.result().getMessage());
+        assertEquals("cancelPassengerRequest", coalesced.getString("appliedAction"));
+        assertEquals(1, coalesced.getInt("insurancePeriod"));
+    }
+
+    @Test
+    public void failsEveryCoalescedRequestWithTheTransitionThatReplacedThem() {
+        submit(InsurancePeriodStateMachine.Period.PERIOD_1, "goOnDuty");
+        Caller accept = submit(InsurancePeriodStateMachine.Period.PERIOD_2, "acceptPassengerRequest");
+        Caller pickup = submit(InsurancePeriodStateMachine.Period.PERIOD_3, "pickupPassenger");
+        Caller goOffDuty = submit(InsurancePeriodStateMachine.Period.PERIOD_0, "goOffDuty");
+        sdk.complete(ZendriveOperationResult.success());
+        assertEquals("stopPeriod", sdk.calls.get(1));
+
+        sdk.complete(ZendriveOperationResult.error(ZendriveErrorCode.INTERNAL_ERROR, "boom"));
+        assertTrue(goOffDuty.failed());
+        assertTrue(goOffDuty.result().getMessage().startsWith("Zendrive goOffDuty failed"));
+        assertTrue(accept.failed());
+        assertTrue(pickup.failed());
+        assertEquals(goOffDuty.result().getMessage(), accept.result().getMessage());
+        assertEquals(goOffDuty.result().getMessage(), pickup.result().getMessage());
+        // The failed transition did not change the period.
+        assertEquals(1, changes.size());
+        assertEquals(1, PluginStateStore.getInstance(context).getInsurancePeriod());
+    }
+
+    @Test
+    public void resetFailsTheQueuedRequestButNotTheOneInFlight() {
+        Caller goOnDuty = submit(InsurancePeriodStateMachine.Period.PERIOD_1, "goOnDuty");
+        Caller accept = submit(InsurancePeriodStateMachine.Period.PERIOD_2, "acceptPassengerRequest");
+        Caller pickup = submit(InsurancePeriodStateMachine.Period.PERIOD_3, "pickupPassenger");
+
+        machine.reset();
+        assertTrue(pickup.failed());
+        assertTrue(pickup.result().getMessage().contains("torn down"));
+        assertTrue(accept.failed());
+        assertTrue(goOnDuty.results.isEmpty());
+
+        sdk.complete(ZendriveOperationResult.success());
+        assertTrue(goOnDuty.succeeded());
+        assertEquals(1, sdk.calls.size());
+    }
+}
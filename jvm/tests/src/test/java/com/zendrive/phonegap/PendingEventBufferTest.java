@@ -0,0 +1,127 @@
+package com.zendrive.phonegap;
+
+import org.json.JSONException;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class PendingEventBufferTest {
+    private static final String START = ZendriveManager.EVENT_DRIVE_START;
+    private static final String END = ZendriveManager.EVENT_DRIVE_END;
+
+    private static DriveEvent event(String type, int id) {
+        return DriveEvent.encoded(type, "{\"id\":" + id + "}");
+    }
+
+    private static List<String> payloads(List<DriveEvent> events) throws JSONException {
+        List<String> payloads = new ArrayList<>();
+        for (DriveEvent event : events) {
+            payloads.add(event.encode(null));
+        }
+        return payloads;
+    }
+
+    private static List<String> ids(int... ids) {
+        List<String> payloads = new ArrayList<>();
+        for (int id : ids) {
+            payloads.add("{\"id\":" + id + "}");
+        }
+        return payloads;
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsAnEmptyCapacity() {
+        new PendingEventBuffer(0);
+    }
+
+    @Test
+    public void drainsEventsOfOneTypeOldestFirst() throws JSONException {
+        PendingEventBuffer buffer = new PendingEventBuffer(8);
+        buffer.add(event(START, 1));
+        buffer.add(event(END, 2));
+        buffer.add(event(START, 3));
+        buffer.add(event(END, 4));
+        assertTrue(buffer.hasEvents(START));
+        assertEquals(ids(1, 3), payloads(buffer.drain(START)));
+        assertFalse(buffer.hasEvents(START));
+        // The other type keeps its order.
+        assertEquals(ids(2, 4), payloads(buffer.drain(END)));
+        assertFalse(buffer.hasEvents(END));
+    }
+
+    @Test
+    public void drainingAnAbsentTypeReturnsNothing() {
+        PendingEventBuffer buffer = new PendingEventBuffer(4);
+        buffer.add(event(START, 1));
+        assertEquals(Collections.<DriveEvent>emptyList(), buffer.drain(END));
+        assertTrue(buffer.hasEvents(START));
+    }
+
+    @Test
+    public void dropsTheOldestEventWhenFull() throws JSONException {
+        PendingEventBuffer buffer = new PendingEventBuffer(3);
+        for (int i = 1; i <= 5; i++) {
+            buffer.add(event(START, i));
+        }
+        assertEquals(2, buffer.takeDroppedCount());
+        assertEquals(0, buffer.takeDroppedCount());
+        assertEquals(ids(3, 4, 5), payloads(buffer.drain(START)));
+    }
+
+    @Test
+    public void wrapsAroundAfterPartialDrains() throws JSONException {
+        PendingEventBuffer buffer = new PendingEventBuffer(4);
+        buffer.add(event(START, 1));
+        buffer.add(event(END, 2));
+        buffer.add(event(START, 3));
+        buffer.drain(START);
+        // The head has moved; these wrap around the end of the array.
+        buffer.add(event(START, 4));
+        buffer.add(event(END, 5));
+        buffer.add(event(START, 6));
+        assertEquals(0, buffer.takeDroppedCount());
+        buffer.add(event(END, 7));
+        assertEquals(1, buffer.takeDroppedCount());
+        assertEquals(ids(4, 6), payloads(buffer.drain(START)));
+        assertEquals(ids(5, 7), payloads(buffer.drain(END)));
+    }
+
+    @Test
+    public void shrinkingKeepsTheNewestEvents() throws JSONException {
+        PendingEventBuffer buffer = new PendingEventBuffer(8);
+        for (int i = 1; i <= 6; i++) {
+            buffer.add(event(i % 2 == 0 ? END : START, i));
+        }
+        buffer.setCapacity(3);
+        assertEquals(3, buffer.takeDroppedCount());
+        assertEquals(ids(5), payloads(buffer.drain(START)));
+        assertEquals(ids(4, 6), payloads(buffer.drain(END)));
+    }
+
+    @Test
+    public void growingKeepsEveryEvent() throws JSONException {
+        PendingEventBuffer buffer = new PendingEventBuffer(2);
+        buffer.add(event(START, 1));
+        buffer.add(event(START, 2));
+        buffer.setCapacity(4);
+        buffer.add(event(START, 3));
+        buffer.add(event(START, 4));
+        assertEquals(0, buffer.takeDroppedCount());
+        assertEquals(ids(1, 2, 3, 4), payloads(buffer.drain(START)));
+    }
+
+    @Test
+    public void drainedEventsAreTheOnesAdded() {
+        PendingEventBuffer buffer = new PendingEventBuffer(2);
+        DriveEvent event = event(START, 1);
+        buffer.add(event);
+        assertSame(event, buffer.drain(START).get(0));
+    }
+}
@@ -0,0 +1,71 @@
+package com.zendrive.phonegap;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SetupFingerprintTest {
+    private static final String KEY = "application-key";
+    private static final String DRIVER = "driver-1";
+
+    @Test
+    public void isAHexSha256() throws JSONException {
+        String fingerprint = SetupFingerprint.of(KEY, DRIVER, null);
+        assertEquals(64, fingerprint.length());
+        assertTrue(fingerprint.matches("[0-9a-f]+"));
+    }
+
+    @Test
+    public void ignoresTheOrderOfAttributeKeys() throws JSONException {
+        JSONObject first = new JSONObject()
+                .put("firstName", "Jane")
+                .put("lastName", "Doe")
+                .put("customAttributes", new JSONObject().put("fleet", "north").put("shift", "night"));
+        JSONObject second = new JSONObject()
+                .put("customAttributes", new JSONObject().put("shift", "night").put("fleet", "north"))
+                .put("lastName", "Doe")
+                .put("firstName", "Jane");
+        assertEquals(SetupFingerprint.of(KEY, DRIVER, first), SetupFingerprint.of(KEY, DRIVER, second));
+    }
+
+    @Test
+    public void keepsTheOrderOfArrays() throws JSONException {
+        JSONObject first = new JSONObject().put("groups", new JSONArray().put("a").put("b"));
+        JSONObject second = new JSONObject().put("groups", new JSONArray().put("b").put("a"));
+        assertNotEquals(SetupFingerprint.of(KEY, DRIVER, first), SetupFingerprint.of(KEY, DRIVER, second));
+    }
+
+    @Test
+    public void changesWithEveryPart() throws JSONException {
+        JSONObject attributes = new JSONObject().put("firstName", "Jane");
+        String fingerprint = SetupFingerprint.of(KEY, DRIVER, attributes);
+        assertNotEquals(fingerprint, SetupFingerprint.of("other-key", DRIVER, attributes));
+        assertNotEquals(fingerprint, SetupFingerprint.of(KEY, "driver-2", attributes));
+        assertNotEquals(fingerprint, SetupFingerprint.of(KEY, DRIVER, new JSONObject().put("firstName", "John")));
+        assertNotEquals(fingerprint, SetupFingerprint.of(KEY, DRIVER, null));
+    }
+
+    @Test
+    public void treatsJsonNullAsNoAttributes() throws JSONException {
+        assertEquals(SetupFingerprint.of(KEY, DRIVER, null), SetupFingerprint.of(KEY, DRIVER, JSONObject.NULL));
+    }
+
+    @Test
+    public void tellsStringsFromOtherValues() throws JSONException {
+        assertNotEquals(SetupFingerprint.of(KEY, DRIVER, new JSONObject().put("driverStartDate", "1500000000")),
+                SetupFingerprint.of(KEY, DRIVER, new JSONObject().put("driverStartDate", 1500000000L)));
+        assertNotEquals(SetupFingerprint.of(KEY, null, null), SetupFingerprint.of(KEY, "null", null));
+    }
+
+    @Test
+    public void isNotFooledBySeparatorsInValues() throws JSONException {
+        assertNotEquals(SetupFingerprint.of("a,b", "c", null), SetupFingerprint.of("a", "b,c", null));
+        assertNotEquals(SetupFingerprint.of(KEY, DRIVER, new JSONObject().put("a", "b\",\"c")),
+                SetupFingerprint.of(KEY, DRIVER, new JSONObject().put("a", "b").put("c", "")));
+    }
+}
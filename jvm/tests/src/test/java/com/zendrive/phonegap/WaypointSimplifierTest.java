@@ -0,0 +1,150 @@
+package com.zendrive.phonegap;
+
+import com.zendrive.sdk.LocationPoint;
+import com.zendrive.sdk.LocationPointWithTimestamp;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class WaypointSimplifierTest {
+    private static final double LATITUDE = 37.7749;
+    private static final double LONGITUDE = -122.4194;
+    // About 10 m east at LATITUDE.
+    private static final double STEP_DEGREES = 10 / GeoMath.metersPerDegreeLongitude(LATITUDE);
+
+    private static LocationPointWithTimestamp point(double latitude, double longitude, long timestamp) {
+        return new LocationPointWithTimestamp(new LocationPoint(latitude, longitude), timestamp);
+    }
+
+    // Heads east, one point every 10 m and every second.
+    private static List<LocationPointWithTimestamp> straightLine(int count) {
+        List<LocationPointWithTimestamp> points = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            points.add(point(LATITUDE, LONGITUDE + i * STEP_DEGREES, i * 1000L));
+        }
+        return points;
+    }
+
+    @Test
+    public void noneReturnsTheWaypointsUnchanged() {
+        List<LocationPointWithTimestamp> points = straightLine(100);
+        assertFalse(WaypointSimplifier.NONE.isEnabled());
+        assertSame(points, WaypointSimplifier.NONE.simplify(points));
+    }
+
+    @Test
+    public void fromJsonWithoutOptionsIsNone() throws JSONException {
+        assertSame(WaypointSimplifier.NONE, WaypointSimplifier.fromJson(null));
+        assertFalse(WaypointSimplifier.fromJson(new JSONObject()).isEnabled());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void fromJsonRejectsABudgetOfOnePoint() throws JSONException {
+        WaypointSimplifier.fromJson(new JSONObject().put(WaypointSimplifier.MAX_POINTS_KEY, 1));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void fromJsonRejectsANegativeTolerance() throws JSONException {
+        WaypointSimplifier.fromJson(new JSONObject().put(WaypointSimplifier.TOLERANCE_METERS_KEY, -1));
+    }
+
+    @Test
+    public void shortDrivesAreKept() {
+        List<LocationPointWithTimestamp> points = straightLine(2);
+        assertSame(points, new WaypointSimplifier(5, 2, 1000).simplify(points));
+    }
+
+    @Test
+    public void toleranceReducesAStraightLineToItsEnds() {
+        List<LocationPointWithTimestamp> points = straightLine(1000);
+        List<LocationPointWithTimestamp> simplified = new WaypointSimplifier(1, 0, 0).simplify(points);
+        assertEquals(2, simplified.size());
+        assertSame(points.get(0), simplified.get(0));
+        assertSame(points.get(999), simplified.get(1));
+    }
+
+    @Test
+    public void toleranceKeepsACorner() {
+        List<LocationPointWithTimestamp> points = straightLine(50);
+        LocationPointWithTimestamp corner = points.get(49);
+        // Then 500 m north.
+        double stepNorth = 10 / GeoMath.metersPerDegreeLatitude();
+        for (int i = 1; i < 50; i++) {
+            points.add(point(LATITUDE + i * stepNorth, corner.location.longitude, (49 + i) * 1000L));
+        }
+        List<LocationPointWithTimestamp> simplified = new WaypointSimplifier(5, 0, 0).simplify(points);
+        assertEquals(3, simplified.size());
+        assertSame(corner, simplified.get(1));
+    }
+
+    @Test
+    public void toleranceKeepsPointsFartherThanItFromTheLine() {
+        List<LocationPointWithTimestamp> points = straightLine(3);
+        // 20 m north of the line.
+        LocationPointWithTimestamp middle = points.get(1);
+        points.set(1, point(LATITUDE + 20 / GeoMath.metersPerDegreeLatitude(), middle.location.longitude,
+                middle.timestamp));
+        assertEquals(3, new WaypointSimplifier(10, 0, 0).simplify(points).size());
+        assertEquals(2, new WaypointSimplifier(30, 0, 0).simplify(points).size());
+    }
+
+    @Test
+    public void decimationKeepsOnePointPerIntervalAndTheEnds() {
+        List<LocationPointWithTimestamp> points = straightLine(101);
+        List<LocationPointWithTimestamp> simplified = new WaypointSimplifier(0, 0, 10000).simplify(points);
+        assertEquals(11, simplified.size());
+        for (int i = 0; i < simplified.size(); i++) {
+            assertEquals(i * 10000L, simplified.get(i).timestamp);
+        }
+    }
+
+    @Test
+    public void decimationKeepsTheLastPointEvenIfItIsClose() {
+        List<LocationPointWithTimestamp> points = straightLine(12);
+        List<LocationPointWithTimestamp> simplified = new WaypointSimplifier(0, 0, 10000).simplify(points);
+        assertEquals(3, simplified.size());
+        assertEquals(10000L, simplified.get(1).timestamp);
+        assertEquals(11000L, simplified.get(2).timestamp);
+    }
+
+    @Test
+    public void maxPointsSamplesEvenlyAndKeepsTheEnds() {
+        List<LocationPointWithTimestamp> points = straightLine(1001);
+        List<LocationPointWithTimestamp> simplified = new WaypointSimplifier(0, 11, 0).simplify(points);
+        assertEquals(11, simplified.size());
+        for (int i = 0; i < simplified.size(); i++) {
+            assertSame(points.get(i * 100), simplified.get(i));
+        }
+    }
+
+    @Test
+    public void maxPointsAppliesAfterTheOtherStages() {
+        List<LocationPointWithTimestamp> points = straightLine(1000);
+        // The tolerance alone leaves two points, under the budget.
+        assertEquals(2, new WaypointSimplifier(1, 100, 0).simplify(points).size());
+        assertEquals(100, new WaypointSimplifier(0, 100, 0).simplify(points).size());
+    }
+
+    @Test
+    public void longDrivesDoNotOverflowTheStack() {
+        // A zigzag splits one point off at a time, as deep as the drive is long.
+        List<LocationPointWithTimestamp> points = new ArrayList<>();
+        double offset = 50 / GeoMath.metersPerDegreeLatitude();
+        for (int i = 0; i < 20000; i++) {
+            points.add(point(LATITUDE + (i % 2 == 0 ? 0 : offset), LONGITUDE + i * STEP_DEGREES, i * 1000L));
+        }
+        List<LocationPointWithTimestamp> simplified = new WaypointSimplifier(1, 0, 0).simplify(points);
+        assertTrue(simplified.size() > 19000);
+        assertSame(points.get(0), simplified.get(0));
+        assertSame(points.get(points.size() - 1), simplified.get(simplified.size() - 1));
+    }
+}
@@ -0,0 +1,228 @@
+package com.zendrive.phonegap;
+
+import android.app.NotificationManager;
+import android.content.Context;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Accidents do not go through the event buffer. They are persisted as soon as they are
+ * received, handed to JS listeners right away, and kept until JS acknowledges them with
+ * {@code Zendrive.acknowledgeAccident}; every accident listener that registers receives the
+ * unacknowledged ones. If no listener can be reached a high importance notification is posted.
+ *
+ * The lane also measures how long accidents take from the broadcast to the bridge, and from
+ * the broadcast to the acknowledgement.
+ */
+class AccidentPriorityLane {
+    private static final String TAG = "ZendriveAccidents";
+    private static final String FILE_NAME = "zendrive_pending_accidents.bin";
+    private static final int FORMAT_VERSION = 1;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    // Oldest unacknowledged accidents are dropped beyond this.
+    private static final int MAX_PENDING = 32;
+
+    static final class PendingAccident {
+        final String accidentId;
+        final long receivedAtMillis;
+        final String encodedEvent;
+
+        PendingAccident(String accidentId, long receivedAtMillis, String encodedEvent) {
+            this.accidentId = accidentId;
+            this.receivedAtMillis = receivedAtMillis;
+            this.encodedEvent = encodedEvent;
+        }
+    }
+
+    private static AccidentPriorityLane instance;
+
+    private final Context context;
+    private final File file;
+    private final Map<String, PendingAccident> pending = new LinkedHashMap<>();
+    private boolean loaded;
+
+    // Delivery latency, broadcast to bridge.
+    private long deliveredCount;
+    private long lastDeliveryMillis;
+    private long maxDeliveryMillis;
+    // End to end latency, broadcast to acknowledgement.
+    private long acknowledgedCount;
+    private long lastAcknowledgeMillis;
+    private long maxAcknowledgeMillis;
+
+    static synchronized AccidentPriorityLane getInstance(Context context) {
+        if (instance == null) {
+            instance = new AccidentPriorityLane(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private AccidentPriorityLane(Context context) {
+        this.context = context;
+        this.file = new File(context.getFilesDir(), FILE_NAME);
+    }
+
+    /**
+     * Persists an accident before any attempt to deliver it.
+     */
+    synchronized PendingAccident record(String accidentId, long receivedAtMillis, String encodedEvent) {
+        load();
+        String key = accidentId != null ? accidentId : String.valueOf(receivedAtMillis);
+        PendingAccident accident = new PendingAccident(key, receivedAtMillis, encodedEvent);
+        pending.remove(key);
+        pending.put(key, accident);
+        Iterator<String> oldest = pending.keySet().iterator();
+        while (pending.size() > MAX_PENDING) {
+            oldest.next();
+            oldest.remove();
+        }
+        write();
+        return accident;
+    }
+
+    /**
+     * @return whether {@code accidentId} was pending.
+     */
+    synchronized boolean acknowledge(String accidentId) {
+        load();
+        PendingAccident accident = pending.remove(accidentId);
+        if (accident == null) {
+            return false;
+        }
+        write();
+        long latency = Math.max(0, System.currentTimeMillis() - accident.receivedAtMillis);
+        acknowledgedCount++;
+        lastAcknowledgeMillis = latency;
+        maxAcknowledgeMillis = Math.max(maxAcknowledgeMillis, latency);
+        Log.i(TAG, "Accident " + accidentId + " acknowledged " + latency + " ms after it was received");
+        if (pending.isEmpty()) {
+            getNotificationManager().cancel(NotificationUtility.ACCIDENT_NOTIFICATION_ID);
+        }
+        return true;
+    }
+
+    synchronized List<PendingAccident> getPending() {
+        load();
+        return new ArrayList<>(pending.values());
+    }
+
+    /**
+     * Records that an accident received at {@code receivedElapsedMillis}
+     * ({@link SystemClock#elapsedRealtime()}) was handed to the bridge.
+     */
+    synchronized void recordDelivery(long receivedElapsedMillis) {
+        long latency = SystemClock.elapsedRealtime() - receivedElapsedMillis;
+        deliveredCount++;
+        lastDeliveryMillis = latency;
+        maxDeliveryMillis = Math.max(maxDeliveryMillis, latency);
+        Log.i(TAG, "Accident delivered to JS in " + latency + " ms");
+    }
+
+    synchronized long getDeliveredCount() {
+        return deliveredCount;
+    }
+
+    synchronized long getLastDeliveryMillis() {
+        return lastDeliveryMillis;
+    }
+
+    synchronized long getMaxDeliveryMillis() {
+        return maxDeliveryMillis;
+    }
+
+    synchronized long getAcknowledgedCount() {
+        return acknowledgedCount;
+    }
+
+    synchronized long getLastAcknowledgeMillis() {
+        return lastAcknowledgeMillis;
+    }
+
+    synchronized long getMaxAcknowledgeMillis() {
+        return maxAcknowledgeMillis;
+    }
+
+    /**
+     * Tells the user about an accident that could not be handed to a live JS listener.
+     */
+    void notifyUser() {
+        try {
+            getNotificationManager().notify(NotificationUtility.ACCIDENT_NOTIFICATION_ID,
+                    NotificationUtility.createAccidentNotification(context));
+        } catch (RuntimeException e) {
+            Log.e(TAG, "Failed to post accident notification", e);
+        }
+    }
+
+    private NotificationManager getNotificationManager() {
+        return (NotificationManager) context.getSystemService(Context.NOTIFICATION_SERVICE);
+    }
+
+    private void load() {
+        if (loaded) {
+            return;
+        }
+        loaded = true;
+        if (!file.exists()) {
+            return;
+        }
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            int version = input.readUnsignedByte();
+            if (version != FORMAT_VERSION) {
+                Log.w(TAG, "Ignoring pending accidents with version " + version);
+                return;
+            }
+            int count = input.readInt();
+            for (int i = 0; i < count; i++) {
+                String accidentId = input.readUTF();
+                long receivedAtMillis = input.readLong();
+                byte[] payload = new byte[input.readInt()];
+                input.readFully(payload);
+                pending.put(accidentId, new PendingAccident(accidentId, receivedAtMillis, new String(payload, UTF_8)));
+            }
+        } catch (IOException | RuntimeException e) {
+            Log.e(TAG, "Failed to load pending accidents", e);
+        }
+    }
+
+    // Accidents are rare; the whole file is rewritten and synced on every change.
+    private void write() {
+        File temp = new File(file.getPath() + ".tmp");
+        try (FileOutputStream stream = new FileOutputStream(temp)) {
+            DataOutputStream output = new DataOutputStream(new BufferedOutputStream(stream));
+            output.writeByte(FORMAT_VERSION);
+            output.writeInt(pending.size());
+            for (PendingAccident accident : pending.values()) {
+                byte[] payload = accident.encodedEvent.getBytes(UTF_8);
+                output.writeUTF(accident.accidentId);
+                output.writeLong(accident.receivedAtMillis);
+                output.writeInt(payload.length);
+                output.write(payload);
+            }
+            output.flush();
+            stream.getFD().sync();
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to persist pending accidents", e);
+            return;
+        }
+        if (!temp.renameTo(file)) {
+            Log.e(TAG, "Failed to replace pending accidents file");
+        }
+    }
+}
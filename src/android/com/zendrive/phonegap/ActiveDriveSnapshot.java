@@ -0,0 +1,91 @@
+package com.zendrive.phonegap;
+
+import com.zendrive.sdk.ActiveDriveInfo;
+import com.zendrive.sdk.DriveResumeInfo;
+import com.zendrive.sdk.DriveStartInfo;
+import com.zendrive.sdk.ZendriveInsurancePeriod;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Immutable view of the drive in progress, as last reported by the SDK. Instances are
+ * compared by identity, so a newer snapshot can safely replace an older one with
+ * compare-and-set.
+ */
+final class ActiveDriveSnapshot {
+    /** Nothing has been observed yet; the SDK has to be asked. */
+    static final ActiveDriveSnapshot UNKNOWN = new ActiveDriveSnapshot(false, 0, null, null, null);
+    /** No drive is in progress. */
+    static final ActiveDriveSnapshot NO_DRIVE = new ActiveDriveSnapshot(false, 0, null, null, null);
+
+    final boolean active;
+    final long startTimeMillis;
+    final String trackingId;
+    final String sessionId;
+    final ZendriveInsurancePeriod insurancePeriod;
+    private final String encoded;
+
+    private ActiveDriveSnapshot(boolean active, long startTimeMillis, String trackingId, String sessionId,
+                                ZendriveInsurancePeriod insurancePeriod) {
+        this.active = active;
+        this.startTimeMillis = startTimeMillis;
+        this.trackingId = trackingId;
+        this.sessionId = sessionId;
+        this.insurancePeriod = insurancePeriod;
+        this.encoded = active ? encode() : null;
+    }
+
+    static ActiveDriveSnapshot of(ActiveDriveInfo info) {
+        if (info == null) {
+            return NO_DRIVE;
+        }
+        return new ActiveDriveSnapshot(true, info.startTimeMillis, info.trackingId, info.sessionId,
+                info.insurancePeriod);
+    }
+
+    static ActiveDriveSnapshot of(DriveStartInfo info) {
+        return new ActiveDriveSnapshot(true, info.startTimeMillis, info.trackingId, info.sessionId,
+                info.insurancePeriod);
+    }
+
+    static ActiveDriveSnapshot of(DriveResumeInfo info) {
+        return new ActiveDriveSnapshot(true, info.startTimeMillis, info.trackingId, info.sessionId,
+                info.insurancePeriod);
+    }
+
+    boolean sameDriveAs(ActiveDriveSnapshot other) {
+        return active == other.active
+                && startTimeMillis == other.startTimeMillis
+                && equal(trackingId, other.trackingId)
+                && equal(sessionId, other.sessionId)
+                && insurancePeriod == other.insurancePeriod;
+    }
+
+    /**
+     * @return the drive, ready to be sent to JS, or null if no drive is in progress.
+     */
+    JSONObject toJson() {
+        return encoded == null ? null : new EncodedJsonObject(encoded);
+    }
+
+    private String encode() {
+        try {
+            JSONObject activeDriveInfoObject = new JSONObject();
+            activeDriveInfoObject.put(ZendriveManager.START_TIMESTAMP_KEY, startTimeMillis);
+            activeDriveInfoObject.put(ZendriveManager.TRACKING_ID_KEY,
+                    (trackingId != null) ? trackingId : JSONObject.NULL);
+            activeDriveInfoObject.put(ZendriveManager.SESSION_ID_KEY,
+                    (sessionId != null) ? sessionId : JSONObject.NULL);
+            activeDriveInfoObject.put(ZendriveManager.INSURANCE_PERIOD_KEY,
+                    (insurancePeriod != null) ? ZendriveManager.GetPeriodInt(insurancePeriod) : JSONObject.NULL);
+            return activeDriveInfoObject.toString();
+        } catch (JSONException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static boolean equal(Object a, Object b) {
+        return a == null ? b == null : a.equals(b);
+    }
+}
@@ -0,0 +1,151 @@
+package com.zendrive.phonegap;
+
+import android.util.Log;
+
+import com.zendrive.sdk.ZendriveOperationCallback;
+import com.zendrive.sdk.ZendriveOperationResult;
+
+import org.apache.cordova.CallbackContext;
+import org.apache.cordova.PluginResult;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Routes the result of a single bridge call back to the JS callback that issued it.
+ * One instance is created per {@code execute} call and handed down to the code that
+ * completes it, so overlapping calls never share a {@link CallbackContext}. Exactly one
+ * terminal result is sent; later attempts are logged and dropped.
+ */
+class CallResult {
+    private static final String TAG = "ZendriveCallResult";
+
+    private final String action;
+    private final CallbackContext callbackContext;
+    private final AtomicBoolean completed = new AtomicBoolean(false);
+    private final PluginMetrics.ActionMetrics metrics;
+    private final long queuedNanos;
+    private final Listener listener;
+
+    /**
+     * Receives the terminal result instead of a {@link CallbackContext}, e.g. a command of a batch.
+     */
+    interface Listener {
+        void onResult(PluginResult result);
+    }
+
+    CallResult(String action, CallbackContext callbackContext) {
+        this(action, callbackContext, null, 0);
+    }
+
+    CallResult(String action, Listener listener, PluginMetrics.ActionMetrics metrics, long queuedNanos) {
+        this.action = action;
+        this.callbackContext = null;
+        this.metrics = metrics;
+        this.queuedNanos = queuedNanos;
+        this.listener = listener;
+    }
+
+    /**
+     * @param metrics     records the time from {@code queuedNanos} ({@link System#nanoTime()}
+     *                    when the call arrived) until the result is sent, if not null.
+     */
+    CallResult(String action, CallbackContext callbackContext, PluginMetrics.ActionMetrics metrics,
+               long queuedNanos) {
+        this.action = action;
+        this.callbackContext = callbackContext;
+        this.metrics = metrics;
+        this.queuedNanos = queuedNanos;
+        this.listener = null;
+    }
+
+    String getAction() {
+        return action;
+    }
+
+    /**
+     * The underlying context, for actions that keep the callback alive (listener registration).
+     */
+    CallbackContext getCallbackContext() {
+        return callbackContext;
+    }
+
+    void success() {
+        complete(new PluginResult(PluginResult.Status.OK));
+    }
+
+    void success(String message) {
+        complete(new PluginResult(PluginResult.Status.OK, message));
+    }
+
+    void success(JSONObject dataObject) {
+        complete(new PluginResult(PluginResult.Status.OK, dataObject));
+    }
+
+    void success(JSONArray dataArray) {
+        complete(new PluginResult(PluginResult.Status.OK, dataArray));
+    }
+
+    void error(String errorMessage) {
+        complete(new PluginResult(PluginResult.Status.ERROR, errorMessage));
+    }
+
+    void error(String errorMessage, Throwable ex) {
+        error(errorMessage
+                .concat(" ").concat(String.valueOf(ex.getMessage()))
+                .concat("\r\n").concat(getStackTraceString(ex)));
+    }
+
+    void error(String errorMessage, ZendriveOperationResult result) {
+        error(errorMessage
+                .concat(" ").concat(String.valueOf(result.getErrorCode()))
+                .concat(" - ").concat(String.valueOf(result.getErrorMessage())));
+    }
+
+    /**
+     * Sends {@code result} as the terminal result of this call.
+     *
+     * @return false if the call had already been completed.
+     */
+    boolean complete(PluginResult result) {
+        if (!completed.compareAndSet(false, true)) {
+            Log.w(TAG, "Dropping second result for " + action);
+            return false;
+        }
+        result.setKeepCallback(false);
+        if (metrics != null) {
+            metrics.recordCompletion(queuedNanos, result.getStatus() == PluginResult.Status.ERROR.ordinal());
+        }
+        if (listener != null) {
+            listener.onResult(result);
+        } else if (callbackContext != null) {
+            callbackContext.sendPluginResult(result);
+        } else {
+            Log.d(TAG, action + " completed without a callback");
+        }
+        return true;
+    }
+
+    /**
+     * Callback that completes this call with the outcome of a Zendrive SDK operation.
+     */
+    ZendriveOperationCallback callback(final String errorMessage) {
+        return result -> {
+            if (result.isSuccess()) {
+                success();
+            } else {
+                error(errorMessage, result);
+            }
+        };
+    }
+
+    private static String getStackTraceString(Throwable ex) {
+        StringWriter sw = new StringWriter();
+        PrintWriter pw = new PrintWriter(sw);
+        ex.printStackTrace(pw);
+        return sw.toString();
+    }
+}
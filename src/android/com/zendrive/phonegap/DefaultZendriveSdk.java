@@ -0,0 +1,96 @@
+package com.zendrive.phonegap;
+
+import android.content.Context;
+
+import com.zendrive.sdk.ActiveDriveInfo;
+import com.zendrive.sdk.Zendrive;
+import com.zendrive.sdk.ZendriveConfiguration;
+import com.zendrive.sdk.ZendriveDriveDetectionMode;
+import com.zendrive.sdk.ZendriveOperationCallback;
+import com.zendrive.sdk.ZendriveSettingsCallback;
+import com.zendrive.sdk.insurance.ZendriveInsurance;
+
+/**
+ * The real Zendrive SDK. Drive events are delivered to {@link ZendriveCordovaBroadcastReceiver}.
+ */
+final class DefaultZendriveSdk implements ZendriveSdk {
+    static final DefaultZendriveSdk INSTANCE = new DefaultZendriveSdk();
+
+    // Read by ZendriveSdk.get().
+    static volatile ZendriveSdk current = INSTANCE;
+
+    private DefaultZendriveSdk() {
+    }
+
+    @Override
+    public void setup(Context context, ZendriveConfiguration configuration, ZendriveOperationCallback callback) {
+        Zendrive.setup(context, configuration, ZendriveCordovaBroadcastReceiver.class,
+                ZendriveNotificationProviderImpl.class, callback);
+    }
+
+    @Override
+    public boolean isSDKSetup(Context context) {
+        return Zendrive.isSDKSetup(context);
+    }
+
+    @Override
+    public void teardown(Context context, ZendriveOperationCallback callback) {
+        Zendrive.teardown(context, callback);
+    }
+
+    @Override
+    public void setZendriveDriveDetectionMode(Context context, ZendriveDriveDetectionMode mode,
+                                              ZendriveOperationCallback callback) {
+        Zendrive.setZendriveDriveDetectionMode(context, mode, callback);
+    }
+
+    @Override
+    public void startDrive(Context context, String trackingId, ZendriveOperationCallback callback) {
+        Zendrive.startDrive(context, trackingId, callback);
+    }
+
+    @Override
+    public void stopManualDrive(Context context, ZendriveOperationCallback callback) {
+        Zendrive.stopManualDrive(context, callback);
+    }
+
+    @Override
+    public void startSession(Context context, String sessionId) {
+        Zendrive.startSession(context, sessionId);
+    }
+
+    @Override
+    public void stopSession(Context context) {
+        Zendrive.stopSession(context);
+    }
+
+    @Override
+    public ActiveDriveInfo getActiveDriveInfo(Context context) {
+        return Zendrive.getActiveDriveInfo(context);
+    }
+
+    @Override
+    public void getZendriveSettings(Context context, ZendriveSettingsCallback callback) {
+        Zendrive.getZendriveSettings(context, callback);
+    }
+
+    @Override
+    public void startPeriod1(Context context, ZendriveOperationCallback callback) {
+        ZendriveInsurance.startPeriod1(context, callback);
+    }
+
+    @Override
+    public void startDriveWithPeriod2(Context context, String trackingId, ZendriveOperationCallback callback) {
+        ZendriveInsurance.startDriveWithPeriod2(context, trackingId, callback);
+    }
+
+    @Override
+    public void startDriveWithPeriod3(Context context, String trackingId, ZendriveOperationCallback callback) {
+        ZendriveInsurance.startDriveWithPeriod3(context, trackingId, callback);
+    }
+
+    @Override
+    public void stopPeriod(Context context, ZendriveOperationCallback callback) {
+        ZendriveInsurance.stopPeriod(context, callback);
+    }
+}
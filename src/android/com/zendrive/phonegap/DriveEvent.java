@@ -0,0 +1,251 @@
+package com.zendrive.phonegap;
+
+import com.zendrive.sdk.AccidentInfo;
+import com.zendrive.sdk.AnalyzedDriveInfo;
+import com.zendrive.sdk.DriveInfo;
+import com.zendrive.sdk.DriveResumeInfo;
+import com.zendrive.sdk.DriveStartInfo;
+import com.zendrive.sdk.LocationPoint;
+import com.zendrive.sdk.ZendriveDriveType;
+import com.zendrive.sdk.ZendriveInsurancePeriod;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.Set;
+
+/**
+ * An SDK event on its way to JS listeners. Events keep the SDK object they were created from
+ * and are only encoded when they are delivered, once per distinct field projection, so an
+ * event nobody listens to is never serialized and a listener that only asked for a few
+ * fields does not pay for the rest (e.g. the waypoints of an analyzed drive).
+ *
+ * A {@code null} field set means all fields. Projection applies to top level keys.
+ *
+ * Events also keep the few values a {@link DriveEventFilter} checks, so that listeners can
+ * be skipped before anything is encoded.
+ */
+abstract class DriveEvent {
+    static final int UNKNOWN_PERIOD = -1;
+    static final long UNKNOWN_DURATION = -1;
+    static final int VALIDITY_UNKNOWN = 0;
+    static final int VALIDITY_VALID = 1;
+    static final int VALIDITY_INVALID = 2;
+
+    final String type;
+
+    // What a DriveEventFilter looks at, taken from the SDK object so that filtering never
+    // needs the encoding. Events without the information carry the UNKNOWN values; accidents
+    // carry none of it, so that no filter ever holds one back.
+    final String trackingId;
+    final int insurancePeriod;
+    final double distanceMeters;
+    final long durationMillis;
+    final int validity;
+
+    // Encoding with all fields, cached as it is by far the most common.
+    private volatile String fullEncoding;
+
+    private DriveEvent(String type) {
+        this(type, null, UNKNOWN_PERIOD);
+    }
+
+    private DriveEvent(String type, String trackingId, int insurancePeriod) {
+        this(type, trackingId, insurancePeriod, Double.NaN, UNKNOWN_DURATION, VALIDITY_UNKNOWN);
+    }
+
+    private DriveEvent(String type, DriveInfo info) {
+        this(type, info.trackingId, periodOf(info.insurancePeriod), info.distanceMeters,
+                info.endTimeMillis - info.startTimeMillis, validityOf(info.driveType));
+    }
+
+    private DriveEvent(String type, String trackingId, int insurancePeriod, double distanceMeters,
+                       long durationMillis, int validity) {
+        this.type = type;
+        this.trackingId = trackingId;
+        this.insurancePeriod = insurancePeriod;
+        this.distanceMeters = distanceMeters;
+        this.durationMillis = durationMillis;
+        this.validity = validity;
+    }
+
+    private static int periodOf(ZendriveInsurancePeriod period) {
+        return period != null ? ZendriveManager.GetPeriodInt(period) : 0;
+    }
+
+    private static int validityOf(ZendriveDriveType driveType) {
+        if (driveType == null) {
+            return VALIDITY_UNKNOWN;
+        }
+        return driveType == ZendriveDriveType.DRIVE ? VALIDITY_VALID : VALIDITY_INVALID;
+    }
+
+    final String encode(Set<String> fields) throws JSONException {
+        if (fields != null) {
+            return encodeFields(fields);
+        }
+        String encoded = fullEncoding;
+        if (encoded == null) {
+            encoded = encodeFields(null);
+            fullEncoding = encoded;
+        }
+        return encoded;
+    }
+
+    abstract String encodeFields(Set<String> fields) throws JSONException;
+
+    static boolean wants(Set<String> fields, String key) {
+        return fields == null || fields.contains(key);
+    }
+
+    /**
+     * An event that was encoded elsewhere and carries nothing to filter on. It is always
+     * delivered with all of its fields.
+     */
+    static DriveEvent encoded(String type, final String encodedEvent) {
+        return new DriveEvent(type) {
+            @Override
+            String encodeFields(Set<String> fields) {
+                return encodedEvent;
+            }
+        };
+    }
+
+    /**
+     * An event that was encoded elsewhere, e.g. replayed from the journal, with the values it
+     * had for filters. It is always delivered with all of its fields.
+     */
+    static DriveEvent encoded(String type, final String encodedEvent, String trackingId, int insurancePeriod,
+                              double distanceMeters, long durationMillis, int validity) {
+        return new DriveEvent(type, trackingId, insurancePeriod, distanceMeters, durationMillis, validity) {
+            @Override
+            String encodeFields(Set<String> fields) {
+                return encodedEvent;
+            }
+        };
+    }
+
+    static DriveEvent driveStart(final DriveStartInfo info) {
+        return new DriveEvent(ZendriveManager.EVENT_DRIVE_START, info.trackingId, periodOf(info.insurancePeriod)) {
+            @Override
+            String encodeFields(Set<String> fields) throws JSONException {
+                return ZendriveManager.toDriveStartJson(info, fields).toString();
+            }
+        };
+    }
+
+    static DriveEvent driveResume(final DriveResumeInfo info) {
+        return new DriveEvent(ZendriveManager.EVENT_DRIVE_RESUME, info.trackingId, periodOf(info.insurancePeriod)) {
+            @Override
+            String encodeFields(Set<String> fields) throws JSONException {
+                JSONObject object = new JSONObject();
+                putIfWanted(object, fields, ZendriveManager.DRIVE_ID_KEY, info.driveId);
+                if (wants(fields, ZendriveManager.START_TIMESTAMP_KEY)) {
+                    object.put(ZendriveManager.START_TIMESTAMP_KEY, info.startTimeMillis);
+                }
+                putIfWanted(object, fields, ZendriveManager.TRACKING_ID_KEY, info.trackingId);
+                putIfWanted(object, fields, ZendriveManager.SESSION_ID_KEY, info.sessionId);
+                if (wants(fields, ZendriveManager.INSURANCE_PERIOD_KEY)) {
+                    object.put(ZendriveManager.INSURANCE_PERIOD_KEY, info.insurancePeriod != null
+                            ? ZendriveManager.GetPeriodInt(info.insurancePeriod) : 0);
+                }
+                return object.toString();
+            }
+        };
+    }
+
+    /**
+     * The waypoints are simplified and encoded with the settings in effect when the drive ended.
+     */
+    static DriveEvent driveEnd(final DriveInfo info, final WaypointSimplifier simplifier,
+                               final DriveInfoEncoder.WaypointEncoding encoding, final DriveInfoEncoder encoder) {
+        return new DriveEvent(ZendriveManager.EVENT_DRIVE_END, info) {
+            @Override
+            String encodeFields(Set<String> fields) {
+                return encoder.encodeDriveInfo(info, simplifier, encoding, fields, false);
+            }
+        };
+    }
+
+    static DriveEvent driveAnalyzed(final AnalyzedDriveInfo info, final WaypointSimplifier simplifier,
+                                    final DriveInfoEncoder.WaypointEncoding encoding, final DriveInfoEncoder encoder) {
+        return new DriveEvent(ZendriveManager.EVENT_DRIVE_ANALYZED, info) {
+            @Override
+            String encodeFields(Set<String> fields) {
+                return encoder.encodeDriveInfo(info, simplifier, encoding, fields, true);
+            }
+        };
+    }
+
+    /**
+     * @param receivedAtMillis when the accident broadcast was received, so JS can measure
+     *                         end to end delivery.
+     */
+    static DriveEvent accident(final AccidentInfo info, final long receivedAtMillis) {
+        return new DriveEvent(ZendriveManager.EVENT_ACCIDENT) {
+            @Override
+            String encodeFields(Set<String> fields) throws JSONException {
+                JSONObject object = new JSONObject();
+                putIfWanted(object, fields, ZendriveManager.ACCIDENT_ID_KEY, info.accidentId);
+                putIfWanted(object, fields, ZendriveManager.DRIVE_ID_KEY, info.driveId);
+                if (wants(fields, ZendriveManager.TIMESTAMP_KEY)) {
+                    object.put(ZendriveManager.TIMESTAMP_KEY, info.timestampMillis);
+                }
+                if (wants(fields, ZendriveManager.LOCATION_KEY)) {
+                    object.put(ZendriveManager.LOCATION_KEY, toLocationJson(info.location));
+                }
+                if (wants(fields, ZendriveManager.CONFIDENCE_KEY)) {
+                    object.put(ZendriveManager.CONFIDENCE_KEY,
+                            info.confidence != null ? info.confidence.name() : JSONObject.NULL);
+                }
+                if (wants(fields, ZendriveManager.CONFIDENCE_NUMBER_KEY)) {
+                    object.put(ZendriveManager.CONFIDENCE_NUMBER_KEY, info.confidenceNumber);
+                }
+                putIfWanted(object, fields, ZendriveManager.TRACKING_ID_KEY, info.trackingId);
+                putIfWanted(object, fields, ZendriveManager.SESSION_ID_KEY, info.sessionId);
+                if (wants(fields, ZendriveManager.RECEIVED_AT_KEY)) {
+                    object.put(ZendriveManager.RECEIVED_AT_KEY, receivedAtMillis);
+                }
+                return object.toString();
+            }
+        };
+    }
+
+    /**
+     * A change of the SDK's settings errors or warnings; see {@link SettingsHealthMonitor}.
+     */
+    static DriveEvent settingsChange(final JSONObject diff) {
+        return new DriveEvent(ZendriveManager.EVENT_SETTINGS_CHANGE) {
+            @Override
+            String encodeFields(Set<String> fields) throws JSONException {
+                if (fields == null) {
+                    return diff.toString();
+                }
+                JSONObject object = new JSONObject();
+                for (String field : fields) {
+                    if (diff.has(field)) {
+                        object.put(field, diff.get(field));
+                    }
+                }
+                return object.toString();
+            }
+        };
+    }
+
+    private static void putIfWanted(JSONObject object, Set<String> fields, String key, String value)
+            throws JSONException {
+        if (wants(fields, key)) {
+            object.put(key, value != null ? value : JSONObject.NULL);
+        }
+    }
+
+    static Object toLocationJson(LocationPoint location) throws JSONException {
+        if (location == null) {
+            return JSONObject.NULL;
+        }
+        JSONObject locationObject = new JSONObject();
+        locationObject.put(ZendriveManager.LATITUDE_KEY, location.latitude);
+        locationObject.put(ZendriveManager.LONGITUDE_KEY, location.longitude);
+        return locationObject;
+    }
+}
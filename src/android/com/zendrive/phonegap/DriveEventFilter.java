@@ -0,0 +1,104 @@
+package com.zendrive.phonegap;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Declarative filter a JS listener registers with, so that events it would discard are never
+ * encoded or sent across the bridge. Parsed once at registration; {@link #accepts} only
+ * compares the values {@link DriveEvent} already holds.
+ *
+ * A condition only applies to events that carry the value it checks: a minimum distance does
+ * not hold back a drive start, which has no distance yet.
+ */
+final class DriveEventFilter {
+    static final String MIN_DISTANCE_KEY = "minDistanceMeters";
+    static final String MIN_DURATION_KEY = "minDurationMillis";
+    static final String IS_VALID_KEY = "isValid";
+    static final String INSURANCE_PERIODS_KEY = "insurancePeriods";
+    static final String TRACKING_ID_PREFIX_KEY = "trackingIdPrefix";
+
+    private final double minDistanceMeters;
+    private final long minDurationMillis;
+    // One of the DriveEvent VALIDITY values; VALIDITY_UNKNOWN accepts both.
+    private final int validity;
+    // Bit per accepted insurance period, or 0 for all of them.
+    private final int periodMask;
+    private final String trackingIdPrefix;
+
+    private DriveEventFilter(double minDistanceMeters, long minDurationMillis, int validity,
+                             int periodMask, String trackingIdPrefix) {
+        this.minDistanceMeters = minDistanceMeters;
+        this.minDurationMillis = minDurationMillis;
+        this.validity = validity;
+        this.periodMask = periodMask;
+        this.trackingIdPrefix = trackingIdPrefix;
+    }
+
+    /**
+     * @return the filter described by {@code json}, or null if it has no conditions.
+     */
+    static DriveEventFilter fromJson(JSONObject json) throws JSONException {
+        if (json == null) {
+            return null;
+        }
+        double minDistanceMeters = json.optDouble(MIN_DISTANCE_KEY, 0);
+        long minDurationMillis = json.optLong(MIN_DURATION_KEY, 0);
+        int validity = DriveEvent.VALIDITY_UNKNOWN;
+        if (json.has(IS_VALID_KEY) && !json.isNull(IS_VALID_KEY)) {
+            validity = json.getBoolean(IS_VALID_KEY) ? DriveEvent.VALIDITY_VALID : DriveEvent.VALIDITY_INVALID;
+        }
+        int periodMask = 0;
+        JSONArray periods = json.optJSONArray(INSURANCE_PERIODS_KEY);
+        if (periods != null) {
+            for (int i = 0; i < periods.length(); i++) {
+                int period = periods.getInt(i);
+                if (period < 0 || period >= ShiftMileageAccountant.PERIOD_COUNT) {
+                    throw new JSONException("Invalid insurance period " + period);
+                }
+                periodMask |= 1 << period;
+            }
+        }
+        String trackingIdPrefix = json.optString(TRACKING_ID_PREFIX_KEY, null);
+        if (trackingIdPrefix != null && trackingIdPrefix.isEmpty()) {
+            trackingIdPrefix = null;
+        }
+        if (!(minDistanceMeters > 0) && minDurationMillis <= 0 && validity == DriveEvent.VALIDITY_UNKNOWN
+                && periodMask == 0 && trackingIdPrefix == null) {
+            return null;
+        }
+        return new DriveEventFilter(minDistanceMeters, minDurationMillis, validity, periodMask,
+                trackingIdPrefix);
+    }
+
+    boolean accepts(DriveEvent event) {
+        if (minDistanceMeters > 0 && !Double.isNaN(event.distanceMeters)
+                && event.distanceMeters < minDistanceMeters) {
+            return false;
+        }
+        if (minDurationMillis > 0 && event.durationMillis != DriveEvent.UNKNOWN_DURATION
+                && event.durationMillis < minDurationMillis) {
+            return false;
+        }
+        if (validity != DriveEvent.VALIDITY_UNKNOWN && event.validity != DriveEvent.VALIDITY_UNKNOWN
+                && event.validity != validity) {
+            return false;
+        }
+        if (periodMask != 0 && event.insurancePeriod != DriveEvent.UNKNOWN_PERIOD
+                && (periodMask & (1 << event.insurancePeriod)) == 0) {
+            return false;
+        }
+        // A filter on tracking ids wants drives that have one.
+        if (trackingIdPrefix != null && !carriesNothing(event)
+                && (event.trackingId == null || !event.trackingId.startsWith(trackingIdPrefix))) {
+            return false;
+        }
+        return true;
+    }
+
+    // Accidents and events journaled by older versions carry nothing to filter on.
+    private static boolean carriesNothing(DriveEvent event) {
+        return event.insurancePeriod == DriveEvent.UNKNOWN_PERIOD;
+    }
+}
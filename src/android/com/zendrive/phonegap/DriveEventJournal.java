@@ -0,0 +1,236 @@
+package com.zendrive.phonegap;
+
+import android.content.Context;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only on-disk journal of drive events received while the plugin was not
+ * initialized in this process, e.g. when the SDK cold-starts the app in the background
+ * to deliver a broadcast. The journal is replayed into {@link ZendriveManager} on the
+ * next init and then deleted.
+ *
+ * Each record is {@code [int length][byte type][length bytes of payload][int crc32]}. The
+ * payload starts with the values a {@link DriveEventFilter} checks, so that filters apply to
+ * replayed events as they do to live ones, followed by the UTF-8 JSON of the event. Records
+ * written before those values were journaled lack {@link #FILTER_VALUES_FLAG} in their type
+ * byte and hold only the JSON.
+ * A record is written with a single {@code write} call, so it survives process death as
+ * soon as it is appended; {@code fsync} is batched to bound the cost on the broadcast thread.
+ * Replay stops at the first torn or corrupt record.
+ */
+class DriveEventJournal {
+    private static final String TAG = "ZendriveEventJournal";
+    private static final String FILE_NAME = "zendrive_event_journal.bin";
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    // Record type codes; the index in this array is the code written to disk, so new types
+    // are only ever appended.
+    private static final String[] TYPES = {
+            ZendriveManager.EVENT_DRIVE_START,
+            ZendriveManager.EVENT_DRIVE_END,
+            ZendriveManager.EVENT_DRIVE_RESUME,
+            ZendriveManager.EVENT_DRIVE_ANALYZED,
+            ZendriveManager.EVENT_ACCIDENT
+    };
+
+    private static final int FILTER_VALUES_FLAG = 0x80;
+
+    private static final int SYNC_BATCH_SIZE = 8;
+    private static final long SYNC_INTERVAL_MILLIS = 2000;
+    private static final long MAX_JOURNAL_BYTES = 8 * 1024 * 1024;
+
+    interface Consumer {
+        void onEvent(DriveEvent event);
+    }
+
+    private static DriveEventJournal instance;
+
+    private final File file;
+    private final ByteArrayOutputStream payloadBuffer = new ByteArrayOutputStream(1024);
+    private final ByteArrayOutputStream recordBuffer = new ByteArrayOutputStream(1024);
+    private final CRC32 crc = new CRC32();
+    private FileOutputStream output;
+    private int unsyncedRecords;
+    private long lastSyncMillis;
+
+    static synchronized DriveEventJournal getInstance(Context context) {
+        if (instance == null) {
+            instance = new DriveEventJournal(new File(context.getApplicationContext().getFilesDir(), FILE_NAME));
+        }
+        return instance;
+    }
+
+    /**
+     * A journal of its own at {@code file}, e.g. a scratch one in a test.
+     */
+    static DriveEventJournal at(File file) {
+        return new DriveEventJournal(file);
+    }
+
+    private DriveEventJournal(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Appends {@code event}, encoded as {@code encodedEvent}. Callers that race with
+     * {@link ZendriveManager#init} should hold the journal's monitor while checking whether the
+     * manager exists and appending.
+     */
+    synchronized void append(DriveEvent event, String encodedEvent) {
+        String type = event.type;
+        int typeCode = typeCode(type);
+        if (typeCode < 0) {
+            Log.w(TAG, "Not journaling unknown event type " + type);
+            return;
+        }
+        try {
+            if (file.length() > MAX_JOURNAL_BYTES) {
+                Log.w(TAG, "Journal full, dropping " + type);
+                return;
+            }
+            typeCode |= FILTER_VALUES_FLAG;
+            payloadBuffer.reset();
+            DataOutputStream values = new DataOutputStream(payloadBuffer);
+            values.writeBoolean(event.trackingId != null);
+            if (event.trackingId != null) {
+                values.writeUTF(event.trackingId);
+            }
+            values.writeByte(event.insurancePeriod);
+            values.writeDouble(event.distanceMeters);
+            values.writeLong(event.durationMillis);
+            values.writeByte(event.validity);
+            values.write(encodedEvent.getBytes(UTF_8));
+            values.flush();
+            byte[] payload = payloadBuffer.toByteArray();
+
+            crc.reset();
+            crc.update(typeCode);
+            crc.update(payload, 0, payload.length);
+
+            recordBuffer.reset();
+            DataOutputStream record = new DataOutputStream(recordBuffer);
+            record.writeInt(payload.length);
+            record.writeByte(typeCode);
+            record.write(payload);
+            record.writeInt((int) crc.getValue());
+            record.flush();
+
+            if (output == null) {
+                output = new FileOutputStream(file, true);
+            }
+            recordBuffer.writeTo(output);
+            unsyncedRecords++;
+            long now = SystemClock.elapsedRealtime();
+            if (unsyncedRecords >= SYNC_BATCH_SIZE || now - lastSyncMillis >= SYNC_INTERVAL_MILLIS) {
+                output.getFD().sync();
+                unsyncedRecords = 0;
+                lastSyncMillis = now;
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to journal " + type, e);
+            closeQuietly();
+        }
+    }
+
+    /**
+     * Feeds every intact record to {@code consumer}, oldest first, then deletes the journal.
+     */
+    synchronized void replay(Consumer consumer) {
+        closeQuietly();
+        if (!file.exists()) {
+            return;
+        }
+        int replayed = 0;
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            while (true) {
+                int length;
+                try {
+                    length = input.readInt();
+                } catch (EOFException end) {
+                    break;
+                }
+                if (length < 0 || length > MAX_JOURNAL_BYTES) {
+                    Log.w(TAG, "Corrupt record length " + length + ", stopping replay");
+                    break;
+                }
+                int typeCode = input.readUnsignedByte();
+                byte[] payload = new byte[length];
+                input.readFully(payload);
+                int storedCrc = input.readInt();
+
+                crc.reset();
+                crc.update(typeCode);
+                crc.update(payload, 0, payload.length);
+                int typeIndex = typeCode & ~FILTER_VALUES_FLAG;
+                if ((int) crc.getValue() != storedCrc || typeIndex >= TYPES.length) {
+                    Log.w(TAG, "Corrupt record, stopping replay");
+                    break;
+                }
+                if ((typeCode & FILTER_VALUES_FLAG) != 0) {
+                    consumer.onEvent(readEvent(TYPES[typeIndex], payload));
+                } else {
+                    consumer.onEvent(DriveEvent.encoded(TYPES[typeIndex], new String(payload, UTF_8)));
+                }
+                replayed++;
+            }
+        } catch (EOFException torn) {
+            Log.w(TAG, "Torn record at end of journal");
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to replay journal", e);
+        }
+        if (!file.delete()) {
+            Log.w(TAG, "Failed to delete journal");
+        }
+        Log.d(TAG, "Replayed " + replayed + " journaled events");
+    }
+
+    private static DriveEvent readEvent(String type, byte[] payload) throws IOException {
+        ByteArrayInputStream bytes = new ByteArrayInputStream(payload);
+        DataInputStream values = new DataInputStream(bytes);
+        String trackingId = values.readBoolean() ? values.readUTF() : null;
+        int insurancePeriod = values.readByte();
+        double distanceMeters = values.readDouble();
+        long durationMillis = values.readLong();
+        int validity = values.readByte();
+        int offset = payload.length - bytes.available();
+        String encodedEvent = new String(payload, offset, payload.length - offset, UTF_8);
+        return DriveEvent.encoded(type, encodedEvent, trackingId, insurancePeriod, distanceMeters,
+                durationMillis, validity);
+    }
+
+    private static int typeCode(String type) {
+        for (int i = 0; i < TYPES.length; i++) {
+            if (TYPES[i].equals(type)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void closeQuietly() {
+        if (output == null) {
+            return;
+        }
+        try {
+            output.getFD().sync();
+            output.close();
+        } catch (IOException ignored) {
+        }
+        output = null;
+        unsyncedRecords = 0;
+    }
+}
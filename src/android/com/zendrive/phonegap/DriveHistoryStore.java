@@ -0,0 +1,396 @@
+package com.zendrive.phonegap;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.util.Log;
+
+import com.zendrive.sdk.DriveInfo;
+import com.zendrive.sdk.LocationPoint;
+import com.zendrive.sdk.LocationPointWithTimestamp;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * On-device history of completed drives, so JS can show past drives without a backend.
+ *
+ * A drive is stored when it ends and replaced with the analyzed values once those arrive.
+ * Summary rows are kept apart from the waypoints, which are a compact blob of zigzag varint
+ * deltas, so paging through the history never reads a waypoint. Rows are indexed by start time
+ * and by tracking id and are paged newest first with a keyset cursor, so every page costs
+ * the same however far back it is.
+ *
+ * Writes happen on the store's own thread. Queries run on the calling thread and must not be
+ * issued from the UI thread.
+ */
+class DriveHistoryStore {
+    private static final String TAG = "ZendriveDriveHistory";
+    private static final String DATABASE_NAME = "zendrive_drive_history.db";
+    private static final int DATABASE_VERSION = 1;
+
+    // Oldest drives are deleted beyond this.
+    static final int MAX_DRIVES = 10000;
+    static final int DEFAULT_PAGE_SIZE = 50;
+    static final int MAX_PAGE_SIZE = 200;
+
+    // Query options and result keys.
+    static final String FROM_KEY = "from";
+    static final String TO_KEY = "to";
+    static final String PERIOD_KEY = "period";
+    static final String LIMIT_KEY = "limit";
+    static final String CURSOR_KEY = "cursor";
+    static final String DRIVES_KEY = "drives";
+    static final String ANALYZED_KEY = "analyzed";
+    static final String WAYPOINT_COUNT_KEY = "waypointCount";
+
+    private static final String TABLE_DRIVES = "drives";
+    private static final String TABLE_WAYPOINTS = "drive_waypoints";
+    private static final String COLUMN_DRIVE_ID = "drive_id";
+    private static final String COLUMN_START_TIME = "start_time";
+    private static final String COLUMN_END_TIME = "end_time";
+    private static final String COLUMN_DISTANCE = "distance_meters";
+    private static final String COLUMN_AVERAGE_SPEED = "average_speed";
+    private static final String COLUMN_MAX_SPEED = "max_speed";
+    private static final String COLUMN_TRACKING_ID = "tracking_id";
+    private static final String COLUMN_SESSION_ID = "session_id";
+    private static final String COLUMN_INSURANCE_PERIOD = "insurance_period";
+    private static final String COLUMN_DRIVE_TYPE = "drive_type";
+    private static final String COLUMN_ANALYZED = "analyzed";
+    private static final String COLUMN_POINT_COUNT = "point_count";
+    private static final String COLUMN_POINTS = "points";
+
+    private static final String SUMMARY_COLUMNS = COLUMN_DRIVE_ID + ", " + COLUMN_START_TIME + ", "
+            + COLUMN_END_TIME + ", " + COLUMN_DISTANCE + ", " + COLUMN_AVERAGE_SPEED + ", "
+            + COLUMN_MAX_SPEED + ", " + COLUMN_TRACKING_ID + ", " + COLUMN_SESSION_ID + ", "
+            + COLUMN_INSURANCE_PERIOD + ", " + COLUMN_DRIVE_TYPE + ", " + COLUMN_ANALYZED + ", "
+            + "(SELECT " + COLUMN_POINT_COUNT + " FROM " + TABLE_WAYPOINTS + " w WHERE w."
+            + COLUMN_DRIVE_ID + " = d." + COLUMN_DRIVE_ID + ")";
+
+    private static final int BLOB_VERSION = 1;
+
+    private static DriveHistoryStore instance;
+
+    private final OpenHelper helper;
+    private final ExecutorService writer = Executors.newSingleThreadExecutor();
+
+    static synchronized DriveHistoryStore getInstance(Context context) {
+        if (instance == null) {
+            instance = new DriveHistoryStore(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private DriveHistoryStore(Context context) {
+        this.helper = new OpenHelper(context);
+    }
+
+    private static final class OpenHelper extends SQLiteOpenHelper {
+        OpenHelper(Context context) {
+            super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        }
+
+        @Override
+        public void onCreate(SQLiteDatabase db) {
+            db.execSQL("CREATE TABLE " + TABLE_DRIVES + " ("
+                    + COLUMN_DRIVE_ID + " TEXT PRIMARY KEY, "
+                    + COLUMN_START_TIME + " INTEGER NOT NULL, "
+                    + COLUMN_END_TIME + " INTEGER, "
+                    + COLUMN_DISTANCE + " REAL, "
+                    + COLUMN_AVERAGE_SPEED + " REAL, "
+                    + COLUMN_MAX_SPEED + " REAL, "
+                    + COLUMN_TRACKING_ID + " TEXT, "
+                    + COLUMN_SESSION_ID + " TEXT, "
+                    + COLUMN_INSURANCE_PERIOD + " INTEGER, "
+                    + COLUMN_DRIVE_TYPE + " TEXT, "
+                    + COLUMN_ANALYZED + " INTEGER NOT NULL DEFAULT 0)");
+            db.execSQL("CREATE INDEX idx_drives_start ON " + TABLE_DRIVES
+                    + " (" + COLUMN_START_TIME + ", " + COLUMN_DRIVE_ID + ")");
+            db.execSQL("CREATE INDEX idx_drives_tracking ON " + TABLE_DRIVES
+                    + " (" + COLUMN_TRACKING_ID + ", " + COLUMN_START_TIME + ")");
+            db.execSQL("CREATE TABLE " + TABLE_WAYPOINTS + " ("
+                    + COLUMN_DRIVE_ID + " TEXT PRIMARY KEY, "
+                    + COLUMN_POINT_COUNT + " INTEGER NOT NULL, "
+                    + COLUMN_POINTS + " BLOB NOT NULL)");
+        }
+
+        @Override
+        public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+            db.execSQL("DROP TABLE IF EXISTS " + TABLE_DRIVES);
+            db.execSQL("DROP TABLE IF EXISTS " + TABLE_WAYPOINTS);
+            onCreate(db);
+        }
+    }
+
+    /**
+     * Stores a drive, replacing an earlier row for the same drive id. The waypoints of an
+     * earlier row are kept if {@code info} has none.
+     *
+     * @param analyzed whether {@code info} holds the final, analyzed values.
+     */
+    void record(final DriveInfo info, final boolean analyzed) {
+        if (info == null || info.driveId == null) {
+            return;
+        }
+        writer.execute(() -> {
+            try {
+                write(info, analyzed);
+            } catch (IOException | RuntimeException e) {
+                Log.e(TAG, "Failed to store drive " + info.driveId, e);
+            }
+        });
+    }
+
+    private void write(DriveInfo info, boolean analyzed) throws IOException {
+        ContentValues summary = new ContentValues();
+        summary.put(COLUMN_DRIVE_ID, info.driveId);
+        summary.put(COLUMN_START_TIME, info.startTimeMillis);
+        summary.put(COLUMN_END_TIME, info.endTimeMillis);
+        summary.put(COLUMN_DISTANCE, info.distanceMeters);
+        summary.put(COLUMN_AVERAGE_SPEED, info.averageSpeed);
+        summary.put(COLUMN_MAX_SPEED, info.maxSpeed);
+        summary.put(COLUMN_TRACKING_ID, info.trackingId);
+        summary.put(COLUMN_SESSION_ID, info.sessionId);
+        if (info.insurancePeriod != null) {
+            summary.put(COLUMN_INSURANCE_PERIOD, ZendriveManager.GetPeriodInt(info.insurancePeriod));
+        } else {
+            summary.putNull(COLUMN_INSURANCE_PERIOD);
+        }
+        summary.put(COLUMN_DRIVE_TYPE, info.driveType != null ? info.driveType.name() : null);
+        summary.put(COLUMN_ANALYZED, analyzed ? 1 : 0);
+
+        ContentValues waypoints = null;
+        if (info.waypoints != null && !info.waypoints.isEmpty()) {
+            waypoints = new ContentValues();
+            waypoints.put(COLUMN_DRIVE_ID, info.driveId);
+            waypoints.put(COLUMN_POINT_COUNT, info.waypoints.size());
+            waypoints.put(COLUMN_POINTS, encodeWaypoints(info.waypoints));
+        }
+
+        SQLiteDatabase db = helper.getWritableDatabase();
+        db.beginTransaction();
+        try {
+            db.insertWithOnConflict(TABLE_DRIVES, null, summary, SQLiteDatabase.CONFLICT_REPLACE);
+            if (waypoints != null) {
+                db.insertWithOnConflict(TABLE_WAYPOINTS, null, waypoints, SQLiteDatabase.CONFLICT_REPLACE);
+            }
+            prune(db);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * Deletes the oldest drives and their waypoints once there are more than
+     * {@link #MAX_DRIVES}.
+     */
+    private static void prune(SQLiteDatabase db) {
+        if (DatabaseUtils.queryNumEntries(db, TABLE_DRIVES) <= MAX_DRIVES) {
+            return;
+        }
+        long cutoff = DatabaseUtils.longForQuery(db, "SELECT " + COLUMN_START_TIME + " FROM " + TABLE_DRIVES
+                + " ORDER BY " + COLUMN_START_TIME + " DESC LIMIT 1 OFFSET " + (MAX_DRIVES - 1), null);
+        Object[] args = {cutoff};
+        // Waypoints first, while the drives still tell which ones go.
+        db.execSQL("DELETE FROM " + TABLE_WAYPOINTS + " WHERE " + COLUMN_DRIVE_ID + " IN (SELECT "
+                + COLUMN_DRIVE_ID + " FROM " + TABLE_DRIVES + " WHERE " + COLUMN_START_TIME + " < ?)", args);
+        db.execSQL("DELETE FROM " + TABLE_DRIVES + " WHERE " + COLUMN_START_TIME + " < ?", args);
+    }
+
+    /**
+     * One page of drives, newest first.
+     *
+     * @param options {@code from} and {@code to} (start time in millis, to exclusive),
+     *                {@code period} (1-3), {@code trackingId}, {@code limit} and the
+     *                {@code cursor} returned with the previous page; all optional.
+     * @return {@code {"drives":[..],"cursor":..}}; the cursor is null on the last page.
+     */
+    JSONObject queryDrives(JSONObject options) throws JSONException {
+        if (options == null) {
+            options = new JSONObject();
+        }
+        int limit = Math.max(1, Math.min(MAX_PAGE_SIZE, options.optInt(LIMIT_KEY, DEFAULT_PAGE_SIZE)));
+        List<String> args = new ArrayList<>();
+        StringBuilder sql = new StringBuilder("SELECT ").append(SUMMARY_COLUMNS)
+                .append(" FROM ").append(TABLE_DRIVES).append(" d WHERE ")
+                .append(COLUMN_START_TIME).append(" >= ? AND ").append(COLUMN_START_TIME).append(" < ?");
+        args.add(String.valueOf(options.optLong(FROM_KEY, 0)));
+        args.add(String.valueOf(options.optLong(TO_KEY, Long.MAX_VALUE)));
+        if (options.has(PERIOD_KEY) && !options.isNull(PERIOD_KEY)) {
+            sql.append(" AND ").append(COLUMN_INSURANCE_PERIOD).append(" = ?");
+            args.add(String.valueOf(options.getInt(PERIOD_KEY)));
+        }
+        String trackingId = options.optString(ZendriveManager.TRACKING_ID_KEY, null);
+        if (trackingId != null && !options.isNull(ZendriveManager.TRACKING_ID_KEY)) {
+            sql.append(" AND ").append(COLUMN_TRACKING_ID).append(" = ?");
+            args.add(trackingId);
+        }
+        String cursor = options.isNull(CURSOR_KEY) ? null : options.optString(CURSOR_KEY, null);
+        if (cursor != null) {
+            int separator = cursor.indexOf(':');
+            if (separator <= 0) {
+                throw new JSONException("Invalid cursor: " + cursor);
+            }
+            String cursorStart = cursor.substring(0, separator);
+            sql.append(" AND (").append(COLUMN_START_TIME).append(" < ? OR (")
+                    .append(COLUMN_START_TIME).append(" = ? AND ").append(COLUMN_DRIVE_ID).append(" < ?))");
+            args.add(cursorStart);
+            args.add(cursorStart);
+            args.add(cursor.substring(separator + 1));
+        }
+        // One extra row tells whether there is another page.
+        sql.append(" ORDER BY ").append(COLUMN_START_TIME).append(" DESC, ").append(COLUMN_DRIVE_ID)
+                .append(" DESC LIMIT ").append(limit + 1);
+
+        JSONArray drives = new JSONArray();
+        String nextCursor = null;
+        Cursor rows = helper.getReadableDatabase().rawQuery(sql.toString(), args.toArray(new String[0]));
+        try {
+            while (rows.moveToNext()) {
+                if (drives.length() == limit) {
+                    JSONObject last = drives.getJSONObject(limit - 1);
+                    nextCursor = last.getLong(ZendriveManager.START_TIMESTAMP_KEY) + ":"
+                            + last.getString(ZendriveManager.DRIVE_ID_KEY);
+                    break;
+                }
+                drives.put(toJson(rows));
+            }
+        } finally {
+            rows.close();
+        }
+
+        JSONObject page = new JSONObject();
+        page.put(DRIVES_KEY, drives);
+        page.put(CURSOR_KEY, nextCursor != null ? nextCursor : JSONObject.NULL);
+        return page;
+    }
+
+    private static JSONObject toJson(Cursor row) throws JSONException {
+        JSONObject drive = new JSONObject();
+        drive.put(ZendriveManager.DRIVE_ID_KEY, row.getString(0));
+        drive.put(ZendriveManager.START_TIMESTAMP_KEY, row.getLong(1));
+        drive.put(ZendriveManager.END_TIMESTAMP_KEY, row.getLong(2));
+        drive.put(ZendriveManager.DISTANCE_KEY, row.getDouble(3));
+        drive.put(ZendriveManager.AVERAGE_SPEED_KEY, row.getDouble(4));
+        drive.put(ZendriveManager.MAX_SPEED_KEY, row.getDouble(5));
+        drive.put(ZendriveManager.TRACKING_ID_KEY, row.isNull(6) ? JSONObject.NULL : row.getString(6));
+        drive.put(ZendriveManager.SESSION_ID_KEY, row.isNull(7) ? JSONObject.NULL : row.getString(7));
+        drive.put(ZendriveManager.INSURANCE_PERIOD_KEY, row.isNull(8) ? JSONObject.NULL : row.getInt(8));
+        drive.put(ZendriveManager.DRIVE_TYPE_KEY, row.isNull(9) ? JSONObject.NULL : row.getString(9));
+        drive.put(ANALYZED_KEY, row.getInt(10) != 0);
+        drive.put(WAYPOINT_COUNT_KEY, row.isNull(11) ? 0 : row.getInt(11));
+        return drive;
+    }
+
+    /**
+     * The stored waypoints of a drive in {@code encoding}, or null if there are none.
+     */
+    String getWaypoints(String driveId, DriveInfoEncoder.WaypointEncoding encoding) throws IOException {
+        byte[] blob = null;
+        Cursor rows = helper.getReadableDatabase().rawQuery("SELECT " + COLUMN_POINTS + " FROM "
+                + TABLE_WAYPOINTS + " WHERE " + COLUMN_DRIVE_ID + " = ?", new String[]{driveId});
+        try {
+            if (rows.moveToNext()) {
+                blob = rows.getBlob(0);
+            }
+        } finally {
+            rows.close();
+        }
+        if (blob == null) {
+            return null;
+        }
+        StringBuilder out = new StringBuilder();
+        DriveInfoEncoder.appendWaypoints(out, decodeWaypoints(blob), encoding);
+        return out.toString();
+    }
+
+    // Blob: version byte, count, then per point the zigzag varint deltas of fixed-point latitude,
+    // longitude and the timestamp. Consecutive waypoints are close, so most deltas take 1-3 bytes.
+    static byte[] encodeWaypoints(List<LocationPointWithTimestamp> waypoints) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(16 + waypoints.size() * 8);
+        DataOutputStream output = new DataOutputStream(bytes);
+        output.writeByte(BLOB_VERSION);
+        writeVarLong(output, waypoints.size());
+        long previousLatitude = 0;
+        long previousLongitude = 0;
+        long previousTimestamp = 0;
+        for (LocationPointWithTimestamp point : waypoints) {
+            long latitude = Math.round(point.location.latitude * DriveInfoEncoder.FIXED_POINT_SCALE);
+            long longitude = Math.round(point.location.longitude * DriveInfoEncoder.FIXED_POINT_SCALE);
+            writeVarLong(output, zigzag(latitude - previousLatitude));
+            writeVarLong(output, zigzag(longitude - previousLongitude));
+            writeVarLong(output, zigzag(point.timestamp - previousTimestamp));
+            previousLatitude = latitude;
+            previousLongitude = longitude;
+            previousTimestamp = point.timestamp;
+        }
+        output.flush();
+        return bytes.toByteArray();
+    }
+
+    static List<LocationPointWithTimestamp> decodeWaypoints(byte[] blob) throws IOException {
+        DataInputStream input = new DataInputStream(new ByteArrayInputStream(blob));
+        int version = input.readUnsignedByte();
+        if (version != BLOB_VERSION) {
+            throw new IOException("Unknown waypoint blob version " + version);
+        }
+        int count = (int) readVarLong(input);
+        List<LocationPointWithTimestamp> waypoints = new ArrayList<>(count);
+        long latitude = 0;
+        long longitude = 0;
+        long timestamp = 0;
+        for (int i = 0; i < count; i++) {
+            latitude += unzigzag(readVarLong(input));
+            longitude += unzigzag(readVarLong(input));
+            timestamp += unzigzag(readVarLong(input));
+            LocationPoint location = new LocationPoint(
+                    (double) latitude / DriveInfoEncoder.FIXED_POINT_SCALE,
+                    (double) longitude / DriveInfoEncoder.FIXED_POINT_SCALE);
+            waypoints.add(new LocationPointWithTimestamp(location, timestamp));
+        }
+        return waypoints;
+    }
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static void writeVarLong(DataOutputStream output, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            output.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        output.writeByte((int) value);
+    }
+
+    private static long readVarLong(DataInputStream input) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = input.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint");
+    }
+}
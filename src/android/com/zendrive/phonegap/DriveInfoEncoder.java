@@ -0,0 +1,248 @@
+package com.zendrive.phonegap;
+
+import android.os.Trace;
+
+import com.zendrive.sdk.DriveInfo;
+import com.zendrive.sdk.LocationPointWithTimestamp;
+
+import org.json.JSONObject;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Writes end of drive payloads straight into a reusable buffer instead of building a
+ * {@code JSONObject} per waypoint. Long drives carry thousands of waypoints, and the
+ * intermediate object tree used to dominate allocation at drive end.
+ *
+ * Waypoints can be encoded in one of the {@link WaypointEncoding} layouts; JS picks one with
+ * {@code Zendrive.setWaypointEncoding} and turns any of them back into points with
+ * {@code Zendrive.decodeWaypoints}.
+ */
+class DriveInfoEncoder {
+
+    enum WaypointEncoding {
+        /** {@code [{"latitude":..,"longitude":..}, ...]}, the original format. */
+        OBJECTS,
+        /** Parallel {@code latitude}, {@code longitude} and {@code timestamp} arrays. */
+        COLUMNAR,
+        /**
+         * Parallel arrays of fixed-point values (degrees * {@link #FIXED_POINT_SCALE}) and
+         * timestamps. The first entry is absolute, every other one is the delta to its predecessor.
+         */
+        DELTA;
+
+        static WaypointEncoding fromString(String name) {
+            for (WaypointEncoding encoding : values()) {
+                if (encoding.name().equalsIgnoreCase(name)) {
+                    return encoding;
+                }
+            }
+            throw new IllegalArgumentException("Unknown waypoint encoding: " + name);
+        }
+    }
+
+    static final long FIXED_POINT_SCALE = 1000000L;
+
+    private static final String ENCODING_KEY = "encoding";
+    private static final String SCALE_KEY = "scale";
+    private static final String TIMESTAMP_KEY = "timestamp";
+
+    private static final String TRACE_SIMPLIFY = PluginActionRegistry.traceSection("simplifyWaypoints");
+    private static final String TRACE_ENCODE = PluginActionRegistry.traceSection("encodeDriveInfo");
+
+    // Drop the buffer rather than keep a multi-megabyte one alive after a very long drive.
+    private static final int MAX_RETAINED_CAPACITY = 256 * 1024;
+
+    private StringBuilder buffer = new StringBuilder(4096);
+
+    /**
+     * Encodes the top level {@code fields} of {@code driveInfo}, or all of them if null. Waypoints
+     * are only simplified if they are asked for. Analyzed drives carry their ids, type and score
+     * in addition to the end of drive fields.
+     */
+    String encodeDriveInfo(DriveInfo driveInfo, WaypointSimplifier simplifier, WaypointEncoding encoding,
+                           Set<String> fields, boolean analyzed) {
+        List<LocationPointWithTimestamp> waypoints = null;
+        if (DriveEvent.wants(fields, ZendriveManager.WAYPOINTS_KEY)) {
+            Trace.beginSection(TRACE_SIMPLIFY);
+            try {
+                waypoints = simplifier.simplify(driveInfo.waypoints);
+            } finally {
+                Trace.endSection();
+            }
+        }
+        return encode(driveInfo, waypoints, encoding, fields, analyzed);
+    }
+
+    private synchronized String encode(DriveInfo driveInfo, List<LocationPointWithTimestamp> waypoints,
+                                       WaypointEncoding encoding, Set<String> fields, boolean analyzed) {
+        Trace.beginSection(TRACE_ENCODE);
+        try {
+            return encodeLocked(driveInfo, waypoints, encoding, fields, analyzed);
+        } finally {
+            Trace.endSection();
+        }
+    }
+
+    private String encodeLocked(DriveInfo driveInfo, List<LocationPointWithTimestamp> waypoints,
+                                WaypointEncoding encoding, Set<String> fields, boolean analyzed) {
+        StringBuilder out = buffer;
+        out.setLength(0);
+        out.append('{');
+        if (analyzed) {
+            if (DriveEvent.wants(fields, ZendriveManager.DRIVE_ID_KEY)) {
+                appendString(appendField(out, ZendriveManager.DRIVE_ID_KEY), driveInfo.driveId);
+            }
+            if (DriveEvent.wants(fields, ZendriveManager.TRACKING_ID_KEY)) {
+                appendString(appendField(out, ZendriveManager.TRACKING_ID_KEY), driveInfo.trackingId);
+            }
+            if (DriveEvent.wants(fields, ZendriveManager.SESSION_ID_KEY)) {
+                appendString(appendField(out, ZendriveManager.SESSION_ID_KEY), driveInfo.sessionId);
+            }
+            if (DriveEvent.wants(fields, ZendriveManager.INSURANCE_PERIOD_KEY)) {
+                appendField(out, ZendriveManager.INSURANCE_PERIOD_KEY).append(driveInfo.insurancePeriod != null
+                        ? ZendriveManager.GetPeriodInt(driveInfo.insurancePeriod) : 0);
+            }
+            if (DriveEvent.wants(fields, ZendriveManager.DRIVE_TYPE_KEY)) {
+                appendString(appendField(out, ZendriveManager.DRIVE_TYPE_KEY),
+                        driveInfo.driveType != null ? driveInfo.driveType.name() : null);
+            }
+        }
+        if (DriveEvent.wants(fields, ZendriveManager.START_TIMESTAMP_KEY)) {
+            appendField(out, ZendriveManager.START_TIMESTAMP_KEY).append(driveInfo.startTimeMillis);
+        }
+        if (DriveEvent.wants(fields, ZendriveManager.END_TIMESTAMP_KEY)) {
+            appendField(out, ZendriveManager.END_TIMESTAMP_KEY).append(driveInfo.endTimeMillis);
+        }
+        if (DriveEvent.wants(fields, ZendriveManager.AVERAGE_SPEED_KEY)) {
+            appendDouble(appendField(out, ZendriveManager.AVERAGE_SPEED_KEY), driveInfo.averageSpeed);
+        }
+        if (analyzed && DriveEvent.wants(fields, ZendriveManager.MAX_SPEED_KEY)) {
+            appendDouble(appendField(out, ZendriveManager.MAX_SPEED_KEY), driveInfo.maxSpeed);
+        }
+        if (DriveEvent.wants(fields, ZendriveManager.DISTANCE_KEY)) {
+            appendDouble(appendField(out, ZendriveManager.DISTANCE_KEY), driveInfo.distanceMeters);
+        }
+        if (analyzed && DriveEvent.wants(fields, ZendriveManager.SCORE_KEY)) {
+            appendField(out, ZendriveManager.SCORE_KEY);
+            if (driveInfo.score != null) {
+                out.append(driveInfo.score.zendriveScore);
+            } else {
+                out.append("null");
+            }
+        }
+        if (DriveEvent.wants(fields, ZendriveManager.WAYPOINTS_KEY)) {
+            appendWaypoints(appendField(out, ZendriveManager.WAYPOINTS_KEY), waypoints, encoding);
+        }
+        out.append('}');
+
+        String encoded = out.toString();
+        if (out.capacity() > MAX_RETAINED_CAPACITY) {
+            buffer = new StringBuilder(4096);
+        }
+        return encoded;
+    }
+
+    static void appendWaypoints(StringBuilder out, List<LocationPointWithTimestamp> waypoints,
+                                WaypointEncoding encoding) {
+        int count = waypoints == null ? 0 : waypoints.size();
+        switch (encoding) {
+            case COLUMNAR:
+                out.append('{');
+                appendKey(out, ENCODING_KEY).append("\"columnar\",");
+                appendKey(out, ZendriveManager.LATITUDE_KEY).append('[');
+                for (int i = 0; i < count; i++) {
+                    if (i > 0) out.append(',');
+                    appendDouble(out, waypoints.get(i).location.latitude);
+                }
+                out.append("],");
+                appendKey(out, ZendriveManager.LONGITUDE_KEY).append('[');
+                for (int i = 0; i < count; i++) {
+                    if (i > 0) out.append(',');
+                    appendDouble(out, waypoints.get(i).location.longitude);
+                }
+                out.append("],");
+                appendKey(out, TIMESTAMP_KEY).append('[');
+                for (int i = 0; i < count; i++) {
+                    if (i > 0) out.append(',');
+                    out.append(waypoints.get(i).timestamp);
+                }
+                out.append("]}");
+                break;
+            case DELTA:
+                out.append('{');
+                appendKey(out, ENCODING_KEY).append("\"delta\",");
+                appendKey(out, SCALE_KEY).append(FIXED_POINT_SCALE).append(',');
+                appendKey(out, ZendriveManager.LATITUDE_KEY).append('[');
+                long previous = 0;
+                for (int i = 0; i < count; i++) {
+                    long value = toFixedPoint(waypoints.get(i).location.latitude);
+                    if (i > 0) out.append(',');
+                    out.append(value - previous);
+                    previous = value;
+                }
+                out.append("],");
+                appendKey(out, ZendriveManager.LONGITUDE_KEY).append('[');
+                previous = 0;
+                for (int i = 0; i < count; i++) {
+                    long value = toFixedPoint(waypoints.get(i).location.longitude);
+                    if (i > 0) out.append(',');
+                    out.append(value - previous);
+                    previous = value;
+                }
+                out.append("],");
+                appendKey(out, TIMESTAMP_KEY).append('[');
+                previous = 0;
+                for (int i = 0; i < count; i++) {
+                    long value = waypoints.get(i).timestamp;
+                    if (i > 0) out.append(',');
+                    out.append(value - previous);
+                    previous = value;
+                }
+                out.append("]}");
+                break;
+            default:
+                out.append('[');
+                for (int i = 0; i < count; i++) {
+                    LocationPointWithTimestamp locationPoint = waypoints.get(i);
+                    if (i > 0) out.append(',');
+                    out.append('{');
+                    appendKey(out, ZendriveManager.LATITUDE_KEY);
+                    appendDouble(out, locationPoint.location.latitude).append(',');
+                    appendKey(out, ZendriveManager.LONGITUDE_KEY);
+                    appendDouble(out, locationPoint.location.longitude).append('}');
+                }
+                out.append(']');
+                break;
+        }
+    }
+
+    private static long toFixedPoint(double degrees) {
+        return Math.round(degrees * FIXED_POINT_SCALE);
+    }
+
+    // Keys are constants that never need escaping.
+    private static StringBuilder appendKey(StringBuilder out, String key) {
+        return out.append('"').append(key).append("\":");
+    }
+
+    // Separates the field from the previous one, if any.
+    private static StringBuilder appendField(StringBuilder out, String key) {
+        if (out.charAt(out.length() - 1) != '{') {
+            out.append(',');
+        }
+        return appendKey(out, key);
+    }
+
+    private static StringBuilder appendString(StringBuilder out, String value) {
+        return out.append(value != null ? JSONObject.quote(value) : "null");
+    }
+
+    private static StringBuilder appendDouble(StringBuilder out, double value) {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            return out.append("null");
+        }
+        return out.append(value);
+    }
+}
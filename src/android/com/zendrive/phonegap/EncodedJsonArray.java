@@ -0,0 +1,43 @@
+package com.zendrive.phonegap;
+
+import org.json.JSONArray;
+
+import java.util.List;
+
+/**
+ * A JSON array that has already been serialized. {@link org.apache.cordova.PluginResult}
+ * only calls {@code toString()} on the array it is given, so this lets us send JSON built
+ * elsewhere across the bridge without parsing it back into {@code JSONObject}s.
+ */
+class EncodedJsonArray extends JSONArray {
+    private final String encoded;
+
+    EncodedJsonArray(String encoded) {
+        this.encoded = encoded;
+    }
+
+    /**
+     * Joins already encoded JSON values into one array.
+     */
+    static EncodedJsonArray of(List<String> encodedValues) {
+        int length = 2;
+        for (String value : encodedValues) {
+            length += value.length() + 1;
+        }
+        StringBuilder builder = new StringBuilder(length);
+        builder.append('[');
+        for (int i = 0; i < encodedValues.size(); i++) {
+            if (i > 0) {
+                builder.append(',');
+            }
+            builder.append(encodedValues.get(i));
+        }
+        builder.append(']');
+        return new EncodedJsonArray(builder.toString());
+    }
+
+    @Override
+    public String toString() {
+        return encoded;
+    }
+}
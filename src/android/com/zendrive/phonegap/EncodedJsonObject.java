@@ -0,0 +1,20 @@
+package com.zendrive.phonegap;
+
+import org.json.JSONObject;
+
+/**
+ * A JSON object that has already been serialized; see {@link EncodedJsonArray}. Only
+ * meant to be handed to a {@link org.apache.cordova.PluginResult}.
+ */
+class EncodedJsonObject extends JSONObject {
+    private final String encoded;
+
+    EncodedJsonObject(String encoded) {
+        this.encoded = encoded;
+    }
+
+    @Override
+    public String toString() {
+        return encoded;
+    }
+}
@@ -0,0 +1,122 @@
+package com.zendrive.phonegap;
+
+import org.apache.cordova.CallbackContext;
+import org.apache.cordova.PluginResult;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * JS listeners per event type. Each type maps to an immutable array that is replaced on
+ * every change (copy-on-write), so the event path reads listeners without taking a lock.
+ * Registration is rare and serialized on the registry.
+ */
+class EventListenerRegistry {
+
+    static final class Listener {
+        final String id;
+        final CallbackContext callbackContext;
+        // Top level fields the listener wants, or null for all of them.
+        final Set<String> fields;
+        // Events the listener wants, or null for all of them.
+        final DriveEventFilter filter;
+
+        Listener(String id, CallbackContext callbackContext, Set<String> fields, DriveEventFilter filter) {
+            this.id = id;
+            this.callbackContext = callbackContext;
+            this.fields = fields;
+            this.filter = filter;
+        }
+
+        boolean isLive() {
+            return !callbackContext.isFinished();
+        }
+    }
+
+    static final Listener[] NONE = new Listener[0];
+
+    private final ConcurrentMap<String, Listener[]> listeners = new ConcurrentHashMap<>();
+
+    /**
+     * Current listeners of {@code type}. The returned array must not be modified.
+     */
+    Listener[] get(String type) {
+        Listener[] current = listeners.get(type);
+        return current == null ? NONE : current;
+    }
+
+    boolean hasLiveListener(String type) {
+        for (Listener listener : get(type)) {
+            if (listener.isLive()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Adds a listener, replacing and releasing any listener of the same type with the same id.
+     */
+    synchronized void add(String type, Listener listener) {
+        Listener[] current = get(type);
+        int existing = indexOf(current, listener.id);
+        Listener[] updated;
+        if (existing >= 0) {
+            release(current[existing]);
+            updated = current.clone();
+            updated[existing] = listener;
+        } else {
+            updated = new Listener[current.length + 1];
+            System.arraycopy(current, 0, updated, 0, current.length);
+            updated[current.length] = listener;
+        }
+        listeners.put(type, updated);
+    }
+
+    synchronized void remove(String type, String id) {
+        Listener[] current = get(type);
+        int index = indexOf(current, id);
+        if (index < 0) {
+            return;
+        }
+        release(current[index]);
+        if (current.length == 1) {
+            listeners.remove(type);
+            return;
+        }
+        Listener[] updated = new Listener[current.length - 1];
+        System.arraycopy(current, 0, updated, 0, index);
+        System.arraycopy(current, index + 1, updated, index, current.length - index - 1);
+        listeners.put(type, updated);
+    }
+
+    /**
+     * Drops every listener without notifying JS, e.g. after the page was reloaded and the
+     * callbacks no longer exist.
+     */
+    synchronized void clear() {
+        listeners.clear();
+    }
+
+    private static int indexOf(Listener[] listeners, String id) {
+        for (int i = 0; i < listeners.length; i++) {
+            if (listeners[i].id.equals(id)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /*
+     * Sending NO_RESULT doesn't call any js callback method. Setting keepCallback to false
+     * makes sure that the callback is deleted from memory after this call.
+     */
+    private static void release(Listener listener) {
+        if (listener.isLive()) {
+            PluginResult result = new PluginResult(PluginResult.Status.NO_RESULT);
+            result.setKeepCallback(false);
+            listener.callbackContext.sendPluginResult(result);
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.zendrive.phonegap;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram over fixed bucket bounds. Recording does not allocate or lock, so it can sit on
+ * the bridge and event paths. Bucket {@code i} counts values {@code <= bounds[i]}; the last
+ * bucket counts everything above the highest bound.
+ */
+class FixedHistogram {
+    private final long[] bounds;
+    private final AtomicLongArray counts;
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    FixedHistogram(long[] bounds) {
+        this.bounds = bounds;
+        this.counts = new AtomicLongArray(bounds.length + 1);
+    }
+
+    void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        counts.incrementAndGet(bucketOf(value));
+        sum.addAndGet(value);
+        long current;
+        while (value > (current = max.get())) {
+            if (max.compareAndSet(current, value)) {
+                break;
+            }
+        }
+    }
+
+    private int bucketOf(long value) {
+        int low = 0;
+        int high = bounds.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (value <= bounds[mid]) {
+                high = mid;
+            } else {
+                low = mid + 1;
+            }
+        }
+        return low;
+    }
+
+    long getCount() {
+        long count = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            count += counts.get(i);
+        }
+        return count;
+    }
+
+    void reset() {
+        for (int i = 0; i < counts.length(); i++) {
+            counts.set(i, 0);
+        }
+        sum.set(0);
+        max.set(0);
+    }
+
+    /**
+     * {@code {"count":..,"sum":..,"max":..,"counts":[..]}}; the bounds are reported once per
+     * snapshot by the owner. Concurrent recording may make the fields slightly inconsistent.
+     */
+    JSONObject toJson() throws JSONException {
+        JSONArray bucketCounts = new JSONArray();
+        long count = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            long bucketCount = counts.get(i);
+            bucketCounts.put(bucketCount);
+            count += bucketCount;
+        }
+        JSONObject histogram = new JSONObject();
+        histogram.put("count", count);
+        histogram.put("sum", sum.get());
+        histogram.put("max", max.get());
+        histogram.put("counts", bucketCounts);
+        return histogram;
+    }
+
+    static JSONArray boundsToJson(long[] bounds) {
+        JSONArray array = new JSONArray();
+        for (long bound : bounds) {
+            array.put(bound);
+        }
+        return array;
+    }
+}
@@ -0,0 +1,36 @@
+package com.zendrive.phonegap;
+
+/**
+ * Small geodesic helpers for working with waypoints on device.
+ */
+final class GeoMath {
+    static final double EARTH_RADIUS_METERS = 6371008.8;
+
+    private GeoMath() {
+    }
+
+    /**
+     * Great-circle distance between two points, in meters.
+     */
+    static double haversineMeters(double lat1, double lng1, double lat2, double lng2) {
+        double dLat = Math.toRadians(lat2 - lat1);
+        double dLng = Math.toRadians(lng2 - lng1);
+        double sinLat = Math.sin(dLat / 2);
+        double sinLng = Math.sin(dLng / 2);
+        double a = sinLat * sinLat
+                + Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2)) * sinLng * sinLng;
+        return 2 * EARTH_RADIUS_METERS * Math.asin(Math.min(1, Math.sqrt(a)));
+    }
+
+    /**
+     * Meters per degree of longitude at {@code latitude}; used to project short segments
+     * onto a local plane.
+     */
+    static double metersPerDegreeLongitude(double latitude) {
+        return Math.toRadians(1) * EARTH_RADIUS_METERS * Math.cos(Math.toRadians(latitude));
+    }
+
+    static double metersPerDegreeLatitude() {
+        return Math.toRadians(1) * EARTH_RADIUS_METERS;
+    }
+}
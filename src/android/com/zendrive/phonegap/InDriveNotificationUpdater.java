@@ -0,0 +1,177 @@
+package com.zendrive.phonegap;
+
+import android.app.Notification;
+import android.app.NotificationManager;
+import android.content.Context;
+import android.util.Log;
+
+import androidx.core.app.NotificationCompat;
+
+import com.zendrive.sdk.ActiveDriveInfo;
+
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the in-drive foreground notification showing the drive's distance and insurance
+ * period. Elapsed time is a chronometer that the system advances on its own, so it never
+ * needs a post. Distance is polled from the SDK at most once per interval, and the
+ * notification is only re-posted when its text changed. One builder is reused for the
+ * whole drive.
+ *
+ * Everything except {@link #getNotification()} runs on the updater's own thread.
+ */
+class InDriveNotificationUpdater {
+    private static final String TAG = "ZendriveNotification";
+    static final long DEFAULT_INTERVAL_MILLIS = 15000;
+    static final long MIN_INTERVAL_MILLIS = 1000;
+
+    private final Context context;
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+
+    private volatile boolean enabled = true;
+    private volatile long intervalMillis = DEFAULT_INTERVAL_MILLIS;
+    // Last notification posted for the current drive, or null if none is live.
+    private volatile Notification notification;
+
+    // Only touched on the executor.
+    private ActiveDriveSnapshot drive;
+    private NotificationCompat.Builder builder;
+    private String postedText;
+    private ScheduledFuture<?> ticks;
+
+    InDriveNotificationUpdater(Context context) {
+        this.context = context.getApplicationContext();
+    }
+
+    /**
+     * The notification to hand to the SDK for the in-drive state, or null to use the static one.
+     */
+    Notification getNotification() {
+        return enabled ? notification : null;
+    }
+
+    void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+        executor.execute(() -> {
+            if (!enabled) {
+                if (notification != null) {
+                    // Put the static in-drive text back.
+                    getNotificationManager().notify(NotificationUtility.FOREGROUND_MODE_NOTIFICATION_ID,
+                            NotificationUtility.createInDriveNotification(context));
+                }
+                stop();
+            } else if (drive != null) {
+                start(drive);
+            }
+        });
+    }
+
+    void setIntervalMillis(long intervalMillis) {
+        this.intervalMillis = Math.max(MIN_INTERVAL_MILLIS, intervalMillis);
+        executor.execute(() -> {
+            if (ticks != null) {
+                start(drive);
+            }
+        });
+    }
+
+    /**
+     * Starts, updates or stops the notification to follow the active drive.
+     */
+    void onActiveDriveChanged(final ActiveDriveSnapshot snapshot) {
+        executor.execute(() -> {
+            if (!snapshot.active) {
+                drive = null;
+                if (notification != null) {
+                    // Only removes it if the SDK is no longer showing it for its foreground
+                    // service; foreground service notifications cannot be cancelled.
+                    getNotificationManager().cancel(NotificationUtility.FOREGROUND_MODE_NOTIFICATION_ID);
+                }
+                stop();
+                return;
+            }
+            boolean sameDrive = drive != null && drive.startTimeMillis == snapshot.startTimeMillis;
+            drive = snapshot;
+            if (!enabled) {
+                return;
+            }
+            if (sameDrive && ticks != null) {
+                // e.g. the insurance period changed; picked up on the next tick.
+                return;
+            }
+            start(snapshot);
+        });
+    }
+
+    private void start(ActiveDriveSnapshot snapshot) {
+        stop();
+        drive = snapshot;
+        builder = NotificationUtility.createInDriveNotificationBuilder(context)
+                .setWhen(snapshot.startTimeMillis)
+                .setShowWhen(true)
+                .setUsesChronometer(true);
+        update();
+        long interval = intervalMillis;
+        ticks = executor.scheduleWithFixedDelay(this::update, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    private void stop() {
+        if (ticks != null) {
+            ticks.cancel(false);
+            ticks = null;
+        }
+        builder = null;
+        postedText = null;
+        notification = null;
+    }
+
+    private void update() {
+        if (builder == null || drive == null) {
+            return;
+        }
+        double distanceMeters = 0;
+        try {
+            ActiveDriveInfo info = ZendriveSdk.get().getActiveDriveInfo(context);
+            if (info == null) {
+                // The drive ended; the end event will stop us.
+                return;
+            }
+            distanceMeters = info.distanceMeters;
+            ShiftMileageAccountant.getInstance(context).onDriveProgress(info);
+        } catch (RuntimeException e) {
+            Log.w(TAG, "Could not read active drive", e);
+        }
+        String text = formatText(distanceMeters, drive);
+        if (text.equals(postedText)) {
+            return;
+        }
+        Notification updated = builder.setContentText(text).build();
+        try {
+            getNotificationManager().notify(NotificationUtility.FOREGROUND_MODE_NOTIFICATION_ID, updated);
+        } catch (RuntimeException e) {
+            // Would fail the same way on every tick; wait for the next drive instead.
+            Log.e(TAG, "Failed to update in-drive notification, stopping updates", e);
+            stop();
+            return;
+        }
+        postedText = text;
+        notification = updated;
+    }
+
+    private static String formatText(double distanceMeters, ActiveDriveSnapshot drive) {
+        // One decimal so that the text, and with it the notification, changes every 100 m at most.
+        String distance = String.format(Locale.getDefault(), "%.1f km", distanceMeters / 1000);
+        if (drive.insurancePeriod == null) {
+            return distance;
+        }
+        return distance + ", period " + ZendriveManager.GetPeriodInt(drive.insurancePeriod);
+    }
+
+    private NotificationManager getNotificationManager() {
+        return (NotificationManager) context.getSystemService(Context.NOTIFICATION_SERVICE);
+    }
+}
@@ -0,0 +1,276 @@
+package com.zendrive.phonegap;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.zendrive.sdk.ZendriveOperationCallback;
+import com.zendrive.sdk.ZendriveOperationResult;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Owns the insurance period the driver is in and serializes every transition between
+ * periods. Transitions are queued on a single executor, which is the only thread that
+ * reads or writes the queue, and only one SDK call is outstanding at a time.
+ *
+ * While a call is outstanding at most one further transition is kept: a newer request
+ * replaces the queued one, so period1 -> period2 -> period1 fired in quick succession
+ * collapses into nothing once the first call completes. A replaced request completes with
+ * the one that replaced it: on success with {@code {coalesced: true, appliedAction,
+ * insurancePeriod}} naming the transition that was applied instead, on failure with its error.
+ */
+class InsurancePeriodStateMachine {
+    private static final String TAG = "ZendriveInsurance";
+    private static final String TORN_DOWN_ERROR = "Zendrive was torn down";
+
+    enum Period {
+        PERIOD_0(0), PERIOD_1(1), PERIOD_2(2), PERIOD_3(3);
+
+        final int value;
+
+        Period(int value) {
+            this.value = value;
+        }
+
+        static Period fromInt(int value) {
+            for (Period period : values()) {
+                if (period.value == value) {
+                    return period;
+                }
+            }
+            return null;
+        }
+    }
+
+    private static final class Command {
+        final Period target;
+        final String action;
+        final CallResult call;
+        // Queued requests this one replaced; they complete with it.
+        final List<Command> coalesced = new ArrayList<>();
+
+        Command(Period target, String action, CallResult call) {
+            this.target = target;
+            this.action = action;
+            this.call = call;
+        }
+
+        void absorb(Command replaced) {
+            coalesced.add(replaced);
+            coalesced.addAll(replaced.coalesced);
+            replaced.coalesced.clear();
+        }
+
+        void succeed() {
+            call.success();
+            if (coalesced.isEmpty()) {
+                return;
+            }
+            JSONObject result = new JSONObject();
+            try {
+                result.put("coalesced", true);
+                result.put("appliedAction", action);
+                result.put("insurancePeriod", target.value);
+            } catch (JSONException e) {
+                Log.e(TAG, "Failed to describe coalesced transition", e);
+            }
+            for (Command replaced : coalesced) {
+                replaced.call.success(result);
+            }
+        }
+
+        void fail(String errorMessage) {
+            call.error(errorMessage);
+            for (Command replaced : coalesced) {
+                replaced.call.error(errorMessage);
+            }
+        }
+
+        void fail(String errorMessage, ZendriveOperationResult result) {
+            call.error(errorMessage, result);
+            for (Command replaced : coalesced) {
+                replaced.call.error(errorMessage, result);
+            }
+        }
+    }
+
+    interface Listener {
+        /**
+         * Called on the state machine's executor after a transition to {@code period} succeeded.
+         */
+        void onPeriodChanged(Period period);
+    }
+
+    private final Context context;
+    private final Executor executor;
+    private final PluginStateStore stateStore;
+    private volatile Listener listener;
+
+    // Only touched on the executor. Restored from the state store before
+    // the first transition; null if nothing was persisted, as the SDK cannot tell us which
+    // period we are in.
+    private Period period;
+    private boolean restored;
+    private Command inFlight;
+    private Command pending;
+
+    InsurancePeriodStateMachine(Context context, Executor executor, PluginStateStore stateStore) {
+        this.context = context.getApplicationContext();
+        this.executor = executor;
+        this.stateStore = stateStore;
+        post(this::restore);
+    }
+
+    void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Forgets the current period, e.g. after the SDK was torn down. A queued transition is
+     * failed rather than run against the torn down SDK; one in flight completes as usual.
+     */
+    void reset() {
+        post(() -> {
+            if (pending != null) {
+                pending.fail("Zendrive " + pending.action + " failed: " + TORN_DOWN_ERROR);
+                pending = null;
+            }
+            restored = true;
+            period = null;
+            stateStore.setInsurancePeriod(PluginStateStore.UNKNOWN_PERIOD);
+        });
+    }
+
+    /**
+     * Queues a transition to {@code target}. {@code call} is completed once the transition, or
+     * the newer one it was coalesced into, has been applied, skipped or rejected.
+     */
+    void submit(final Period target, final String action, final CallResult call) {
+        if (!post(() -> enqueue(new Command(target, action, call)))) {
+            call.error("Zendrive " + action + " failed: " + ZendriveCordovaPlugin.PLUGIN_DESTROYED_ERROR);
+        }
+    }
+
+    /**
+     * Runs {@code task} on the executor, or drops it once the plugin was destroyed and the
+     * executor shut down; SDK callbacks can still arrive after that.
+     */
+    private boolean post(Runnable task) {
+        try {
+            executor.execute(task);
+            return true;
+        } catch (RejectedExecutionException e) {
+            Log.w(TAG, "Plugin destroyed, dropping insurance period work");
+            return false;
+        }
+    }
+
+    private void restore() {
+        if (!restored) {
+            restored = true;
+            period = Period.fromInt(stateStore.getInsurancePeriod());
+        }
+    }
+
+    private void enqueue(Command command) {
+        restore();
+        if (pending != null) {
+            Log.d(TAG, pending.action + " coalesced into " + command.action);
+            command.absorb(pending);
+        }
+        pending = command;
+        if (inFlight == null) {
+            runNext();
+        }
+    }
+
+    private void runNext() {
+        while (pending != null) {
+            Command command = pending;
+            pending = null;
+
+            if (isRedundant(command.target)) {
+                command.succeed();
+                continue;
+            }
+
+            inFlight = command;
+            try {
+                start(command);
+            } catch (Throwable e) {
+                Log.e(TAG, "Failed to start " + command.action, e);
+                inFlight = null;
+                command.fail("Zendrive " + command.action + " failed " + e.getMessage());
+                continue;
+            }
+            return;
+        }
+    }
+
+    private void onCompleted(Command command, ZendriveOperationResult result) {
+        inFlight = null;
+        if (result.isSuccess()) {
+            period = command.target;
+            stateStore.setInsurancePeriod(command.target.value);
+            command.succeed();
+            Listener listener = this.listener;
+            if (listener != null) {
+                try {
+                    listener.onPeriodChanged(command.target);
+                } catch (RuntimeException e) {
+                    Log.e(TAG, "Period listener failed", e);
+                }
+            }
+        } else {
+            command.fail("Zendrive " + command.action + " failed", result);
+        }
+        runNext();
+    }
+
+    private boolean isRedundant(Period target) {
+        // Every period 2 request is a new passenger request with a new tracking id.
+        return target == period && target != Period.PERIOD_2;
+    }
+
+    private void start(final Command command) {
+        ZendriveOperationCallback callback = result -> {
+            if (!post(() -> onCompleted(command, result))) {
+                command.fail("Zendrive " + command.action + " failed: " + ZendriveCordovaPlugin.PLUGIN_DESTROYED_ERROR);
+            }
+        };
+        switch (command.target) {
+            case PERIOD_0:
+                // clear tracking id if not already cleared.
+                requireManager().setTrackingId(null);
+                ZendriveSdk.get().stopPeriod(context, callback);
+                break;
+            case PERIOD_1:
+                ZendriveSdk.get().startPeriod1(context, callback);
+                break;
+            case PERIOD_2:
+                ZendriveSdk.get().startDriveWithPeriod2(context, requireManager().generateTrackingKey(), callback);
+                break;
+            case PERIOD_3:
+                ZendriveSdk.get().startDriveWithPeriod3(context, requireManager().generateTrackingKeyIfNull(), callback);
+                break;
+        }
+    }
+
+    /**
+     * The manager keeps the tracking id. Only the transitions that use it need one; a missing
+     * manager fails the command in {@link #runNext()}.
+     */
+    private static ZendriveManager requireManager() {
+        ZendriveManager manager = ZendriveManager.getSharedInstanceOrNull();
+        if (manager == null) {
+            throw new IllegalStateException("plugin is not initialized");
+        }
+        return manager;
+    }
+}
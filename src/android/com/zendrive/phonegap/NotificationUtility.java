@@ -7,6 +7,7 @@ import android.app.PendingIntent;
 import android.content.Context;
 import android.content.Intent;
 import android.os.Build;
+import android.util.Log;
 import androidx.core.app.NotificationCompat;
 import androidx.core.app.NotificationManagerCompat;
 
@@ -18,39 +19,128 @@ import com.zendrive.sdk.ZendriveOperationResult;
  * something interesting to report.
  */
 public class NotificationUtility {
+    private static final String TAG = "ZendriveNotification";
     public static final int FOREGROUND_MODE_NOTIFICATION_ID = 98;
     public static final int LOCATION_DISABLED_NOTIFICATION_ID = 99;
     public static final int LOCATION_PERMISSION_DENIED_NOTIFICATION_ID = 100;
+    public static final int ACCIDENT_NOTIFICATION_ID = 101;
 
     private static final String FOREGROUND_CHANNEL_KEY = "Foreground";
     private static final String SETTINGS_CHANNEL_KEY = "Settings";
     private static final String LOCATION_CHANNEL_KEY = "Location";
+    private static final String ACCIDENT_CHANNEL_KEY = "Accident";
+    private static final String SMALL_ICON_NAME = "ic_notification";
     private static NotificationManagerCompat notificationManager;
 
+    // Channels only have to be created once per process.
+    private static volatile boolean channelsCreated;
+    private static PendingIntent notificationClickIntent;
+    private static PendingIntent locationSettingsIntent;
+    private static int smallIcon;
+
+    /**
+     * The last notification built for one slot, reused for as long as its content is unchanged.
+     * The SDK asks for the foreground notification on every mode switch.
+     */
+    private static final class CachedNotification {
+        private String content;
+        private Notification notification;
+
+        synchronized Notification get(String content, BuilderFactory factory) {
+            if (notification == null || !content.equals(this.content)) {
+                this.notification = factory.create().build();
+                this.content = content;
+            }
+            return notification;
+        }
+    }
+
+    private interface BuilderFactory {
+        NotificationCompat.Builder create();
+    }
+
+    private static final CachedNotification waitingForDriveNotification = new CachedNotification();
+    private static final CachedNotification maybeInDriveNotification = new CachedNotification();
+    private static final CachedNotification inDriveNotification = new CachedNotification();
+    private static final CachedNotification locationSettingDisabledNotification = new CachedNotification();
+    private static final CachedNotification accidentNotification = new CachedNotification();
+
     public static Notification createWaitingForDriveNotification(Context context) {
-        createNotificationChannels(context);
-        return new NotificationCompat.Builder(context, FOREGROUND_CHANNEL_KEY)
-                .setPriority(NotificationCompat.PRIORITY_MIN).setCategory(NotificationCompat.CATEGORY_SERVICE)
-                .setContentText("Application is waiting for drive.")
-                .setContentIntent(getNotificationClickIntent(context)).build();
+        String text = "Application is waiting for drive.";
+        return waitingForDriveNotification.get(text, () -> {
+            createNotificationChannels(context);
+            return new NotificationCompat.Builder(context, FOREGROUND_CHANNEL_KEY)
+                    .setPriority(NotificationCompat.PRIORITY_MIN).setCategory(NotificationCompat.CATEGORY_SERVICE)
+                    .setContentText(text)
+                    .setContentIntent(getNotificationClickIntent(context));
+        });
     }
 
     public static Notification createMaybeInDriveNotification(Context context) {
-        createNotificationChannels(context);
-        return new NotificationCompat.Builder(context, FOREGROUND_CHANNEL_KEY)
-                .setPriority(NotificationCompat.PRIORITY_MIN).setCategory(NotificationCompat.CATEGORY_SERVICE)
-                .setContentText("Application is tracking your location.")
-                .setContentIntent(getNotificationClickIntent(context)).build();
+        String text = "Application is tracking your location.";
+        return maybeInDriveNotification.get(text, () -> {
+            createNotificationChannels(context);
+            return new NotificationCompat.Builder(context, FOREGROUND_CHANNEL_KEY)
+                    .setPriority(NotificationCompat.PRIORITY_MIN).setCategory(NotificationCompat.CATEGORY_SERVICE)
+                    .setContentText(text)
+                    .setContentIntent(getNotificationClickIntent(context));
+        });
     }
 
     public static Notification createInDriveNotification(Context context) {
+        String text = "Application is tracking your location.";
+        return inDriveNotification.get(text, () -> {
+            createNotificationChannels(context);
+            return new NotificationCompat.Builder(context, FOREGROUND_CHANNEL_KEY)
+                    .setCategory(NotificationCompat.CATEGORY_SERVICE).setContentText(text)
+                    .setContentIntent(getNotificationClickIntent(context));
+        });
+    }
+
+    /**
+     * Builder for the in-drive notification whose content is kept up to date while driving;
+     * see {@link InDriveNotificationUpdater}.
+     */
+    static NotificationCompat.Builder createInDriveNotificationBuilder(Context context) {
         createNotificationChannels(context);
         return new NotificationCompat.Builder(context, FOREGROUND_CHANNEL_KEY)
-                .setCategory(NotificationCompat.CATEGORY_SERVICE).setContentText("Application is tracking your location.")
-                .setContentIntent(getNotificationClickIntent(context)).build();
+                .setSmallIcon(getSmallIcon(context))
+                .setCategory(NotificationCompat.CATEGORY_SERVICE)
+                .setOngoing(true).setOnlyAlertOnce(true)
+                .setContentIntent(getNotificationClickIntent(context));
+    }
+
+    /**
+     * Shown when an accident was detected but could not be delivered to the app's JS.
+     */
+    public static Notification createAccidentNotification(Context context) {
+        String text = "Tap to open the app and respond.";
+        return accidentNotification.get(text, () -> {
+            createNotificationChannels(context);
+            return new NotificationCompat.Builder(context, ACCIDENT_CHANNEL_KEY)
+                    .setSmallIcon(getSmallIcon(context))
+                    .setContentTitle("Possible accident detected")
+                    .setContentText(text)
+                    .setPriority(NotificationCompat.PRIORITY_MAX).setCategory(NotificationCompat.CATEGORY_ALARM)
+                    .setAutoCancel(true)
+                    .setContentIntent(getNotificationClickIntent(context));
+        });
     }
 
     private static void createNotificationChannels(Context context) {
+        if (channelsCreated) {
+            return;
+        }
+        synchronized (NotificationUtility.class) {
+            if (channelsCreated) {
+                return;
+            }
+            createNotificationChannelsOnce(context);
+            channelsCreated = true;
+        }
+    }
+
+    private static void createNotificationChannelsOnce(Context context) {
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
             NotificationManager manager = (NotificationManager) context.getSystemService(Context.NOTIFICATION_SERVICE);
             NotificationChannel lowPriorityNotificationChannel = new NotificationChannel(FOREGROUND_CHANNEL_KEY,
@@ -63,35 +153,65 @@ public class NotificationUtility {
             defaultNotificationChannel.setShowBadge(true);
             manager.createNotificationChannel(defaultNotificationChannel);
 
+            NotificationChannel accidentNotificationChannel = new NotificationChannel(ACCIDENT_CHANNEL_KEY,
+                    "Accidents", NotificationManager.IMPORTANCE_HIGH);
+            accidentNotificationChannel.setShowBadge(true);
+            manager.createNotificationChannel(accidentNotificationChannel);
+        }
+    }
+
+    /**
+     * The ic_notification drawable the plugin installs into the app's resources. The system
+     * refuses to post a notification without a small icon.
+     */
+    static synchronized int getSmallIcon(Context context) {
+        if (smallIcon == 0) {
+            smallIcon = context.getResources().getIdentifier(SMALL_ICON_NAME, "drawable", context.getPackageName());
+            if (smallIcon == 0) {
+                Log.e(TAG, "Drawable " + SMALL_ICON_NAME + " not found, using the app icon");
+                smallIcon = context.getApplicationInfo().icon;
+            }
         }
+        return smallIcon;
     }
 
-    private static PendingIntent getNotificationClickIntent(Context context) {
-        Intent notificationIntent = new Intent(context.getApplicationContext(), NotificationActivity.class);
-        notificationIntent.setFlags(Intent.FLAG_ACTIVITY_SINGLE_TOP);
-        return PendingIntent.getActivity(context.getApplicationContext(), 0, notificationIntent, 0);
+    private static synchronized PendingIntent getNotificationClickIntent(Context context) {
+        if (notificationClickIntent == null) {
+            Intent notificationIntent = new Intent(context.getApplicationContext(), NotificationActivity.class);
+            notificationIntent.setFlags(Intent.FLAG_ACTIVITY_SINGLE_TOP);
+            notificationClickIntent = PendingIntent.getActivity(context.getApplicationContext(), 0,
+                    notificationIntent, 0);
+        }
+        return notificationClickIntent;
+    }
+
+    private static synchronized PendingIntent getLocationSettingsIntent(Context context) {
+        if (locationSettingsIntent == null) {
+            Intent callGPSSettingIntent = new Intent(
+                    android.provider.Settings.ACTION_LOCATION_SOURCE_SETTINGS);
+            locationSettingsIntent = PendingIntent.getActivity(context.getApplicationContext(), 0,
+                    callGPSSettingIntent, 0);
+        }
+        return locationSettingsIntent;
     }
 
     public static Notification createLocationSettingDisabledNotification(Context context,
                                                                          ZendriveOperationResult settingsResult) {
-        createNotificationChannels(context);
         if (BuildConfig.DEBUG && settingsResult.isSuccess()) {
             throw new AssertionError("Only expected failed settings result");
         }
         // TODO: use the result from the callback and show appropriate message and intent
-        Intent callGPSSettingIntent = new Intent(
-                android.provider.Settings.ACTION_LOCATION_SOURCE_SETTINGS);
-        PendingIntent pendingIntent = PendingIntent.getActivity(context.getApplicationContext(), 0,
-                callGPSSettingIntent, 0);
-
-        return new NotificationCompat.Builder(context.getApplicationContext(), LOCATION_CHANNEL_KEY)
-                .setContentTitle("Location is disabled")
-                //.setTicker(context.getResources().getString(context.getResources().getIdentifier("R.string.location_disabled", "string", context.getPackageName())))
-                .setContentText("The location is disabled.")
-                //.setSmallIcon(context.getResources().getIdentifier("R.drawable.ic_notification", "drawable", context.getPackageName()))
-                .setPriority(Notification.PRIORITY_MAX)
-                .setContentIntent(pendingIntent)
-                .setCategory(Notification.CATEGORY_ERROR)
-                .build();
+        String text = "The location is disabled.";
+        return locationSettingDisabledNotification.get(text, () -> {
+            createNotificationChannels(context);
+            return new NotificationCompat.Builder(context.getApplicationContext(), LOCATION_CHANNEL_KEY)
+                    .setContentTitle("Location is disabled")
+                    //.setTicker(context.getResources().getString(context.getResources().getIdentifier("R.string.location_disabled", "string", context.getPackageName())))
+                    .setContentText(text)
+                    //.setSmallIcon(context.getResources().getIdentifier("R.drawable.ic_notification", "drawable", context.getPackageName()))
+                    .setPriority(Notification.PRIORITY_MAX)
+                    .setContentIntent(getLocationSettingsIntent(context))
+                    .setCategory(Notification.CATEGORY_ERROR);
+        });
     }
 }
\ No newline at end of file
@@ -0,0 +1,109 @@
+package com.zendrive.phonegap;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Fixed size ring buffer of events waiting to be delivered to JavaScript.
+ * When the buffer is full the oldest event is dropped to make room for the new one.
+ * All methods are thread safe.
+ */
+class PendingEventBuffer {
+    static final int DEFAULT_CAPACITY = 64;
+
+    private DriveEvent[] events;
+    private int head;
+    private int size;
+    private long droppedCount;
+
+    PendingEventBuffer(int capacity) {
+        allocate(capacity);
+    }
+
+    private void allocate(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+        events = new DriveEvent[capacity];
+        head = 0;
+        size = 0;
+    }
+
+    /**
+     * Number of events dropped since the last call.
+     */
+    synchronized long takeDroppedCount() {
+        long dropped = droppedCount;
+        droppedCount = 0;
+        return dropped;
+    }
+
+    /**
+     * Changes the capacity, keeping the newest events that still fit.
+     */
+    synchronized void setCapacity(int capacity) {
+        if (capacity == events.length) {
+            return;
+        }
+        DriveEvent[] oldEvents = events;
+        int oldHead = head;
+        int oldSize = size;
+        allocate(capacity);
+        int skip = Math.max(0, oldSize - capacity);
+        droppedCount += skip;
+        for (int i = skip; i < oldSize; i++) {
+            int index = (oldHead + i) % oldEvents.length;
+            add(oldEvents[index]);
+        }
+    }
+
+    /**
+     * Appends an event, dropping the oldest one if the buffer is full.
+     */
+    synchronized void add(DriveEvent event) {
+        int capacity = events.length;
+        if (size == capacity) {
+            head = (head + 1) % capacity;
+            size--;
+            droppedCount++;
+        }
+        int tail = (head + size) % capacity;
+        events[tail] = event;
+        size++;
+    }
+
+    synchronized boolean hasEvents(String type) {
+        int capacity = events.length;
+        for (int i = 0; i < size; i++) {
+            if (type.equals(events[(head + i) % capacity].type)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Removes and returns all buffered events of {@code type}, oldest first.
+     */
+    synchronized List<DriveEvent> drain(String type) {
+        int capacity = events.length;
+        List<DriveEvent> drained = new ArrayList<>();
+        int kept = 0;
+        for (int i = 0; i < size; i++) {
+            int from = (head + i) % capacity;
+            if (type.equals(events[from].type)) {
+                drained.add(events[from]);
+            } else {
+                int to = (head + kept) % capacity;
+                events[to] = events[from];
+                kept++;
+            }
+        }
+        for (int i = kept; i < size; i++) {
+            int index = (head + i) % capacity;
+            events[index] = null;
+        }
+        size = kept;
+        return drained;
+    }
+}
@@ -0,0 +1,87 @@
+package com.zendrive.phonegap;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Maps the action names sent over the Cordova bridge to their handlers. Every
+ * handler declares the thread it has to be run on, so the plugin can dispatch
+ * it without scanning the action names on every call.
+ */
+class PluginActionRegistry {
+
+    /**
+     * Thread an action is run on.
+     */
+    enum Dispatch {
+        /** Run directly on the bridge (WebCore) thread. Only for cheap, non-blocking work. */
+        INLINE,
+        /** Run on the plugin's single serial executor, in the order the calls arrived. */
+        SERIAL,
+        /** Run on the shared Cordova thread pool. */
+        POOL
+    }
+
+    /**
+     * Handles one action. The handler owns {@code call} and must complete it exactly once,
+     * either before returning or later from an asynchronous callback.
+     */
+    interface Handler {
+        void handle(JSONArray args, CallResult call) throws JSONException;
+    }
+
+    static final class Entry {
+        final Dispatch dispatch;
+        final Handler handler;
+        // Systrace section the handler runs in, built once so tracing does not allocate per call.
+        final String traceSection;
+        final PluginMetrics.ActionMetrics metrics;
+        // Holds on to its callback to send more results later, so it cannot be part of a batch.
+        final boolean keepsCallback;
+
+        private Entry(String action, Dispatch dispatch, Handler handler, boolean keepsCallback) {
+            this.dispatch = dispatch;
+            this.handler = handler;
+            this.keepsCallback = keepsCallback;
+            this.traceSection = traceSection("exec." + action);
+            this.metrics = PluginMetrics.getInstance().forAction(action);
+        }
+    }
+
+    /**
+     * Prefixes {@code name} so the plugin's sections are easy to find in a trace, and caps it
+     * at the 127 characters {@code Trace.beginSection} accepts.
+     */
+    static String traceSection(String name) {
+        String section = "Zendrive." + name;
+        return section.length() > 127 ? section.substring(0, 127) : section;
+    }
+
+    private final Map<String, Entry> actions = new HashMap<>();
+
+    void register(String action, Dispatch dispatch, Handler handler) {
+        add(action, new Entry(action, dispatch, handler, false));
+    }
+
+    /**
+     * Registers an action whose handler keeps {@link CallResult#getCallbackContext()} to send
+     * results after the call returns, such as listener registrations.
+     */
+    void registerKeepingCallback(String action, Dispatch dispatch, Handler handler) {
+        add(action, new Entry(action, dispatch, handler, true));
+    }
+
+    private void add(String action, Entry entry) {
+        if (actions.containsKey(action)) {
+            throw new IllegalStateException("Action already registered: " + action);
+        }
+        actions.put(action, entry);
+    }
+
+    Entry get(String action) {
+        return actions.get(action);
+    }
+}
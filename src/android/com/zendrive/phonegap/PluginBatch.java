@@ -0,0 +1,146 @@
+package com.zendrive.phonegap;
+
+import android.os.Trace;
+
+import org.apache.cordova.PluginResult;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Runs the commands of one {@code batch} call in order and completes it with one array holding
+ * a result per command, so a flow like setup, startSession, goOnDuty costs a single bridge
+ * crossing. Each element is {@code {"action":..,"status":"ok"|"error"|"skipped","result":..}},
+ * where {@code result} is what the action would have passed to its own callback.
+ *
+ * A command starts once the previous one has completed, which may be in a later SDK callback;
+ * the batch never blocks its executor while waiting, since state machine transitions queued by
+ * a command run on that same executor. Actions that keep their callback, like listener
+ * registrations, cannot be batched.
+ */
+class PluginBatch {
+    static final String ACTION = "batch";
+    static final String ACTION_KEY = "action";
+    static final String ARGS_KEY = "args";
+    static final String STOP_ON_ERROR_KEY = "stopOnError";
+
+    private static final String STATUS_OK = "ok";
+    private static final String STATUS_ERROR = "error";
+    private static final String STATUS_SKIPPED = "skipped";
+
+    private final PluginActionRegistry registry;
+    private final Executor executor;
+    private final JSONArray commands;
+    private final boolean stopOnError;
+    private final CallResult call;
+
+    // Guarded by this.
+    private final List<String> results;
+    private int next;
+
+    /**
+     * @param args {@code [commands, options]}; commands are {@code {action, args}} objects and
+     *             {@code options.stopOnError} defaults to true.
+     */
+    PluginBatch(PluginActionRegistry registry, Executor executor, JSONArray args, CallResult call)
+            throws JSONException {
+        this.registry = registry;
+        this.executor = executor;
+        this.commands = args.getJSONArray(0);
+        JSONObject options = args.optJSONObject(1);
+        this.stopOnError = options == null || options.optBoolean(STOP_ON_ERROR_KEY, true);
+        this.call = call;
+        this.results = new ArrayList<>(commands.length());
+    }
+
+    /**
+     * Runs the first command on the calling thread, which must be {@code executor}'s.
+     */
+    void start() {
+        runNext();
+    }
+
+    private void runNext() {
+        final int index;
+        synchronized (this) {
+            if (next == commands.length()) {
+                call.success(EncodedJsonArray.of(results));
+                return;
+            }
+            index = next++;
+        }
+
+        JSONObject command = commands.optJSONObject(index);
+        final String action = command == null ? null : command.optString(ACTION_KEY, null);
+        PluginActionRegistry.Entry entry = action == null ? null : registry.get(action);
+        if (entry == null) {
+            onResult(action, false, JSONObject.quote("Unknown action: " + action));
+            return;
+        }
+        if (entry.keepsCallback || ACTION.equals(action)) {
+            onResult(action, false, JSONObject.quote("Action cannot be batched: " + action));
+            return;
+        }
+        JSONArray commandArgs = command.optJSONArray(ARGS_KEY);
+        if (commandArgs == null) {
+            commandArgs = new JSONArray();
+        }
+
+        long startNanos = System.nanoTime();
+        entry.metrics.calls.incrementAndGet();
+        CallResult commandCall = new CallResult(action, result -> onResult(action,
+                result.getStatus() == PluginResult.Status.OK.ordinal(), result.getMessage()),
+                entry.metrics, startNanos);
+        Trace.beginSection(entry.traceSection);
+        try {
+            entry.handler.handle(commandArgs, commandCall);
+        } catch (Throwable e) {
+            commandCall.error("Unexpected error in exec.", e);
+        } finally {
+            Trace.endSection();
+            entry.metrics.recordHandler(startNanos, System.nanoTime());
+        }
+    }
+
+    /**
+     * Records the result of the running command and moves on. May be called on any thread.
+     *
+     * @param encodedResult the result as JSON text.
+     */
+    private void onResult(String action, boolean ok, String encodedResult) {
+        synchronized (this) {
+            results.add(encodeResult(action, ok ? STATUS_OK : STATUS_ERROR, encodedResult));
+            if (!ok && stopOnError) {
+                for (int i = next; i < commands.length(); i++) {
+                    JSONObject skipped = commands.optJSONObject(i);
+                    results.add(encodeResult(skipped == null ? null : skipped.optString(ACTION_KEY, null),
+                            STATUS_SKIPPED, null));
+                }
+                next = commands.length();
+            }
+        }
+        // Through the executor, so that synchronously completing commands do not recurse
+        // and commands completed from SDK callbacks still run on the plugin's serial thread.
+        try {
+            executor.execute(this::runNext);
+        } catch (RejectedExecutionException e) {
+            call.error(ZendriveCordovaPlugin.PLUGIN_DESTROYED_ERROR);
+        }
+    }
+
+    private static String encodeResult(String action, String status, String encodedResult) {
+        StringBuilder builder = new StringBuilder();
+        builder.append('{').append(JSONObject.quote(ACTION_KEY)).append(':')
+                .append(action == null ? "null" : JSONObject.quote(action));
+        builder.append(',').append(JSONObject.quote("status")).append(':').append(JSONObject.quote(status));
+        if (encodedResult != null) {
+            builder.append(',').append(JSONObject.quote("result")).append(':').append(encodedResult);
+        }
+        return builder.append('}').toString();
+    }
+}
@@ -0,0 +1,163 @@
+package com.zendrive.phonegap;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Process wide latency and payload metrics, returned to JS by the {@code getMetrics} action.
+ *
+ * Per action: how long a call waited for its thread, how long its handler ran (which includes
+ * synchronous SDK calls) and how long it took until its result was sent, all measured from
+ * {@code execute}, plus call and error counts. Per event type: the size of every batch sent
+ * over the bridge, and how many buffered events were dropped before they could be sent.
+ * Metrics objects are created once per action and event type; recording
+ * afterwards does not allocate.
+ */
+class PluginMetrics {
+    static final long[] LATENCY_BOUNDS_MICROS = {
+            100, 250, 500, 1000, 2500, 5000, 10000, 25000, 50000, 100000,
+            250000, 500000, 1000000, 2500000, 5000000, 10000000
+    };
+    static final long[] PAYLOAD_BOUNDS_BYTES = {
+            256, 1024, 4096, 16384, 65536, 262144, 1048576, 4194304
+    };
+
+    static final class ActionMetrics {
+        final AtomicLong calls = new AtomicLong();
+        final AtomicLong errors = new AtomicLong();
+        final FixedHistogram queueWaitMicros = new FixedHistogram(LATENCY_BOUNDS_MICROS);
+        final FixedHistogram handlerMicros = new FixedHistogram(LATENCY_BOUNDS_MICROS);
+        final FixedHistogram completionMicros = new FixedHistogram(LATENCY_BOUNDS_MICROS);
+
+        void recordQueueWait(long queuedNanos, long startNanos) {
+            queueWaitMicros.record((startNanos - queuedNanos) / 1000);
+        }
+
+        void recordHandler(long startNanos, long endNanos) {
+            handlerMicros.record((endNanos - startNanos) / 1000);
+        }
+
+        void recordCompletion(long queuedNanos, boolean error) {
+            completionMicros.record((System.nanoTime() - queuedNanos) / 1000);
+            if (error) {
+                errors.incrementAndGet();
+            }
+        }
+
+        void reset() {
+            calls.set(0);
+            errors.set(0);
+            queueWaitMicros.reset();
+            handlerMicros.reset();
+            completionMicros.reset();
+        }
+
+        JSONObject toJson() throws JSONException {
+            JSONObject json = new JSONObject();
+            json.put("calls", calls.get());
+            json.put("errors", errors.get());
+            json.put("queueWaitMicros", queueWaitMicros.toJson());
+            json.put("handlerMicros", handlerMicros.toJson());
+            json.put("completionMicros", completionMicros.toJson());
+            return json;
+        }
+    }
+
+    private static final PluginMetrics instance = new PluginMetrics();
+
+    private final ConcurrentMap<String, ActionMetrics> actions = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, FixedHistogram> eventPayloads = new ConcurrentHashMap<>();
+    private final AtomicLong droppedEvents = new AtomicLong();
+
+    static PluginMetrics getInstance() {
+        return instance;
+    }
+
+    /**
+     * Metrics of {@code action}; callers on a hot path should look this up once and keep it.
+     */
+    ActionMetrics forAction(String action) {
+        ActionMetrics metrics = actions.get(action);
+        if (metrics == null) {
+            ActionMetrics created = new ActionMetrics();
+            metrics = actions.putIfAbsent(action, created);
+            if (metrics == null) {
+                metrics = created;
+            }
+        }
+        return metrics;
+    }
+
+    /**
+     * Records a batch of {@code type} events sent to JS. JSON is sent over the bridge as a
+     * string; its length is used as the payload size, which matches the UTF-8 size for ASCII.
+     */
+    void recordEventPayload(String type, int length) {
+        FixedHistogram histogram = eventPayloads.get(type);
+        if (histogram == null) {
+            FixedHistogram created = new FixedHistogram(PAYLOAD_BOUNDS_BYTES);
+            histogram = eventPayloads.putIfAbsent(type, created);
+            if (histogram == null) {
+                histogram = created;
+            }
+        }
+        histogram.record(length);
+    }
+
+    void recordDroppedEvents(long count) {
+        droppedEvents.addAndGet(count);
+    }
+
+    /**
+     * @param accidents when given, its delivery latencies are included.
+     */
+    JSONObject snapshot(AccidentPriorityLane accidents) throws JSONException {
+        JSONObject snapshot = new JSONObject();
+        snapshot.put("latencyBoundsMicros", FixedHistogram.boundsToJson(LATENCY_BOUNDS_MICROS));
+        snapshot.put("payloadBoundsBytes", FixedHistogram.boundsToJson(PAYLOAD_BOUNDS_BYTES));
+
+        JSONObject actionsJson = new JSONObject();
+        for (Map.Entry<String, ActionMetrics> entry : actions.entrySet()) {
+            if (entry.getValue().calls.get() > 0) {
+                actionsJson.put(entry.getKey(), entry.getValue().toJson());
+            }
+        }
+        snapshot.put("actions", actionsJson);
+
+        JSONObject eventsJson = new JSONObject();
+        for (Map.Entry<String, FixedHistogram> entry : eventPayloads.entrySet()) {
+            JSONObject eventJson = new JSONObject();
+            eventJson.put("payloadBytes", entry.getValue().toJson());
+            eventsJson.put(entry.getKey(), eventJson);
+        }
+        snapshot.put("events", eventsJson);
+        snapshot.put("droppedEvents", droppedEvents.get());
+
+        if (accidents != null) {
+            JSONObject accidentsJson = new JSONObject();
+            accidentsJson.put("delivered", accidents.getDeliveredCount());
+            accidentsJson.put("lastDeliveryMillis", accidents.getLastDeliveryMillis());
+            accidentsJson.put("maxDeliveryMillis", accidents.getMaxDeliveryMillis());
+            accidentsJson.put("acknowledged", accidents.getAcknowledgedCount());
+            accidentsJson.put("lastAcknowledgeMillis", accidents.getLastAcknowledgeMillis());
+            accidentsJson.put("maxAcknowledgeMillis", accidents.getMaxAcknowledgeMillis());
+            snapshot.put("accidents", accidentsJson);
+        }
+        return snapshot;
+    }
+
+    void reset() {
+        droppedEvents.set(0);
+        for (ActionMetrics metrics : actions.values()) {
+            metrics.reset();
+        }
+        for (FixedHistogram histogram : eventPayloads.values()) {
+            histogram.reset();
+        }
+    }
+}
@@ -0,0 +1,304 @@
+package com.zendrive.phonegap;
+
+import android.content.Context;
+import android.preference.PreferenceManager;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Small store for the plugin's own state, kept out of the app's default SharedPreferences
+ * so that loading it does not pull the whole default prefs XML onto the startup path.
+ *
+ * The state lives in memory and is written through asynchronously to a compact binary
+ * file (replaced atomically via rename). {@link #warm()} loads it on a background thread;
+ * reads block only until that first load has finished.
+ */
+class PluginStateStore {
+    private static final String TAG = "ZendriveStateStore";
+    private static final String FILE_NAME = "zendrive_plugin_state.bin";
+    // Version 2 appended the applied setup configuration; version 1 files are still read.
+    private static final int FORMAT_VERSION = 2;
+
+    // Key the tracking id was stored under in the default SharedPreferences.
+    private static final String LEGACY_TRACKING_ID_KEY = "trackingId";
+
+    static final int UNKNOWN_PERIOD = -1;
+    static final int UNKNOWN_DETECTION_MODE = -1;
+
+    private static PluginStateStore instance;
+
+    private final Context context;
+    private final File file;
+    private final ExecutorService io = Executors.newSingleThreadExecutor();
+    private final CountDownLatch loaded = new CountDownLatch(1);
+    private boolean warmStarted;
+    private boolean writeScheduled;
+
+    // Guarded by this.
+    private String trackingId;
+    private int insurancePeriod = UNKNOWN_PERIOD;
+    private String lastSessionId;
+    private String setupFingerprint;
+    private int setupDetectionMode = UNKNOWN_DETECTION_MODE;
+
+    static synchronized PluginStateStore getInstance(Context context) {
+        if (instance == null) {
+            instance = new PluginStateStore(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private PluginStateStore(Context context) {
+        this.context = context;
+        this.file = new File(context.getFilesDir(), FILE_NAME);
+    }
+
+    /**
+     * Starts loading the state in the background. Safe to call more than once.
+     */
+    synchronized void warm() {
+        if (warmStarted) {
+            return;
+        }
+        warmStarted = true;
+        io.execute(this::load);
+    }
+
+    String getTrackingId() {
+        awaitLoaded();
+        synchronized (this) {
+            return trackingId;
+        }
+    }
+
+    void setTrackingId(String trackingId) {
+        awaitLoaded();
+        synchronized (this) {
+            this.trackingId = trackingId;
+            scheduleWrite();
+        }
+    }
+
+    /**
+     * Atomically returns the stored tracking id, storing {@code candidate} first if there is none.
+     */
+    String getOrSetTrackingId(String candidate) {
+        awaitLoaded();
+        synchronized (this) {
+            if (trackingId == null) {
+                trackingId = candidate;
+                scheduleWrite();
+            }
+            return trackingId;
+        }
+    }
+
+    int getInsurancePeriod() {
+        awaitLoaded();
+        synchronized (this) {
+            return insurancePeriod;
+        }
+    }
+
+    void setInsurancePeriod(int insurancePeriod) {
+        awaitLoaded();
+        synchronized (this) {
+            if (this.insurancePeriod != insurancePeriod) {
+                this.insurancePeriod = insurancePeriod;
+                scheduleWrite();
+            }
+        }
+    }
+
+    String getLastSessionId() {
+        awaitLoaded();
+        synchronized (this) {
+            return lastSessionId;
+        }
+    }
+
+    void setLastSessionId(String lastSessionId) {
+        awaitLoaded();
+        synchronized (this) {
+            this.lastSessionId = lastSessionId;
+            scheduleWrite();
+        }
+    }
+
+    /**
+     * Fingerprint of the last configuration {@code Zendrive.setup} succeeded with, detection
+     * mode excluded; null if none or after a teardown.
+     */
+    String getSetupFingerprint() {
+        awaitLoaded();
+        synchronized (this) {
+            return setupFingerprint;
+        }
+    }
+
+    int getSetupDetectionMode() {
+        awaitLoaded();
+        synchronized (this) {
+            return setupDetectionMode;
+        }
+    }
+
+    void setAppliedSetup(String setupFingerprint, int setupDetectionMode) {
+        awaitLoaded();
+        synchronized (this) {
+            this.setupFingerprint = setupFingerprint;
+            this.setupDetectionMode = setupDetectionMode;
+            scheduleWrite();
+        }
+    }
+
+    void setSetupDetectionMode(int setupDetectionMode) {
+        awaitLoaded();
+        synchronized (this) {
+            if (this.setupDetectionMode != setupDetectionMode) {
+                this.setupDetectionMode = setupDetectionMode;
+                scheduleWrite();
+            }
+        }
+    }
+
+    /**
+     * Blocks until the initial load has finished. Must not be called while holding this
+     * store's monitor, as the load needs it.
+     */
+    private void awaitLoaded() {
+        if (loaded.getCount() == 0) {
+            return;
+        }
+        warm();
+        boolean interrupted = false;
+        while (true) {
+            try {
+                loaded.await();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void load() {
+        try {
+            if (file.exists()) {
+                readFile();
+            } else {
+                migrateFromDefaultPreferences();
+            }
+        } catch (IOException | RuntimeException e) {
+            Log.e(TAG, "Failed to load plugin state", e);
+        } finally {
+            loaded.countDown();
+        }
+    }
+
+    private void readFile() throws IOException {
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            int version = input.readUnsignedByte();
+            if (version < 1 || version > FORMAT_VERSION) {
+                Log.w(TAG, "Ignoring plugin state with version " + version);
+                return;
+            }
+            String trackingId = readNullableString(input);
+            int insurancePeriod = input.readByte();
+            String lastSessionId = readNullableString(input);
+            String setupFingerprint = null;
+            int setupDetectionMode = UNKNOWN_DETECTION_MODE;
+            if (version >= 2) {
+                setupFingerprint = readNullableString(input);
+                setupDetectionMode = input.readByte();
+            }
+            synchronized (this) {
+                this.trackingId = trackingId;
+                this.insurancePeriod = insurancePeriod;
+                this.lastSessionId = lastSessionId;
+                this.setupFingerprint = setupFingerprint;
+                this.setupDetectionMode = setupDetectionMode;
+            }
+        }
+    }
+
+    /**
+     * One-time move of the tracking id out of the default SharedPreferences.
+     */
+    private void migrateFromDefaultPreferences() {
+        String legacyTrackingId = PreferenceManager.getDefaultSharedPreferences(context)
+                .getString(LEGACY_TRACKING_ID_KEY, null);
+        synchronized (this) {
+            trackingId = legacyTrackingId;
+        }
+        writeFile();
+    }
+
+    // Called with this store's monitor held.
+    private void scheduleWrite() {
+        if (writeScheduled) {
+            return;
+        }
+        writeScheduled = true;
+        io.execute(this::writeFile);
+    }
+
+    private void writeFile() {
+        String trackingId;
+        int insurancePeriod;
+        String lastSessionId;
+        String setupFingerprint;
+        int setupDetectionMode;
+        synchronized (this) {
+            writeScheduled = false;
+            trackingId = this.trackingId;
+            insurancePeriod = this.insurancePeriod;
+            lastSessionId = this.lastSessionId;
+            setupFingerprint = this.setupFingerprint;
+            setupDetectionMode = this.setupDetectionMode;
+        }
+        File temp = new File(file.getPath() + ".tmp");
+        try (FileOutputStream stream = new FileOutputStream(temp)) {
+            DataOutputStream output = new DataOutputStream(new BufferedOutputStream(stream));
+            output.writeByte(FORMAT_VERSION);
+            writeNullableString(output, trackingId);
+            output.writeByte(insurancePeriod);
+            writeNullableString(output, lastSessionId);
+            writeNullableString(output, setupFingerprint);
+            output.writeByte(setupDetectionMode);
+            output.flush();
+            stream.getFD().sync();
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to write plugin state", e);
+            return;
+        }
+        if (!temp.renameTo(file)) {
+            Log.e(TAG, "Failed to replace plugin state file");
+        }
+    }
+
+    private static String readNullableString(DataInputStream input) throws IOException {
+        return input.readBoolean() ? input.readUTF() : null;
+    }
+
+    private static void writeNullableString(DataOutputStream output, String value) throws IOException {
+        output.writeBoolean(value != null);
+        if (value != null) {
+            output.writeUTF(value);
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package com.zendrive.phonegap;
+
+import android.content.BroadcastReceiver;
+import android.util.Log;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Runs SDK broadcast work off the main thread. The broadcast is kept alive with
+ * {@link BroadcastReceiver#goAsync()} until its work is done, so the process is not considered
+ * idle meanwhile, but never past {@link #BROADCAST_BUDGET_MILLIS}, which keeps it under the
+ * system's broadcast timeout however long the work waits.
+ *
+ * Each queue has one thread, so the events of a drive are processed in the order they were
+ * received. Handing work over never blocks the receiving thread. The drive queue is bounded:
+ * when it is full, the work's overflow action runs on the receiving thread instead, which
+ * journals the event, and so does every later submission until the queue has drained. The
+ * queue's drain action then runs on its thread, ahead of anything queued after, to replay what
+ * was journaled. Nothing is dropped. Accidents are rare and their queue is unbounded.
+ */
+class ReceiverWorkQueue {
+    private static final String TAG = "ZendriveReceiverQueue";
+    static final int CAPACITY = 64;
+    static final long BROADCAST_BUDGET_MILLIS = 8000;
+
+    private static final ScheduledExecutorService deadlines = Executors.newSingleThreadScheduledExecutor();
+
+    private static final ReceiverWorkQueue DRIVES = new ReceiverWorkQueue(CAPACITY,
+            ZendriveCordovaBroadcastReceiver::replayOverflow);
+    // Accidents never wait behind the encoding of a long drive.
+    private static final ReceiverWorkQueue ACCIDENTS = new ReceiverWorkQueue(Integer.MAX_VALUE, null);
+
+    private final ThreadPoolExecutor executor;
+    private final Runnable onDrained;
+    // Guarded by this. Set while submissions overflow, until the queue has drained.
+    private boolean overflowing;
+
+    /**
+     * One broadcast's work and the pending broadcast it holds, released exactly once.
+     */
+    private final class Work implements Runnable {
+        private final Runnable body;
+        private final AtomicReference<BroadcastReceiver.PendingResult> pendingResult;
+
+        Work(Runnable body, BroadcastReceiver.PendingResult pendingResult) {
+            this.body = body;
+            this.pendingResult = new AtomicReference<>(pendingResult);
+        }
+
+        @Override
+        public void run() {
+            try {
+                body.run();
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Receiver work failed", e);
+            } finally {
+                release();
+                onWorkDone();
+            }
+        }
+
+        boolean holdsBroadcast() {
+            return pendingResult.get() != null;
+        }
+
+        void release() {
+            BroadcastReceiver.PendingResult result = pendingResult.getAndSet(null);
+            if (result != null) {
+                result.finish();
+            }
+        }
+    }
+
+    private ReceiverWorkQueue(int capacity, Runnable onDrained) {
+        executor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(capacity));
+        this.onDrained = onDrained;
+    }
+
+    static ReceiverWorkQueue drives() {
+        return DRIVES;
+    }
+
+    static ReceiverWorkQueue accidents() {
+        return ACCIDENTS;
+    }
+
+    /**
+     * Queues {@code body} for the broadcast {@code receiver} is handling. When the receiver is
+     * called outside of a broadcast, e.g. by a simulated SDK, the work is only
+     * queued.
+     *
+     * @param overflow run on the calling thread instead of {@code body} when the queue is full
+     *                 or still draining an earlier overflow; it must not block.
+     */
+    void submit(BroadcastReceiver receiver, Runnable body, Runnable overflow) {
+        synchronized (this) {
+            // Only the queue's thread takes work out meanwhile, so a free slot stays free.
+            if (!overflowing && executor.getQueue().remainingCapacity() == 0) {
+                Log.w(TAG, "Receiver queue full, overflowing until it has drained");
+                overflowing = true;
+            }
+            if (!overflowing) {
+                queue(receiver, body);
+                return;
+            }
+            // Under the lock, so that the queue cannot drain before this is done.
+            try {
+                overflow.run();
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Receiver overflow failed", e);
+            }
+        }
+    }
+
+    /**
+     * Queues {@code body} on a queue that never overflows, i.e. {@link #accidents()}.
+     */
+    void submit(BroadcastReceiver receiver, Runnable body) {
+        queue(receiver, body);
+    }
+
+    private void queue(BroadcastReceiver receiver, Runnable body) {
+        final Work work = new Work(body, receiver.goAsync());
+        if (work.holdsBroadcast()) {
+            deadlines.schedule(work::release, BROADCAST_BUDGET_MILLIS, TimeUnit.MILLISECONDS);
+        }
+        executor.execute(work);
+    }
+
+    // Runs on the queue's thread after each work.
+    private void onWorkDone() {
+        synchronized (this) {
+            if (!overflowing || !executor.getQueue().isEmpty()) {
+                return;
+            }
+            overflowing = false;
+        }
+        // Work submitted from here on queues behind this call.
+        if (onDrained != null) {
+            try {
+                onDrained.run();
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Receiver drain failed", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,185 @@
+package com.zendrive.phonegap;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.zendrive.sdk.ZendriveSettingError;
+import com.zendrive.sdk.ZendriveSettingWarning;
+import com.zendrive.sdk.ZendriveSettings;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tracks the SDK's settings errors and warnings. Config change broadcasts tend to come in
+ * bursts, so a check only runs once they have been quiet for {@link #DEBOUNCE_MILLIS}. The
+ * result is cached with the time it was taken, and JS only gets a settingsChange event
+ * when the set of errors or warnings actually changed.
+ */
+class SettingsHealthMonitor {
+    private static final String TAG = "ZendriveSettingsHealth";
+    static final long DEBOUNCE_MILLIS = 2000;
+
+    static final String ERRORS_KEY = "errors";
+    static final String WARNINGS_KEY = "warnings";
+    static final String ERRORS_ADDED_KEY = "errorsAdded";
+    static final String ERRORS_REMOVED_KEY = "errorsRemoved";
+    static final String WARNINGS_ADDED_KEY = "warningsAdded";
+    static final String WARNINGS_REMOVED_KEY = "warningsRemoved";
+    static final String CHECKED_AT_KEY = "checkedAt";
+
+    private static SettingsHealthMonitor instance;
+
+    private final Context context;
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+
+    // Guarded by this.
+    private long requestGeneration;
+    private boolean checkRequested;
+    private Set<String> errors = Collections.emptySet();
+    private Set<String> warnings = Collections.emptySet();
+    private long checkedAtMillis;
+
+    static synchronized SettingsHealthMonitor getInstance(Context context) {
+        if (instance == null) {
+            instance = new SettingsHealthMonitor(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private SettingsHealthMonitor(Context context) {
+        this.context = context;
+    }
+
+    /**
+     * Asks for a check once no further request arrived for {@link #DEBOUNCE_MILLIS}.
+     */
+    void requestCheck() {
+        final long generation;
+        synchronized (this) {
+            generation = ++requestGeneration;
+            checkRequested = true;
+        }
+        executor.schedule(() -> {
+            synchronized (this) {
+                if (generation != requestGeneration) {
+                    // A later request will run.
+                    return;
+                }
+            }
+            check(generation);
+        }, DEBOUNCE_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    private void check(final long generation) {
+        ZendriveSdk.get().getZendriveSettings(context, zendriveSettings -> {
+            synchronized (this) {
+                // Lets getHealth() ask again, e.g. once the SDK is set up, unless a newer
+                // request is still waiting to run.
+                if (generation == requestGeneration) {
+                    checkRequested = false;
+                }
+            }
+            if (zendriveSettings == null) {
+                // The callback returns NULL if SDK is not setup.
+                return;
+            }
+            onSettings(zendriveSettings);
+        });
+    }
+
+    private void onSettings(ZendriveSettings settings) {
+        Set<String> newErrors = new TreeSet<>();
+        if (settings.errors != null) {
+            for (ZendriveSettingError error : settings.errors) {
+                newErrors.add(error.type.name());
+            }
+        }
+        Set<String> newWarnings = new TreeSet<>();
+        if (settings.warnings != null) {
+            for (ZendriveSettingWarning warning : settings.warnings) {
+                newWarnings.add(warning.type.name());
+            }
+        }
+
+        Set<String> oldErrors;
+        Set<String> oldWarnings;
+        long checkedAt = System.currentTimeMillis();
+        boolean firstCheck;
+        synchronized (this) {
+            firstCheck = checkedAtMillis == 0;
+            oldErrors = errors;
+            oldWarnings = warnings;
+            errors = Collections.unmodifiableSet(newErrors);
+            warnings = Collections.unmodifiableSet(newWarnings);
+            checkedAtMillis = checkedAt;
+        }
+        if (!firstCheck && oldErrors.equals(newErrors) && oldWarnings.equals(newWarnings)) {
+            return;
+        }
+        Log.d(TAG, "Errors " + newErrors + ", warnings " + newWarnings);
+
+        ZendriveManager manager = ZendriveManager.getSharedInstanceOrNull();
+        if (manager == null) {
+            return;
+        }
+        try {
+            JSONObject diff = toJson(newErrors, newWarnings, checkedAt);
+            diff.put(ERRORS_ADDED_KEY, difference(newErrors, oldErrors));
+            diff.put(ERRORS_REMOVED_KEY, difference(oldErrors, newErrors));
+            diff.put(WARNINGS_ADDED_KEY, difference(newWarnings, oldWarnings));
+            diff.put(WARNINGS_REMOVED_KEY, difference(oldWarnings, newWarnings));
+            manager.dispatchEvent(DriveEvent.settingsChange(diff));
+        } catch (JSONException e) {
+            Log.e(TAG, "Failed to encode settings change", e);
+        }
+    }
+
+    /**
+     * The last known settings health, without asking the SDK. {@code checkedAt} is null if no
+     * check has completed yet; one is then started and its result sent as a settingsChange event.
+     */
+    JSONObject getHealth() throws JSONException {
+        Set<String> currentErrors;
+        Set<String> currentWarnings;
+        long checkedAt;
+        boolean requested;
+        synchronized (this) {
+            currentErrors = errors;
+            currentWarnings = warnings;
+            checkedAt = checkedAtMillis;
+            requested = checkRequested;
+        }
+        if (checkedAt == 0 && !requested) {
+            requestCheck();
+        }
+        return toJson(currentErrors, currentWarnings, checkedAt);
+    }
+
+    private static JSONObject toJson(Set<String> errors, Set<String> warnings, long checkedAt)
+            throws JSONException {
+        JSONObject json = new JSONObject();
+        json.put(ERRORS_KEY, new JSONArray(errors));
+        json.put(WARNINGS_KEY, new JSONArray(warnings));
+        json.put(CHECKED_AT_KEY, checkedAt != 0 ? checkedAt : JSONObject.NULL);
+        return json;
+    }
+
+    private static JSONArray difference(Set<String> from, Set<String> minus) {
+        JSONArray result = new JSONArray();
+        for (String value : from) {
+            if (!minus.contains(value)) {
+                result.put(value);
+            }
+        }
+        return result;
+    }
+}
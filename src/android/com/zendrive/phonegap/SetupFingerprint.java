@@ -0,0 +1,103 @@
+package com.zendrive.phonegap;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Canonical hash of the parts of a setup configuration that only {@code Zendrive.setup} can
+ * apply: application key, driver id and driver attributes. The detection mode is kept apart
+ * since it can be changed on its own. Attributes are hashed from the JSON that JS sent, with
+ * keys sorted, so that comparing does not require building {@code ZendriveDriverAttributes}.
+ */
+final class SetupFingerprint {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private SetupFingerprint() {
+    }
+
+    /**
+     * @param driverAttributes the {@code driverAttributes} object from the configuration, or null.
+     */
+    static String of(String applicationKey, String driverId, Object driverAttributes)
+            throws JSONException {
+        StringBuilder canonical = new StringBuilder();
+        appendString(canonical, applicationKey);
+        canonical.append(',');
+        appendString(canonical, driverId);
+        canonical.append(',');
+        appendValue(canonical, driverAttributes);
+        return sha256(canonical.toString());
+    }
+
+    private static void appendValue(StringBuilder out, Object value) throws JSONException {
+        if (value == null || JSONObject.NULL.equals(value)) {
+            out.append("null");
+        } else if (value instanceof JSONObject) {
+            JSONObject object = (JSONObject) value;
+            List<String> keys = new ArrayList<>();
+            Iterator<String> iterator = object.keys();
+            while (iterator.hasNext()) {
+                keys.add(iterator.next());
+            }
+            Collections.sort(keys);
+            out.append('{');
+            for (int i = 0; i < keys.size(); i++) {
+                if (i > 0) {
+                    out.append(',');
+                }
+                appendString(out, keys.get(i));
+                out.append(':');
+                appendValue(out, object.get(keys.get(i)));
+            }
+            out.append('}');
+        } else if (value instanceof JSONArray) {
+            JSONArray array = (JSONArray) value;
+            out.append('[');
+            for (int i = 0; i < array.length(); i++) {
+                if (i > 0) {
+                    out.append(',');
+                }
+                appendValue(out, array.get(i));
+            }
+            out.append(']');
+        } else if (value instanceof String) {
+            appendString(out, (String) value);
+        } else {
+            // Numbers and booleans; the attribute parser only ever uses their string form.
+            out.append(value.toString());
+        }
+    }
+
+    private static void appendString(StringBuilder out, String value) {
+        if (value == null) {
+            out.append("null");
+        } else {
+            out.append(JSONObject.quote(value));
+        }
+    }
+
+    private static String sha256(String value) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(value.getBytes(UTF_8));
+            char[] hex = new char[digest.length * 2];
+            for (int i = 0; i < digest.length; i++) {
+                hex[2 * i] = HEX[(digest[i] >> 4) & 0xf];
+                hex[2 * i + 1] = HEX[digest[i] & 0xf];
+            }
+            return new String(hex);
+        } catch (NoSuchAlgorithmException e) {
+            // Every Android release ships SHA-256.
+            throw new IllegalStateException(e);
+        }
+    }
+}
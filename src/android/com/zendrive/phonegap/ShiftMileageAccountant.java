@@ -0,0 +1,330 @@
+package com.zendrive.phonegap;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.zendrive.sdk.ActiveDriveInfo;
+import com.zendrive.sdk.DriveInfo;
+import com.zendrive.sdk.LocationPointWithTimestamp;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Running distance and time per insurance period for the current duty shift. A shift starts
+ * with the first transition out of period 0 and ends with the transition back to it; its totals
+ * stay readable until the next shift starts.
+ *
+ * Time is accounted on every period transition and drive distance when a drive ends, so reading
+ * the totals costs the same however long the shift. A drive that was counted when it ended is
+ * corrected, not counted twice, once its analyzed distance arrives. While a drive is in
+ * progress, the distance the SDK last reported for it through {@link #onDriveProgress} is
+ * included in the totals; it is not persisted. A drive that ends without a distance is counted
+ * with that running distance, and only summed from its waypoints with
+ * {@link GeoMath#haversineMeters} if none was seen.
+ */
+class ShiftMileageAccountant {
+    private static final String TAG = "ZendriveShiftMileage";
+    private static final String FILE_NAME = "zendrive_shift_mileage.bin";
+    private static final int FORMAT_VERSION = 1;
+
+    static final int PERIOD_COUNT = 4;
+    // Drives of a shift remembered for corrections; shifts rarely come anywhere near this.
+    private static final int MAX_COUNTED_DRIVES = 256;
+
+    static final String ACTIVE_KEY = "active";
+    static final String SHIFT_START_KEY = "shiftStart";
+    static final String SHIFT_END_KEY = "shiftEnd";
+    static final String PERIOD_KEY = "period";
+    static final String PERIODS_KEY = "periods";
+    static final String METERS_KEY = "meters";
+    static final String MILLIS_KEY = "millis";
+    static final String DRIVES_KEY = "drives";
+    static final String TOTAL_METERS_KEY = "totalMeters";
+    static final String TOTAL_MILLIS_KEY = "totalMillis";
+
+    private static ShiftMileageAccountant instance;
+
+    private final File file;
+    private final ExecutorService io = Executors.newSingleThreadExecutor();
+    private boolean writeScheduled;
+    private boolean loaded;
+
+    // Guarded by this. Indexed by period; index 0, off duty, is never accumulated.
+    private long shiftStartMillis;
+    private long shiftEndMillis;
+    private int period;
+    private long periodSinceMillis;
+    private final double[] meters = new double[PERIOD_COUNT];
+    private final long[] millis = new long[PERIOD_COUNT];
+    private final int[] drives = new int[PERIOD_COUNT];
+    // Drive id to the period and meters it was counted with.
+    private final Map<String, double[]> countedDrives = new LinkedHashMap<>();
+    // The drive in progress, as last reported by the SDK; null if there is none.
+    private String activeDriveId;
+    private long activeDriveStartMillis;
+    private int activeDrivePeriod;
+    private double activeDriveMeters;
+
+    static synchronized ShiftMileageAccountant getInstance(Context context) {
+        if (instance == null) {
+            instance = new ShiftMileageAccountant(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private ShiftMileageAccountant(Context context) {
+        this.file = new File(context.getFilesDir(), FILE_NAME);
+    }
+
+    /**
+     * Accounts the time spent in the previous period and starts or ends the shift.
+     */
+    synchronized void onPeriodChanged(int newPeriod, long nowMillis) {
+        load();
+        if (newPeriod == period) {
+            return;
+        }
+        if (period == 0 && newPeriod != 0) {
+            startShift(nowMillis);
+        } else if (period != 0) {
+            millis[period] += Math.max(0, nowMillis - periodSinceMillis);
+            if (newPeriod == 0) {
+                shiftEndMillis = nowMillis;
+            }
+        }
+        period = newPeriod;
+        periodSinceMillis = nowMillis;
+        scheduleWrite();
+    }
+
+    /**
+     * Records the distance of the drive in progress, or that none is when {@code info} is null.
+     */
+    synchronized void onDriveProgress(ActiveDriveInfo info) {
+        if (info == null || info.driveId == null) {
+            activeDriveId = null;
+            return;
+        }
+        activeDriveId = info.driveId;
+        activeDriveStartMillis = info.startTimeMillis;
+        activeDrivePeriod = info.insurancePeriod != null
+                ? ZendriveManager.GetPeriodInt(info.insurancePeriod) : 0;
+        activeDriveMeters = info.distanceMeters;
+    }
+
+    /**
+     * Counts a drive that started during the current or last shift.
+     *
+     * @param analyzed whether {@code info} holds the final values; an analyzed drive replaces
+     *                 what was counted for it before.
+     */
+    synchronized void onDrive(DriveInfo info, boolean analyzed) {
+        if (info == null || info.driveId == null) {
+            return;
+        }
+        double runningMeters = 0;
+        if (info.driveId.equals(activeDriveId)) {
+            runningMeters = activeDriveMeters;
+            activeDriveId = null;
+        }
+        load();
+        if (shiftStartMillis == 0 || info.startTimeMillis < shiftStartMillis
+                || (shiftEndMillis != 0 && info.startTimeMillis > shiftEndMillis)) {
+            return;
+        }
+        double[] counted = countedDrives.get(info.driveId);
+        if (counted != null && !analyzed) {
+            return;
+        }
+        int drivePeriod = info.insurancePeriod != null
+                ? ZendriveManager.GetPeriodInt(info.insurancePeriod) : period;
+        if (drivePeriod <= 0 || drivePeriod >= PERIOD_COUNT) {
+            return;
+        }
+        // The running distance spares summing the waypoints of a drive that ended without one.
+        double distance = runningMeters > 0 && !(info.distanceMeters > 0) ? runningMeters : distanceMeters(info);
+        if (counted != null) {
+            meters[(int) counted[0]] -= counted[1];
+            drives[(int) counted[0]]--;
+            countedDrives.remove(info.driveId);
+        }
+        meters[drivePeriod] += distance;
+        drives[drivePeriod]++;
+        countedDrives.put(info.driveId, new double[]{drivePeriod, distance});
+        Iterator<String> oldest = countedDrives.keySet().iterator();
+        while (countedDrives.size() > MAX_COUNTED_DRIVES) {
+            oldest.next();
+            oldest.remove();
+        }
+        scheduleWrite();
+    }
+
+    /**
+     * The totals so far, including the time spent in the current period up to {@code nowMillis}.
+     */
+    synchronized JSONObject getTotals(long nowMillis) throws JSONException {
+        load();
+        JSONObject totals = new JSONObject();
+        boolean active = shiftStartMillis != 0 && period != 0;
+        totals.put(ACTIVE_KEY, active);
+        totals.put(SHIFT_START_KEY, shiftStartMillis != 0 ? shiftStartMillis : JSONObject.NULL);
+        totals.put(SHIFT_END_KEY, shiftEndMillis != 0 && !active ? shiftEndMillis : JSONObject.NULL);
+        totals.put(PERIOD_KEY, period);
+        JSONObject periods = new JSONObject();
+        double totalMeters = 0;
+        long totalMillis = 0;
+        int runningPeriod = countsActiveDrive() ? activeDrivePeriod : 0;
+        for (int i = 1; i < PERIOD_COUNT; i++) {
+            long periodMillis = millis[i];
+            if (active && i == period) {
+                periodMillis += Math.max(0, nowMillis - periodSinceMillis);
+            }
+            double periodMeters = meters[i];
+            if (i == runningPeriod) {
+                periodMeters += activeDriveMeters;
+            }
+            JSONObject periodTotals = new JSONObject();
+            periodTotals.put(METERS_KEY, periodMeters);
+            periodTotals.put(MILLIS_KEY, periodMillis);
+            periodTotals.put(DRIVES_KEY, drives[i]);
+            periods.put(String.valueOf(i), periodTotals);
+            totalMeters += periodMeters;
+            totalMillis += periodMillis;
+        }
+        totals.put(PERIODS_KEY, periods);
+        totals.put(TOTAL_METERS_KEY, totalMeters);
+        totals.put(TOTAL_MILLIS_KEY, totalMillis);
+        return totals;
+    }
+
+    // Whether the drive in progress belongs to the shift and is not counted yet.
+    private boolean countsActiveDrive() {
+        return activeDriveId != null && shiftStartMillis != 0
+                && activeDriveStartMillis >= shiftStartMillis
+                && (shiftEndMillis == 0 || activeDriveStartMillis <= shiftEndMillis)
+                && activeDrivePeriod > 0 && activeDrivePeriod < PERIOD_COUNT
+                && !countedDrives.containsKey(activeDriveId);
+    }
+
+    private void startShift(long nowMillis) {
+        shiftStartMillis = nowMillis;
+        shiftEndMillis = 0;
+        for (int i = 0; i < PERIOD_COUNT; i++) {
+            meters[i] = 0;
+            millis[i] = 0;
+            drives[i] = 0;
+        }
+        countedDrives.clear();
+    }
+
+    static double distanceMeters(DriveInfo info) {
+        if (info.distanceMeters > 0) {
+            return info.distanceMeters;
+        }
+        List<LocationPointWithTimestamp> waypoints = info.waypoints;
+        if (waypoints == null) {
+            return 0;
+        }
+        double distance = 0;
+        for (int i = 1; i < waypoints.size(); i++) {
+            LocationPointWithTimestamp from = waypoints.get(i - 1);
+            LocationPointWithTimestamp to = waypoints.get(i);
+            distance += GeoMath.haversineMeters(from.location.latitude, from.location.longitude,
+                    to.location.latitude, to.location.longitude);
+        }
+        return distance;
+    }
+
+    // Called with this accountant's monitor held.
+    private void load() {
+        if (loaded) {
+            return;
+        }
+        loaded = true;
+        if (!file.exists()) {
+            return;
+        }
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            int version = input.readUnsignedByte();
+            if (version != FORMAT_VERSION) {
+                Log.w(TAG, "Ignoring shift totals with version " + version);
+                return;
+            }
+            shiftStartMillis = input.readLong();
+            shiftEndMillis = input.readLong();
+            period = input.readByte();
+            periodSinceMillis = input.readLong();
+            for (int i = 0; i < PERIOD_COUNT; i++) {
+                meters[i] = input.readDouble();
+                millis[i] = input.readLong();
+                drives[i] = input.readInt();
+            }
+            int count = input.readInt();
+            for (int i = 0; i < count; i++) {
+                String driveId = input.readUTF();
+                countedDrives.put(driveId, new double[]{input.readByte(), input.readDouble()});
+            }
+        } catch (IOException | RuntimeException e) {
+            Log.e(TAG, "Failed to load shift totals", e);
+        }
+    }
+
+    // Called with this accountant's monitor held.
+    private void scheduleWrite() {
+        if (writeScheduled) {
+            return;
+        }
+        writeScheduled = true;
+        io.execute(this::writeFile);
+    }
+
+    private void writeFile() {
+        File temp = new File(file.getPath() + ".tmp");
+        try (FileOutputStream stream = new FileOutputStream(temp)) {
+            DataOutputStream output = new DataOutputStream(new BufferedOutputStream(stream));
+            synchronized (this) {
+                writeScheduled = false;
+                output.writeByte(FORMAT_VERSION);
+                output.writeLong(shiftStartMillis);
+                output.writeLong(shiftEndMillis);
+                output.writeByte(period);
+                output.writeLong(periodSinceMillis);
+                for (int i = 0; i < PERIOD_COUNT; i++) {
+                    output.writeDouble(meters[i]);
+                    output.writeLong(millis[i]);
+                    output.writeInt(drives[i]);
+                }
+                output.writeInt(countedDrives.size());
+                for (Map.Entry<String, double[]> drive : countedDrives.entrySet()) {
+                    output.writeUTF(drive.getKey());
+                    output.writeByte((int) drive.getValue()[0]);
+                    output.writeDouble(drive.getValue()[1]);
+                }
+            }
+            output.flush();
+            stream.getFD().sync();
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to write shift totals", e);
+            return;
+        }
+        if (!temp.renameTo(file)) {
+            Log.e(TAG, "Failed to replace shift totals file");
+        }
+    }
+}
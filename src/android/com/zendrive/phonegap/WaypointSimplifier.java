@@ -0,0 +1,168 @@
+package com.zendrive.phonegap;
+
+import com.zendrive.sdk.LocationPointWithTimestamp;
+
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reduces the waypoints of a drive before they are serialized for JS. The stages run in
+ * order and each one is skipped when not configured:
+ * <ol>
+ *     <li>time decimation: drop points closer than {@code minIntervalMillis} to the last kept one,</li>
+ *     <li>Douglas-Peucker with a tolerance in meters,</li>
+ *     <li>a hard budget of {@code maxPoints}, sampled evenly.</li>
+ * </ol>
+ * The first and last point are always kept. Instances are immutable.
+ */
+class WaypointSimplifier {
+    static final String TOLERANCE_METERS_KEY = "toleranceMeters";
+    static final String MAX_POINTS_KEY = "maxPoints";
+    static final String MIN_INTERVAL_MILLIS_KEY = "minIntervalMillis";
+
+    static final WaypointSimplifier NONE = new WaypointSimplifier(0, 0, 0);
+
+    final double toleranceMeters;
+    final int maxPoints;
+    final long minIntervalMillis;
+
+    WaypointSimplifier(double toleranceMeters, int maxPoints, long minIntervalMillis) {
+        this.toleranceMeters = toleranceMeters;
+        this.maxPoints = maxPoints;
+        this.minIntervalMillis = minIntervalMillis;
+    }
+
+    static WaypointSimplifier fromJson(JSONObject options) {
+        if (options == null) {
+            return NONE;
+        }
+        double tolerance = options.optDouble(TOLERANCE_METERS_KEY, 0);
+        int maxPoints = options.optInt(MAX_POINTS_KEY, 0);
+        long minInterval = options.optLong(MIN_INTERVAL_MILLIS_KEY, 0);
+        if (tolerance < 0 || maxPoints < 0 || minInterval < 0 || (maxPoints > 0 && maxPoints < 2)) {
+            throw new IllegalArgumentException("Invalid waypoint simplification options");
+        }
+        return new WaypointSimplifier(Double.isNaN(tolerance) ? 0 : tolerance, maxPoints, minInterval);
+    }
+
+    boolean isEnabled() {
+        return toleranceMeters > 0 || maxPoints > 0 || minIntervalMillis > 0;
+    }
+
+    List<LocationPointWithTimestamp> simplify(List<LocationPointWithTimestamp> waypoints) {
+        if (waypoints == null || waypoints.size() < 3 || !isEnabled()) {
+            return waypoints;
+        }
+        List<LocationPointWithTimestamp> points = waypoints;
+        if (minIntervalMillis > 0) {
+            points = decimateByTime(points, minIntervalMillis);
+        }
+        if (toleranceMeters > 0) {
+            points = douglasPeucker(points, toleranceMeters);
+        }
+        if (maxPoints > 0 && points.size() > maxPoints) {
+            points = sampleEvenly(points, maxPoints);
+        }
+        return points;
+    }
+
+    static List<LocationPointWithTimestamp> decimateByTime(List<LocationPointWithTimestamp> points,
+                                                           long minIntervalMillis) {
+        int count = points.size();
+        List<LocationPointWithTimestamp> kept = new ArrayList<>();
+        LocationPointWithTimestamp last = points.get(0);
+        kept.add(last);
+        for (int i = 1; i < count - 1; i++) {
+            LocationPointWithTimestamp point = points.get(i);
+            if (point.timestamp - last.timestamp >= minIntervalMillis) {
+                kept.add(point);
+                last = point;
+            }
+        }
+        kept.add(points.get(count - 1));
+        return kept;
+    }
+
+    /**
+     * Iterative Douglas-Peucker, so very long drives cannot overflow the stack. Distances are
+     * measured on an equirectangular projection around the drive's first point, which is
+     * accurate to well under a meter at city scale.
+     */
+    static List<LocationPointWithTimestamp> douglasPeucker(List<LocationPointWithTimestamp> points,
+                                                           double toleranceMeters) {
+        int count = points.size();
+        if (count < 3) {
+            return points;
+        }
+        double originLat = points.get(0).location.latitude;
+        double originLng = points.get(0).location.longitude;
+        double scaleX = GeoMath.metersPerDegreeLongitude(originLat);
+        double scaleY = GeoMath.metersPerDegreeLatitude();
+        double[] x = new double[count];
+        double[] y = new double[count];
+        for (int i = 0; i < count; i++) {
+            x[i] = (points.get(i).location.longitude - originLng) * scaleX;
+            y[i] = (points.get(i).location.latitude - originLat) * scaleY;
+        }
+
+        boolean[] keep = new boolean[count];
+        keep[0] = true;
+        keep[count - 1] = true;
+        int[] stack = new int[2 * count];
+        int top = 0;
+        stack[top++] = 0;
+        stack[top++] = count - 1;
+        double toleranceSquared = toleranceMeters * toleranceMeters;
+        while (top > 0) {
+            int last = stack[--top];
+            int first = stack[--top];
+            double maxDistance = 0;
+            int index = -1;
+            for (int i = first + 1; i < last; i++) {
+                double distance = segmentDistanceSquared(x[i], y[i], x[first], y[first], x[last], y[last]);
+                if (distance > maxDistance) {
+                    maxDistance = distance;
+                    index = i;
+                }
+            }
+            if (index >= 0 && maxDistance > toleranceSquared) {
+                keep[index] = true;
+                stack[top++] = first;
+                stack[top++] = index;
+                stack[top++] = index;
+                stack[top++] = last;
+            }
+        }
+
+        List<LocationPointWithTimestamp> kept = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            if (keep[i]) {
+                kept.add(points.get(i));
+            }
+        }
+        return kept;
+    }
+
+    static List<LocationPointWithTimestamp> sampleEvenly(List<LocationPointWithTimestamp> points, int maxPoints) {
+        int count = points.size();
+        List<LocationPointWithTimestamp> kept = new ArrayList<>(maxPoints);
+        double step = (double) (count - 1) / (maxPoints - 1);
+        for (int i = 0; i < maxPoints; i++) {
+            kept.add(points.get((int) Math.round(i * step)));
+        }
+        return kept;
+    }
+
+    private static double segmentDistanceSquared(double px, double py, double ax, double ay, double bx, double by) {
+        double dx = bx - ax;
+        double dy = by - ay;
+        double lengthSquared = dx * dx + dy * dy;
+        double t = lengthSquared == 0 ? 0 : ((px - ax) * dx + (py - ay) * dy) / lengthSquared;
+        t = Math.max(0, Math.min(1, t));
+        double ex = px - (ax + t * dx);
+        double ey = py - (ay + t * dy);
+        return ex * ex + ey * ey;
+    }
+}
@@ -3,104 +3,185 @@ package com.zendrive.phonegap;
 import android.content.Context;
 import android.util.Log;
 
-import androidx.annotation.Nullable;
-
-import com.zendrive.sdk.ZendriveSettingError;
 import com.zendrive.sdk.AccidentInfo;
 import com.zendrive.sdk.AnalyzedDriveInfo;
 import com.zendrive.sdk.DriveResumeInfo;
 import com.zendrive.sdk.DriveStartInfo;
 import com.zendrive.sdk.EstimatedDriveInfo;
-import com.zendrive.sdk.Zendrive;
 import com.zendrive.sdk.ZendriveBroadcastReceiver;
-import com.zendrive.sdk.ZendriveSettingWarning;
-import com.zendrive.sdk.ZendriveSettings;
-import com.zendrive.sdk.ZendriveSettingsCallback;
 
+import org.json.JSONException;
+
+/**
+ * SDK callbacks arrive on the main thread. Their work, including any encoding, runs on a
+ * {@link ReceiverWorkQueue}; the main thread only sees the bridge post that delivers the result.
+ */
 public class ZendriveCordovaBroadcastReceiver extends ZendriveBroadcastReceiver {
+    private static final String TAG = "ZendriveReceiver";
+
+    /**
+     * The manager only exists once the plugin has been initialized in this process. When the
+     * SDK starts the app in the background to deliver an event it does not, and the event is
+     * journaled instead so it can be replayed on the next plugin init. Journaled events carry
+     * all of their fields.
+     */
+    private static void journal(Context context, DriveEvent event) {
+        DriveEventJournal journal = DriveEventJournal.getInstance(context);
+        // Re-check under the journal lock so an event is never appended after the
+        // manager has already replayed the journal.
+        synchronized (journal) {
+            ZendriveManager manager = ZendriveManager.getSharedInstanceOrNull();
+            if (manager != null) {
+                manager.dispatchEvent(event);
+                return;
+            }
+            try {
+                journal.append(event, event.encode(null));
+            } catch (JSONException e) {
+                Log.e(TAG, "Failed to journal " + event.type, e);
+            }
+        }
+    }
+
+    /**
+     * Journals {@code event} without dispatching it, on the receiving thread, when the drive
+     * queue is full. It is replayed once the queue has drained, see {@link #replayOverflow}, or
+     * on the next plugin init if the manager does not exist yet.
+     */
+    private static void overflow(Context context, DriveEvent event) {
+        try {
+            DriveEventJournal.getInstance(context).append(event, event.encode(null));
+        } catch (JSONException e) {
+            Log.e(TAG, "Failed to journal " + event.type, e);
+        }
+    }
+
+    /**
+     * The drive queue's drain action: hands what {@link #overflow} journaled to the manager.
+     */
+    static void replayOverflow() {
+        ZendriveManager manager = ZendriveManager.getSharedInstanceOrNull();
+        if (manager != null) {
+            manager.replayJournal();
+        }
+    }
+
+    private static DriveEvent driveEnd(EstimatedDriveInfo info) {
+        // The waypoint settings live in the manager; without one, journal with the defaults.
+        ZendriveManager manager = ZendriveManager.getSharedInstanceOrNull();
+        if (manager == null) {
+            return DriveEvent.driveEnd(info, WaypointSimplifier.NONE,
+                    DriveInfoEncoder.WaypointEncoding.OBJECTS, new DriveInfoEncoder());
+        }
+        return DriveEvent.driveEnd(info, manager.getWaypointSimplifier(), manager.getWaypointEncoding(),
+                new DriveInfoEncoder());
+    }
+
+    private static DriveEvent driveAnalyzed(AnalyzedDriveInfo info) {
+        ZendriveManager manager = ZendriveManager.getSharedInstanceOrNull();
+        if (manager == null) {
+            return DriveEvent.driveAnalyzed(info, WaypointSimplifier.NONE,
+                    DriveInfoEncoder.WaypointEncoding.OBJECTS, new DriveInfoEncoder());
+        }
+        return DriveEvent.driveAnalyzed(info, manager.getWaypointSimplifier(), manager.getWaypointEncoding(),
+                new DriveInfoEncoder());
+    }
 
     @Override
     public void onDriveStart(Context context, DriveStartInfo startInfo) {
-        ZendriveManager.getSharedInstance().onDriveStart(startInfo);
+        ReceiverWorkQueue.drives().submit(this, () -> {
+            ZendriveManager manager = ZendriveManager.getSharedInstanceOrNull();
+            if (manager != null) {
+                manager.onDriveStart(startInfo);
+                return;
+            }
+            journal(context, DriveEvent.driveStart(startInfo));
+        }, () -> overflow(context, DriveEvent.driveStart(startInfo)));
     }
 
     @Override
     public void onDriveResume(Context context, DriveResumeInfo resumeInfo) {
-        ZendriveManager.getSharedInstance().onDriveResume(resumeInfo);
+        ReceiverWorkQueue.drives().submit(this, () -> {
+            ZendriveManager manager = ZendriveManager.getSharedInstanceOrNull();
+            if (manager != null) {
+                manager.onDriveResume(resumeInfo);
+                return;
+            }
+            journal(context, DriveEvent.driveResume(resumeInfo));
+        }, () -> overflow(context, DriveEvent.driveResume(resumeInfo)));
     }
 
     @Override
     public void onDriveEnd(Context context, EstimatedDriveInfo estimatedDriveInfo) {
-        ZendriveManager.getSharedInstance().onDriveEnd(estimatedDriveInfo);
+        ReceiverWorkQueue.drives().submit(this, () -> {
+            DriveHistoryStore.getInstance(context).record(estimatedDriveInfo, false);
+            ShiftMileageAccountant.getInstance(context).onDrive(estimatedDriveInfo, false);
+            ZendriveManager manager = ZendriveManager.getSharedInstanceOrNull();
+            if (manager != null) {
+                manager.onDriveEnd(estimatedDriveInfo);
+                return;
+            }
+            journal(context, driveEnd(estimatedDriveInfo));
+        }, () -> {
+            DriveHistoryStore.getInstance(context).record(estimatedDriveInfo, false);
+            ShiftMileageAccountant.getInstance(context).onDrive(estimatedDriveInfo, false);
+            overflow(context, driveEnd(estimatedDriveInfo));
+        });
     }
 
     @Override
     public void onDriveAnalyzed(Context context, AnalyzedDriveInfo analyzedDriveInfo) {
-        ZendriveManager.getSharedInstance().onDriveAnalyzed(analyzedDriveInfo);
+        ReceiverWorkQueue.drives().submit(this, () -> {
+            DriveHistoryStore.getInstance(context).record(analyzedDriveInfo, true);
+            ShiftMileageAccountant.getInstance(context).onDrive(analyzedDriveInfo, true);
+            ZendriveManager manager = ZendriveManager.getSharedInstanceOrNull();
+            if (manager != null) {
+                manager.onDriveAnalyzed(analyzedDriveInfo);
+                return;
+            }
+            journal(context, driveAnalyzed(analyzedDriveInfo));
+        }, () -> {
+            DriveHistoryStore.getInstance(context).record(analyzedDriveInfo, true);
+            ShiftMileageAccountant.getInstance(context).onDrive(analyzedDriveInfo, true);
+            overflow(context, driveAnalyzed(analyzedDriveInfo));
+        });
     }
 
     @Override
     public void onAccident(Context context, AccidentInfo accidentInfo) {
-        ZendriveManager.getSharedInstance().onAccident(accidentInfo);
+        ReceiverWorkQueue.accidents().submit(this, () -> {
+            ZendriveManager manager = ZendriveManager.getSharedInstanceOrNull();
+            if (manager != null) {
+                manager.onAccident(accidentInfo);
+                return;
+            }
+            // Accidents are not journaled: they are persisted until acknowledged and the user is
+            // notified straight away.
+            AccidentPriorityLane accidents = AccidentPriorityLane.getInstance(context);
+            long receivedAtMillis = System.currentTimeMillis();
+            try {
+                accidents.record(accidentInfo.accidentId, receivedAtMillis,
+                        DriveEvent.accident(accidentInfo, receivedAtMillis).encode(null));
+            } catch (JSONException e) {
+                Log.e(TAG, "Failed to persist accident", e);
+            }
+            accidents.notifyUser();
+            // The plugin may have initialized in the meantime.
+            manager = ZendriveManager.getSharedInstanceOrNull();
+            if (manager != null) {
+                manager.sendPendingAccidents();
+            }
+        });
     }
 
     @Override
     public void onZendriveSettingsConfigChanged(Context context, boolean errorsFound, boolean warningsFound) {
-        //have separate logic to persist the returned errorsFound and warningsFound flag for logging
-        if (errorsFound || warningsFound) {
-            checkZendriveSettings(context);
-        }
+        // Checked on every change, not only when problems were found, so that JS also
+        // learns when they are fixed.
+        checkZendriveSettings(context);
     }
 
     public void checkZendriveSettings(final Context context) {
-        Zendrive.getZendriveSettings(context, new ZendriveSettingsCallback() {
-            @Override
-            public void onComplete(@Nullable ZendriveSettings zendriveSettings) {
-                if (zendriveSettings == null) {
-                    // The callback returns NULL if SDK is not setup.
-                    return;
-                }
-                // Handle errors in the dotted areas
-                for (ZendriveSettingError error : zendriveSettings.errors) {
-                    switch (error.type) {
-                        case POWER_SAVER_MODE_ENABLED: {
-                            Log.d("Tag", "Error " + error.type.toString() );
-                            break;
-                        }
-                        case BACKGROUND_RESTRICTION_ENABLED: {
-                            Log.d("Tag", "Error " + error.type.toString() );
-                            break;
-                        }
-                        case GOOGLE_PLAY_SETTINGS_ERROR: {
-                            Log.d("Tag", "Error " + error.type.toString() );
-                            break;
-                        }
-                        case LOCATION_PERMISSION_DENIED: {
-                            Log.d("Tag", "Error " + error.type.toString() );
-                            break;
-                        }
-                        case LOCATION_SETTINGS_ERROR: {
-                            Log.d("Tag", "Error " + error.type.toString() );
-                            break;
-                        }
-                        case WIFI_SCANNING_DISABLED: {
-                            Log.d("Tag", "Error " + error.type.toString() );
-                            break;
-                        }
-                    }
-                }
-
-                // Handle warnings
-                for (ZendriveSettingWarning warning : zendriveSettings.warnings) {
-                    switch (warning.type) {
-                        case POWER_SAVER_MODE_ENABLED: {
-                            Log.d("Tag", "Warning " + warning.type.toString() );
-                            break;
-                        }
-                    }
-                }
-            }
-        });
+        SettingsHealthMonitor.getInstance(context).requestCheck();
     }
-
 }
@@ -1,37 +1,55 @@
 package com.zendrive.phonegap;
 
 import android.Manifest.permission;
+import android.content.Context;
 import android.content.pm.PackageManager;
 import android.os.Build;
+import android.os.Trace;
 import android.util.Log;
+import android.view.Choreographer;
 
-import com.zendrive.sdk.Zendrive;
+import com.zendrive.phonegap.InsurancePeriodStateMachine.Period;
 import com.zendrive.sdk.ZendriveConfiguration;
 import com.zendrive.sdk.ZendriveDriveDetectionMode;
 import com.zendrive.sdk.ZendriveDriverAttributes;
-import com.zendrive.sdk.ZendriveOperationCallback;
-import com.zendrive.sdk.ZendriveOperationResult;
-import com.zendrive.sdk.insurance.ZendriveInsurance;
 
 import org.apache.cordova.CallbackContext;
 import org.apache.cordova.CordovaInterface;
 import org.apache.cordova.CordovaPlugin;
 import org.apache.cordova.PermissionHelper;
-import org.apache.cordova.PluginResult;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
-import java.io.PrintWriter;
-import java.io.StringWriter;
+import java.io.IOException;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+import static com.zendrive.phonegap.PluginActionRegistry.Dispatch.INLINE;
+import static com.zendrive.phonegap.PluginActionRegistry.Dispatch.POOL;
+import static com.zendrive.phonegap.PluginActionRegistry.Dispatch.SERIAL;
 
 public class ZendriveCordovaPlugin extends CordovaPlugin {
     // ZendriveDriverAttributes dictionary keys
     private static final String kCustomAttributesKey = "customAttributes";
     private static final String kDriverAttributesKey = "driverAttributes";
     private static final String kDriveDetectionModeKey = "driveDetectionMode";
+    private static final String kWaypointSimplificationKey = "waypointSimplification";
+    private static final String TRACE_DRIVER_ATTRIBUTES = PluginActionRegistry.traceSection("getDriverAttributes");
+    private static final String TRACE_PLUGIN_INITIALIZE = PluginActionRegistry.traceSection("pluginInitialize");
+    private static final String TRACE_INITIALIZE = PluginActionRegistry.traceSection("initialize");
+
+    // config.xml preference: defer creating the manager and asking for permission until the
+    // first frame or the first call from JS.
+    private static final String PREFERENCE_LAZY_INIT = "ZendriveLazyInit";
 
     private static final String TAG = "ZendriveCordovaPlugin";
     private static final String Config_PropertyName_DriverId = "driverId";
@@ -40,14 +58,23 @@ public class ZendriveCordovaPlugin extends CordovaPlugin {
     private static CordovaInterface CORDOVA_INSTANCE;
 
     private static final String PERMISSION_DENIED_ERROR = "Location permission denied by user";
+    static final String PLUGIN_DESTROYED_ERROR = "Zendrive plugin was destroyed";
     private static final int LOCATION_PERMISSION_REQUEST = 42;
+    private static final int APP_PERMISSIONS_REQUEST = 0;
 
     private static final String [] permissions = { permission.ACCESS_FINE_LOCATION, permission.ACCESS_NETWORK_STATE, permission.ACCESS_WIFI_STATE,
             permission.INTERNET, permission.ACCESS_COARSE_LOCATION, permission.WAKE_LOCK,
             permission.WAKE_LOCK, permission.SYSTEM_ALERT_WINDOW, permission.RECEIVE_BOOT_COMPLETED,
             permission.RECEIVE_BOOT_COMPLETED };
 
-    private CallbackContext callbackContext;
+    // Calls waiting for the outcome of requestPermissions.
+    private final Queue<CallResult> pendingPermissionCalls = new ConcurrentLinkedQueue<>();
+
+    private PluginActionRegistry actionRegistry;
+    // Keeps SDK calls that change state in the order they were issued from JS.
+    private ExecutorService serialExecutor;
+    private InsurancePeriodStateMachine insurancePeriods;
+    private volatile boolean initialized;
 
     public android.content.Context OverrideContext = null;
 
@@ -69,104 +96,271 @@ public class ZendriveCordovaPlugin extends CordovaPlugin {
 
     @Override
     protected synchronized void pluginInitialize() {
-        super.pluginInitialize();
-        if (CORDOVA_INSTANCE == null) {
-            CORDOVA_INSTANCE = cordova;
+        long startNanos = System.nanoTime();
+        Trace.beginSection(TRACE_PLUGIN_INITIALIZE);
+        try {
+            super.pluginInitialize();
+            if (CORDOVA_INSTANCE == null) {
+                CORDOVA_INSTANCE = cordova;
+            }
+            if (actionRegistry == null) {
+                actionRegistry = createActionRegistry();
+            }
+            if (serialExecutor == null) {
+                serialExecutor = Executors.newSingleThreadExecutor();
+            }
+            if (preferences != null && preferences.getBoolean(PREFERENCE_LAZY_INIT, false)) {
+                // Only start loading state here; the rest waits for the first frame or the
+                // first call from JS, whichever comes first.
+                PluginStateStore.getInstance(getAppContext()).warm();
+                final ExecutorService executor = serialExecutor;
+                Choreographer.getInstance().postFrameCallback(frameTimeNanos -> {
+                    try {
+                        executor.execute(this::ensureInitialized);
+                    } catch (RejectedExecutionException e) {
+                        Log.w(TAG, "Destroyed before the first frame, skipping initialization");
+                    }
+                });
+            } else {
+                ensureInitialized();
+            }
+        } finally {
+            Trace.endSection();
         }
-        //TODO: this checks the version of the app to be over lollipop
-        ZendriveManager.init(getContext());
+        Log.i(TAG, "pluginInitialize took " + (System.nanoTime() - startNanos) / 1000 + " us");
+    }
+
+    /**
+     * Creates the manager and the insurance period state machine and asks for location
+     * permission if it is missing. Runs once, from {@link #pluginInitialize()} or, in lazy
+     * mode, after the first frame or before the first action.
+     */
+    private void ensureInitialized() {
+        if (initialized) {
+            return;
+        }
+        synchronized (this) {
+            if (initialized) {
+                return;
+            }
+            Trace.beginSection(TRACE_INITIALIZE);
+            try {
+                if (insurancePeriods == null) {
+                    insurancePeriods = new InsurancePeriodStateMachine(getAppContext(), serialExecutor,
+                            PluginStateStore.getInstance(getAppContext()));
+                    final ShiftMileageAccountant shiftMileage = ShiftMileageAccountant.getInstance(getAppContext());
+                    insurancePeriods.setListener(period -> {
+                        shiftMileage.onPeriodChanged(period.value, System.currentTimeMillis());
+                        ZendriveManager manager = ZendriveManager.getSharedInstanceOrNull();
+                        if (manager != null) {
+                            manager.onInsurancePeriodChanged();
+                        }
+                    });
+                }
+                //TODO: this checks the version of the app to be over lollipop
+                ZendriveManager.init(getContext());
+                // Warm the active drive snapshot off the bridge thread.
+                try {
+                    serialExecutor.execute(() -> {
+                        ZendriveManager manager = ZendriveManager.getSharedInstanceOrNull();
+                        if (manager != null) {
+                            manager.refreshActiveDrive();
+                        }
+                    });
+                } catch (RejectedExecutionException e) {
+                    Log.w(TAG, "Destroyed, not warming the active drive");
+                }
 
-        // this used to be "requestPermission"
-        if (cordova != null && Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
-            cordova.requestPermission(this, LOCATION_PERMISSION_REQUEST, permission.ACCESS_FINE_LOCATION);
+                // this used to be "requestPermission"
+                if (cordova != null && Build.VERSION.SDK_INT >= Build.VERSION_CODES.M
+                        && !cordova.hasPermission(permission.ACCESS_FINE_LOCATION)) {
+                    cordova.getActivity().runOnUiThread(() -> cordova.requestPermission(
+                            this, LOCATION_PERMISSION_REQUEST, permission.ACCESS_FINE_LOCATION));
+                }
+            } finally {
+                Trace.endSection();
+            }
+            initialized = true;
         }
     }
 
     public void manuallyInitializePlugin() {
         pluginInitialize();
+        ensureInitialized();
     }
 
-    private void requestAppPermissions()
+    private void requestAppPermissions(CallResult call)
     {
         if (cordova != null) {
-            PermissionHelper.requestPermissions(this, 0, permissions);
+            pendingPermissionCalls.add(call);
+            PermissionHelper.requestPermissions(this, APP_PERMISSIONS_REQUEST, permissions);
+        } else {
+            call.error("Cordova is not available");
         }
     }
 
     @Override
     public void onRequestPermissionResult(int requestCode, String[] permissions,
                                           int[] grantResults) throws JSONException {
+        if (requestCode != APP_PERMISSIONS_REQUEST) {
+            return;
+        }
+        boolean denied = false;
         for(int r:grantResults)
         {
             if(r == PackageManager.PERMISSION_DENIED)
             {
-                if (this.callbackContext != null)
-                    this.callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.ERROR, PERMISSION_DENIED_ERROR));
-                return;
+                denied = true;
+                break;
+            }
+        }
+        CallResult call;
+        while ((call = pendingPermissionCalls.poll()) != null) {
+            if (denied) {
+                call.error(PERMISSION_DENIED_ERROR);
+            } else {
+                call.success();
             }
         }
     }
 
     @Override
-    public boolean execute(final String action, final JSONArray args, final CallbackContext callbackContext)
-            throws JSONException {
+    public void onPause(boolean multitasking) {
+        super.onPause(multitasking);
+        ZendriveManager manager = ZendriveManager.getSharedInstanceOrNull();
+        if (manager != null) {
+            manager.onPause();
+        }
+    }
 
-        // store the callback context so that the other methods can call it.
-        this.callbackContext = callbackContext;
+    @Override
+    public void onResume(boolean multitasking) {
+        super.onResume(multitasking);
+        ZendriveManager manager = ZendriveManager.getSharedInstanceOrNull();
+        if (manager != null) {
+            manager.onResume();
+        }
+    }
 
-        cordova.getThreadPool().execute(() -> {
-            try {
-                if (action.equals("setup")) {
-                    setup(args);
-                } else if (action.equals("teardown")) {
-                    teardown();
-                } else if (action.equals("startDrive")) {
-                    startDrive(args);
-                } else if (action.equals("getActiveDriveInfo")) {
-                    getActiveDriveInfo();
-                } else if (action.equals("stopDrive")) {
-                    stopManualDrive();
-                } else if (action.equals("startSession")) {
-                    startSession(args);
-                } else if (action.equals("stopSession")) {
-                    stopSession();
-                } else if (action.equals("setDriveDetectionMode")) {
-                    setDriveDetectionMode(args);
-                } else if (action.equals("setProcessStartOfDriveDelegateCallback")) {
-                    ZendriveManager.getSharedInstance().setProcessStartOfDriveDelegateCallback(args,
-                            callbackContext);
-                } else if (action.equals("setProcessEndOfDriveDelegateCallback")) {
-                    ZendriveManager.getSharedInstance().setProcessEndOfDriveDelegateCallback(args, callbackContext);
-                } else if (action.equals("pickupPassenger")) {
-                    pickupPassenger();
-                } else if (action.equals("dropoffPassenger")) {
-                    dropoffPassenger();
-                } else if (action.equals("acceptPassengerRequest")) {
-                    acceptPassengerRequest();
-                } else if (action.equals("cancelPassengerRequest")) {
-                    cancelPassengerRequest();
-                } else if (action.equals("goOnDuty")) {
-                    goOnDuty();
-                } else if (action.equals("goOffDuty")) {
-                    goOffDuty();
-                } else if(action.equals("requestPermissions")) {
-                    this.requestAppPermissions();
-                }
+    @Override
+    public void onReset() {
+        super.onReset();
+        ZendriveManager manager = ZendriveManager.getSharedInstanceOrNull();
+        if (manager != null) {
+            manager.onReset();
+        }
+    }
+
+    /**
+     * Shuts the serial executor down but keeps the field: work arriving later, from JS or from
+     * SDK callbacks, is rejected by it and its call failed instead of hitting a null executor.
+     */
+    @Override
+    public void onDestroy() {
+        if (serialExecutor != null) {
+            serialExecutor.shutdown();
+        }
+        super.onDestroy();
+    }
+
+    private PluginActionRegistry createActionRegistry() {
+        PluginActionRegistry registry = new PluginActionRegistry();
+        registry.register("setup", SERIAL, this::setup);
+        registry.register("teardown", SERIAL, (args, call) -> teardown(call));
+        registry.register("startDrive", SERIAL, this::startDrive);
+        registry.register("getActiveDriveInfo", INLINE, (args, call) -> getActiveDriveInfo(call));
+        registry.registerKeepingCallback("setActiveDriveChangeCallback", INLINE, (args, call) ->
+                ZendriveManager.getSharedInstance().setActiveDriveChangeCallback(args, call.getCallbackContext()));
+        registry.register("stopDrive", SERIAL, (args, call) -> stopManualDrive(call));
+        registry.register("startSession", SERIAL, this::startSession);
+        registry.register("stopSession", SERIAL, (args, call) -> stopSession(call));
+        registry.register("acknowledgeAccident", SERIAL, this::acknowledgeAccident);
+        registry.register("setDriveDetectionMode", SERIAL, this::setDriveDetectionMode);
+        registry.registerKeepingCallback("setProcessStartOfDriveDelegateCallback", INLINE, (args, call) ->
+                ZendriveManager.getSharedInstance().setProcessStartOfDriveDelegateCallback(args,
+                        call.getCallbackContext()));
+        registry.registerKeepingCallback("setProcessEndOfDriveDelegateCallback", INLINE, (args, call) ->
+                ZendriveManager.getSharedInstance().setProcessEndOfDriveDelegateCallback(args,
+                        call.getCallbackContext()));
+        registry.registerKeepingCallback("addEventListener", INLINE, (args, call) -> addEventListener(args, call));
+        registry.register("removeEventListener", INLINE, (args, call) -> removeEventListener(args, call));
+        registry.register("setEventBufferCapacity", INLINE, (args, call) -> setEventBufferCapacity(args, call));
+        registry.register("setWaypointEncoding", INLINE, (args, call) -> setWaypointEncoding(args, call));
+        registry.register("setWaypointSimplification", INLINE, (args, call) -> setWaypointSimplification(args, call));
+        // Period transitions only enqueue on the state machine, which serializes them itself.
+        registry.register("pickupPassenger", INLINE, (args, call) -> pickupPassenger(call));
+        registry.register("dropoffPassenger", INLINE, (args, call) -> dropoffPassenger(call));
+        registry.register("acceptPassengerRequest", INLINE, (args, call) -> acceptPassengerRequest(call));
+        registry.register("cancelPassengerRequest", INLINE, (args, call) -> cancelPassengerRequest(call));
+        registry.register("goOnDuty", INLINE, (args, call) -> goOnDuty(call));
+        registry.register("goOffDuty", INLINE, (args, call) -> goOffDuty(call));
+        registry.register("requestPermissions", INLINE, (args, call) -> requestAppPermissions(call));
+        registry.register("getMetrics", INLINE, this::getMetrics);
+        registry.register("setLiveDriveNotification", INLINE, this::setLiveDriveNotification);
+        registry.register("getSettingsHealth", INLINE, (args, call) -> getSettingsHealth(call));
+        // Reads the drive in progress from the SDK.
+        registry.register("getShiftTotals", POOL, (args, call) -> getShiftTotals(call));
+        // Database reads; the pool keeps them off the bridge thread without queueing behind SDK calls.
+        registry.register("queryDrives", POOL, this::queryDrives);
+        registry.register("getDriveWaypoints", POOL, this::getDriveWaypoints);
+        // Commands of a batch run one after the other on the serial executor, whatever their own dispatch.
+        registry.register(PluginBatch.ACTION, SERIAL, (args, call) ->
+                new PluginBatch(registry, serialExecutor, args, call).start());
+        return registry;
+    }
 
-                SuccessCallback(); // Thread-safe.
+    @Override
+    public boolean execute(final String action, final JSONArray args, final CallbackContext callbackContext)
+            throws JSONException {
+        final PluginActionRegistry.Entry entry = actionRegistry.get(action);
+        if (entry == null) {
+            return false;
+        }
+        ensureInitialized();
+
+        // Each call carries its own result router; the handler completes it, possibly
+        // much later from an SDK callback.
+        final long queuedNanos = System.nanoTime();
+        final CallResult call = new CallResult(action, callbackContext, entry.metrics, queuedNanos);
+        entry.metrics.calls.incrementAndGet();
+
+        Runnable task = () -> {
+            long startNanos = System.nanoTime();
+            entry.metrics.recordQueueWait(queuedNanos, startNanos);
+            Trace.beginSection(entry.traceSection);
+            try {
+                entry.handler.handle(args, call);
             } catch (Throwable e) {
-                this.ErrorCallback("Unexpected error in exec.", e);
+                call.error("Unexpected error in exec.", e);
+            } finally {
+                Trace.endSection();
+                entry.metrics.recordHandler(startNanos, System.nanoTime());
             }
-        });
+        };
 
+        switch (entry.dispatch) {
+            case INLINE:
+                task.run();
+                break;
+            case SERIAL:
+                try {
+                    serialExecutor.execute(task);
+                } catch (RejectedExecutionException e) {
+                    call.error(PLUGIN_DESTROYED_ERROR);
+                }
+                break;
+            default:
+                cordova.getThreadPool().execute(task);
+                break;
+        }
         return true;
     }
 
-    private void setup(JSONArray args) throws JSONException {
+    private void setup(JSONArray args, CallResult call) throws JSONException {
 
         JSONObject configJsonObj = args.getJSONObject(0);
         if (configJsonObj == null) {
-            ErrorCallback("Wrong configuration supplied");
+            call.error("Wrong configuration supplied");
             return;
         }
 
@@ -177,11 +371,44 @@ public class ZendriveCordovaPlugin extends CordovaPlugin {
         if (hasValidValueForKey(configJsonObj, kDriveDetectionModeKey)) {
             driveDetectionModeInt = configJsonObj.getInt(kDriveDetectionModeKey);
         } else {
-            ErrorCallback("Wrong drive detection mode supplied");
+            call.error("Wrong drive detection mode supplied");
             return;
         }
 
         ZendriveDriveDetectionMode mode = this.getDriveDetectionModeFromInt(driveDetectionModeInt);
+
+        if (hasValidValueForKey(configJsonObj, kWaypointSimplificationKey)) {
+            try {
+                ZendriveManager.getSharedInstance().setWaypointSimplifier(
+                        WaypointSimplifier.fromJson(configJsonObj.getJSONObject(kWaypointSimplificationKey)));
+            } catch (IllegalArgumentException e) {
+                call.error(e.getMessage());
+                return;
+            }
+        }
+
+        // Apps call setup on every launch; only go through the SDK for what actually changed.
+        final Context context = this.getAppContext();
+        final PluginStateStore stateStore = PluginStateStore.getInstance(context);
+        final String fingerprint = SetupFingerprint.of(applicationKey, driverId,
+                getObjectFromJSONObject(configJsonObj, kDriverAttributesKey));
+        final int modeValue = driveDetectionModeInt;
+        if (fingerprint.equals(stateStore.getSetupFingerprint()) && ZendriveSdk.get().isSDKSetup(context)) {
+            if (modeValue == stateStore.getSetupDetectionMode()) {
+                call.success();
+                return;
+            }
+            ZendriveSdk.get().setZendriveDriveDetectionMode(context, mode, result -> {
+                if (result.isSuccess()) {
+                    stateStore.setSetupDetectionMode(modeValue);
+                    call.success();
+                } else {
+                    call.error("Zendrive setDriveDetectionMode failed", result);
+                }
+            });
+            return;
+        }
+
         ZendriveConfiguration configuration = new ZendriveConfiguration(applicationKey, driverId, mode);
 
         ZendriveDriverAttributes driverAttributes = this.getDriverAttrsFromJsonObject(configJsonObj);
@@ -190,109 +417,246 @@ public class ZendriveCordovaPlugin extends CordovaPlugin {
         }
 
         // setup Zendrive SDK
-        Zendrive.setup(
-                this.getAppContext(),
+        ZendriveSdk.get().setup(
+                context,
                 configuration,
-                ZendriveCordovaBroadcastReceiver.class,
-                ZendriveNotificationProviderImpl.class,
-                BuildCallback("Zendrive setup failed"));
+                result -> {
+                    if (result.isSuccess()) {
+                        stateStore.setAppliedSetup(fingerprint, modeValue);
+                        call.success();
+                    } else {
+                        call.error("Zendrive setup failed", result);
+                    }
+                });
     }
 
     public void setup(final CallbackContext callbackContext, ZendriveConfiguration configuration, ZendriveDriverAttributes driverAttributes) throws JSONException {
         // setup Zendrive SDK
-        Zendrive.setup(
+        ZendriveSdk.get().setup(
                 this.getAppContext(),
                 configuration,
-                ZendriveCordovaBroadcastReceiver.class,
-                ZendriveNotificationProviderImpl.class,
-                BuildCallback("Zendrive setup failed"));
+                new CallResult("setup", callbackContext).callback("Zendrive setup failed"));
     }
 
-    public void teardown() throws JSONException {
-        ZendriveManager.getSharedInstance().teardown(this.getAppContext(),
-                callbackContext);
-        SuccessCallback();
+    void teardown(CallResult call) throws JSONException {
+        ZendriveManager.teardown(this.getAppContext(), call.callback("Zendrive teardown failed"));
+        PluginStateStore.getInstance(getAppContext()).setAppliedSetup(null, PluginStateStore.UNKNOWN_DETECTION_MODE);
+        insurancePeriods.reset();
+        // The SDK no longer tracks any period; close the shift.
+        ShiftMileageAccountant.getInstance(getAppContext()).onPeriodChanged(Period.PERIOD_0.value,
+                System.currentTimeMillis());
     }
 
-    public void goOnDuty() throws JSONException {
-        ZendriveInsurance.startPeriod1(this.getAppContext(),
-                BuildCallback("Zendrive goOnDuty failed"));
+    void goOnDuty(CallResult call) {
+        insurancePeriods.submit(Period.PERIOD_1, "goOnDuty", call);
     }
 
-    public void goOffDuty() throws JSONException {
-        // clear tracking id if not already cleared.
-        ZendriveManager.getSharedInstance().setTrackingId(null);
-        ZendriveInsurance.stopPeriod(this.getAppContext(),
-                BuildCallback("Zendrive goOffDuty failed"));
+    void goOffDuty(CallResult call) {
+        insurancePeriods.submit(Period.PERIOD_0, "goOffDuty", call);
     }
 
-    public void acceptPassengerRequest() throws JSONException {
-        String trackingId = ZendriveManager.getSharedInstance().generateTrackingKey();
-        ZendriveInsurance.startDriveWithPeriod2(
-                this.getAppContext(),
-                trackingId,
-                BuildCallback("Zendrive acceptPassengerRequest failed"));
+    void acceptPassengerRequest(CallResult call) {
+        insurancePeriods.submit(Period.PERIOD_2, "acceptPassengerRequest", call);
     }
 
-    public void pickupPassenger() throws JSONException {
-        String trackingId = ZendriveManager.getSharedInstance().generateTrackingKeyIfNull();
-        ZendriveInsurance.startDriveWithPeriod3(
-                this.getAppContext(),
-                trackingId,
-                BuildCallback("Zendrive acceptPassengerRequest failed"));
+    void pickupPassenger(CallResult call) {
+        insurancePeriods.submit(Period.PERIOD_3, "pickupPassenger", call);
     }
 
-    public void cancelPassengerRequest() throws JSONException {
-        // clear tracking id and go back to period 1
-        ZendriveInsurance.startPeriod1(this.getAppContext(),
-                BuildCallback("Zendrive cancelPassengerRequest failed"));
+    void cancelPassengerRequest(CallResult call) {
+        // go back to period 1
+        insurancePeriods.submit(Period.PERIOD_1, "cancelPassengerRequest", call);
     }
 
-    public void dropoffPassenger() throws JSONException {
-        // clear tracking id and go back to period 1
-        ZendriveInsurance.startPeriod1(this.getAppContext(),
-                BuildCallback("Zendrive dropoffPassenger failed"));
+    void dropoffPassenger(CallResult call) {
+        // go back to period 1
+        insurancePeriods.submit(Period.PERIOD_1, "dropoffPassenger", call);
     }
 
-    public void startDrive(JSONArray args) throws JSONException {
-        Zendrive.startDrive(getAppContextThroughApp(), args.getString(0),
-                BuildCallback("Zendrive startDrive failed"));
+    void startDrive(JSONArray args, CallResult call) throws JSONException {
+        ZendriveSdk.get().startDrive(getAppContextThroughApp(), args.getString(0),
+                call.callback("Zendrive startDrive failed"));
     }
 
-    public void getActiveDriveInfo() throws JSONException {
+    void getActiveDriveInfo(CallResult call) throws JSONException {
         JSONObject activeDriveInfoObject = ZendriveManager.getSharedInstance()
                 .getActiveDriveInfo(this.getAppContext());
-        PluginResult result;
         if (activeDriveInfoObject != null) {
-            result = new PluginResult(PluginResult.Status.OK, activeDriveInfoObject);
+            call.success(activeDriveInfoObject);
         } else {
             String resultStr = null;
-            result = new PluginResult(PluginResult.Status.OK, resultStr);
+            call.success(resultStr);
         }
-        result.setKeepCallback(false);
-        callbackContext.sendPluginResult(result);
     }
 
-    public void stopManualDrive() throws JSONException {
-        Zendrive.stopManualDrive(this.getAppContext(),
-                BuildCallback("Zendrive stopManualDrive failed"));
+    void stopManualDrive(CallResult call) throws JSONException {
+        ZendriveSdk.get().stopManualDrive(this.getAppContext(),
+                call.callback("Zendrive stopManualDrive failed"));
     }
 
-    public void startSession(JSONArray args) throws JSONException {
-        Zendrive.startSession(this.getAppContext(), args.getString(0));
-        if (callbackContext != null) callbackContext.success();
+    void startSession(JSONArray args, CallResult call) throws JSONException {
+        String sessionId = args.getString(0);
+        ZendriveSdk.get().startSession(this.getAppContext(), sessionId);
+        PluginStateStore.getInstance(getAppContext()).setLastSessionId(sessionId);
+        call.success();
     }
 
-    public void stopSession() throws JSONException {
-        Zendrive.stopSession(this.getAppContext());
-        if (callbackContext != null) callbackContext.success();
+    void stopSession(CallResult call) throws JSONException {
+        ZendriveSdk.get().stopSession(this.getAppContext());
+        PluginStateStore.getInstance(getAppContext()).setLastSessionId(null);
+        call.success();
     }
 
-    public void setDriveDetectionMode(JSONArray args) throws JSONException {
+    void setDriveDetectionMode(JSONArray args, CallResult call) throws JSONException {
         Integer driveDetectionModeInt = args.getInt(0);
+        final int modeValue = driveDetectionModeInt;
         ZendriveDriveDetectionMode mode = this.getDriveDetectionModeFromInt(driveDetectionModeInt);
-        Zendrive.setZendriveDriveDetectionMode(this.getAppContext(), mode,
-                BuildCallback("Zendrive setDriveDetectionMode failed"));
+        final PluginStateStore stateStore = PluginStateStore.getInstance(getAppContext());
+        ZendriveSdk.get().setZendriveDriveDetectionMode(this.getAppContext(), mode, result -> {
+            if (result.isSuccess()) {
+                // Keeps the setup fast path comparing against the mode the SDK really has.
+                stateStore.setSetupDetectionMode(modeValue);
+                call.success();
+            } else {
+                call.error("Zendrive setDriveDetectionMode failed", result);
+            }
+        });
+    }
+
+    void addEventListener(JSONArray args, CallResult call) throws JSONException {
+        String type = args.getString(0);
+        if (!ZendriveManager.isEventType(type)) {
+            call.error("Unknown event type " + type);
+            return;
+        }
+        ZendriveManager.getSharedInstance().addEventListener(type, args.getString(1),
+                getFieldsFromJsonArray(args.optJSONArray(2)), DriveEventFilter.fromJson(args.optJSONObject(3)),
+                call.getCallbackContext());
+    }
+
+    /**
+     * @return the field names in {@code fields}, or null (all fields) if it is null or empty.
+     */
+    private static Set<String> getFieldsFromJsonArray(JSONArray fields) throws JSONException {
+        if (fields == null || fields.length() == 0) {
+            return null;
+        }
+        Set<String> names = new HashSet<>();
+        for (int i = 0; i < fields.length(); i++) {
+            names.add(fields.getString(i));
+        }
+        return Collections.unmodifiableSet(names);
+    }
+
+    void setLiveDriveNotification(JSONArray args, CallResult call) throws JSONException {
+        boolean enabled = args.getBoolean(0);
+        double intervalSeconds = args.optDouble(1, InDriveNotificationUpdater.DEFAULT_INTERVAL_MILLIS / 1000.0);
+        long intervalMillis = (long) (intervalSeconds * 1000);
+        ZendriveManager.getSharedInstance().setLiveDriveNotification(enabled, intervalMillis);
+        call.success();
+    }
+
+    void getSettingsHealth(CallResult call) throws JSONException {
+        call.success(SettingsHealthMonitor.getInstance(getAppContext()).getHealth());
+    }
+
+    void getMetrics(JSONArray args, CallResult call) throws JSONException {
+        PluginMetrics metrics = PluginMetrics.getInstance();
+        call.success(metrics.snapshot(AccidentPriorityLane.getInstance(getAppContext())));
+        if (args.optBoolean(0, false)) {
+            metrics.reset();
+        }
+    }
+
+    void getShiftTotals(CallResult call) throws JSONException {
+        ShiftMileageAccountant shiftMileage = ShiftMileageAccountant.getInstance(getAppContext());
+        try {
+            // Brings the distance of the drive in progress up to date.
+            shiftMileage.onDriveProgress(ZendriveSdk.get().getActiveDriveInfo(getAppContext()));
+        } catch (RuntimeException e) {
+            Log.w(TAG, "Could not read active drive", e);
+        }
+        call.success(shiftMileage.getTotals(System.currentTimeMillis()));
+    }
+
+    void queryDrives(JSONArray args, CallResult call) throws JSONException {
+        call.success(DriveHistoryStore.getInstance(getAppContext()).queryDrives(args.optJSONObject(0)));
+    }
+
+    void getDriveWaypoints(JSONArray args, CallResult call) throws JSONException {
+        String driveId = args.getString(0);
+        DriveInfoEncoder.WaypointEncoding encoding;
+        if (args.isNull(1)) {
+            ZendriveManager manager = ZendriveManager.getSharedInstanceOrNull();
+            encoding = manager != null ? manager.getWaypointEncoding() : DriveInfoEncoder.WaypointEncoding.OBJECTS;
+        } else {
+            try {
+                encoding = DriveInfoEncoder.WaypointEncoding.fromString(args.getString(1));
+            } catch (IllegalArgumentException e) {
+                call.error(e.getMessage());
+                return;
+            }
+        }
+        String waypoints;
+        try {
+            waypoints = DriveHistoryStore.getInstance(getAppContext()).getWaypoints(driveId, encoding);
+        } catch (IOException e) {
+            call.error("Failed to read waypoints of drive " + driveId, e);
+            return;
+        }
+        if (waypoints == null) {
+            call.error("No waypoints stored for drive " + driveId);
+            return;
+        }
+        // An array or, for the columnar encodings, an object; either way already encoded.
+        if (waypoints.charAt(0) == '[') {
+            call.success(new EncodedJsonArray(waypoints));
+        } else {
+            call.success(new EncodedJsonObject(waypoints));
+        }
+    }
+
+    void acknowledgeAccident(JSONArray args, CallResult call) throws JSONException {
+        ZendriveManager.getSharedInstance().acknowledgeAccident(args.getString(0));
+        call.success();
+    }
+
+    void removeEventListener(JSONArray args, CallResult call) throws JSONException {
+        ZendriveManager.getSharedInstance().removeEventListener(args.getString(0), args.getString(1));
+        call.success();
+    }
+
+    void setEventBufferCapacity(JSONArray args, CallResult call) throws JSONException {
+        int capacity = args.getInt(0);
+        if (capacity < 1) {
+            call.error("Event buffer capacity must be positive");
+            return;
+        }
+        ZendriveManager.getSharedInstance().setEventBufferCapacity(capacity);
+        call.success();
+    }
+
+    void setWaypointEncoding(JSONArray args, CallResult call) throws JSONException {
+        DriveInfoEncoder.WaypointEncoding encoding;
+        try {
+            encoding = DriveInfoEncoder.WaypointEncoding.fromString(args.getString(0));
+        } catch (IllegalArgumentException e) {
+            call.error(e.getMessage());
+            return;
+        }
+        ZendriveManager.getSharedInstance().setWaypointEncoding(encoding);
+        call.success();
+    }
+
+    void setWaypointSimplification(JSONArray args, CallResult call) throws JSONException {
+        JSONObject options = args.isNull(0) ? null : args.getJSONObject(0);
+        try {
+            ZendriveManager.getSharedInstance().setWaypointSimplifier(WaypointSimplifier.fromJson(options));
+        } catch (IllegalArgumentException e) {
+            call.error(e.getMessage());
+            return;
+        }
+        call.success();
     }
 
     public ZendriveDriveDetectionMode getDriveDetectionModeFromInt(Integer driveDetectionModeInt) {
@@ -304,6 +668,15 @@ public class ZendriveCordovaPlugin extends CordovaPlugin {
     }
 
     public ZendriveDriverAttributes getDriverAttrsFromJsonObject(JSONObject configJsonObj) throws JSONException {
+        Trace.beginSection(TRACE_DRIVER_ATTRIBUTES);
+        try {
+            return driverAttrsFromJsonObject(configJsonObj);
+        } finally {
+            Trace.endSection();
+        }
+    }
+
+    private ZendriveDriverAttributes driverAttrsFromJsonObject(JSONObject configJsonObj) throws JSONException {
         Object driverAttributesObj = getObjectFromJSONObject(configJsonObj, kDriverAttributesKey);
         ZendriveDriverAttributes driverAttributes = null;
         if (null != driverAttributesObj && !JSONObject.NULL.equals(driverAttributesObj)) {
@@ -403,73 +776,4 @@ public class ZendriveCordovaPlugin extends CordovaPlugin {
         }
         return value;
     }
-
-    private ZendriveOperationCallback BuildCallback(String errorMessage) {
-        return result -> HandleZendriveOperationResult(errorMessage, result);
-    }
-
-    private void HandleZendriveOperationResult(String errorMessage, ZendriveOperationResult result) {
-        if (result.isSuccess()) {
-            SuccessCallback();
-        } else {
-            ErrorCallback(errorMessage, result);
-        }
-    }
-
-    private void SuccessCallback() {
-        if (this.callbackContext != null) {
-            final PluginResult result = new PluginResult(PluginResult.Status.OK);
-            this.callbackContext.sendPluginResult(result);
-        } else {
-            Log.d(TAG, "Success");
-        }
-    }
-
-    private void SuccessCallback(String message) {
-        if (this.callbackContext != null) {
-            final PluginResult result = new PluginResult(PluginResult.Status.OK, message);
-            result.setKeepCallback(false);
-            this.callbackContext.sendPluginResult(result);
-        } else {
-            Log.d(TAG, "Success - " + message);
-        }
-    }
-
-    private void SuccessCallback(JSONObject dataObject) {
-        if (this.callbackContext != null) {
-            final PluginResult result = new PluginResult(PluginResult.Status.OK, dataObject);
-            result.setKeepCallback(false);
-            this.callbackContext.sendPluginResult(result);
-        } else {
-            Log.d(TAG, dataObject.toString());
-        }
-    }
-
-    private void ErrorCallback(String errorMessage, Throwable ex) {
-        ErrorCallback(errorMessage
-                .concat(" ").concat(ex.getMessage())
-                .concat("\r\n").concat(getStackTraceString(ex)));
-    }
-
-    private void ErrorCallback(String errorMessage, ZendriveOperationResult result) {
-        ErrorCallback(errorMessage
-                .concat(" ").concat(result.getErrorCode().toString())
-                .concat(" - ").concat(result.getErrorMessage()));
-    }
-
-    private void ErrorCallback(String errorMessage) {
-        if (this.callbackContext != null) {
-            final PluginResult result = new PluginResult(PluginResult.Status.ERROR, errorMessage);
-            this.callbackContext.sendPluginResult(result);
-        } else {
-            Log.d(TAG, errorMessage);
-        }
-    }
-
-    private static String getStackTraceString(Throwable ex) {
-        StringWriter sw = new StringWriter();
-        PrintWriter pw = new PrintWriter(sw);
-        ex.printStackTrace(pw);
-        return sw.toString();
-    }
-}
\ No newline at end of file
+}
@@ -4,21 +4,20 @@ import android.app.Notification;
 import android.app.NotificationManager;
 import android.content.Context;
 import android.content.Intent;
-import android.content.SharedPreferences;
 import android.os.Build;
-import android.preference.PreferenceManager;
+import android.os.SystemClock;
+import android.os.Trace;
+import android.util.Log;
 import androidx.annotation.RequiresApi;
 import androidx.localbroadcastmanager.content.LocalBroadcastManager;
 
 import com.zendrive.sdk.AccidentInfo;
-import com.zendrive.sdk.ActiveDriveInfo;
 import com.zendrive.sdk.AnalyzedDriveInfo;
 import com.zendrive.sdk.DriveInfo;
 import com.zendrive.sdk.DriveResumeInfo;
 import com.zendrive.sdk.DriveStartInfo;
-import com.zendrive.sdk.LocationPointWithTimestamp;
-import com.zendrive.sdk.Zendrive;
 import com.zendrive.sdk.ZendriveInsurancePeriod;
+import com.zendrive.sdk.ZendriveOperationCallback;
 import com.zendrive.sdk.ZendriveOperationResult;
 import org.apache.cordova.CallbackContext;
 import org.apache.cordova.PluginResult;
@@ -26,199 +25,590 @@ import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+
 public class ZendriveManager {
+    private static final String TAG = "ZendriveManager";
 
     // String Constants
     // ZendriveLocationPoint dictionary keys
-    private static final String LATITUDE_KEY = "latitude";
-    private static final String LONGITUDE_KEY = "longitude";
+    static final String LATITUDE_KEY = "latitude";
+    static final String LONGITUDE_KEY = "longitude";
 
     // ZendriveDriveStartInfo dictionary keys
-    private static final String START_TIMESTAMP_KEY = "startTimestamp";
-    private static final String START_LOCATION_KEY = "startLocation";
+    static final String START_TIMESTAMP_KEY = "startTimestamp";
+    static final String START_LOCATION_KEY = "startLocation";
 
     // ZendriveDriveInfo dictionary keys
-    private static final String IS_VALID_KEY = "isValid";
-    private static final String END_TIMESTAMP_KEY = "endTimestamp";
-    private static final String AVERAGE_SPEED_KEY = "averageSpeed";
-    private static final String DISTANCE_KEY = "distance";
-    private static final String WAYPOINTS_KEY = "waypoints";
-    private static final String TRACKING_ID_KEY = "trackingId";
-    private static final String SESSION_ID_KEY = "sessionId";
-    private static final String INSURANCE_PERIOD_KEY = "insurancePeriod";
+    static final String IS_VALID_KEY = "isValid";
+    static final String END_TIMESTAMP_KEY = "endTimestamp";
+    static final String AVERAGE_SPEED_KEY = "averageSpeed";
+    static final String DISTANCE_KEY = "distance";
+    static final String WAYPOINTS_KEY = "waypoints";
+    static final String TRACKING_ID_KEY = "trackingId";
+    static final String SESSION_ID_KEY = "sessionId";
+    static final String INSURANCE_PERIOD_KEY = "insurancePeriod";
+
+    // ZendriveAnalyzedDriveInfo dictionary keys
+    static final String DRIVE_ID_KEY = "driveId";
+    static final String DRIVE_TYPE_KEY = "driveType";
+    static final String MAX_SPEED_KEY = "maxSpeed";
+    static final String SCORE_KEY = "score";
+
+    // ZendriveAccidentInfo dictionary keys
+    static final String ACCIDENT_ID_KEY = "accidentId";
+    static final String TIMESTAMP_KEY = "timestamp";
+    static final String LOCATION_KEY = "location";
+    static final String CONFIDENCE_KEY = "confidence";
+    static final String CONFIDENCE_NUMBER_KEY = "confidenceNumber";
+    static final String RECEIVED_AT_KEY = "receivedAt";
 
     private static final String EVENT_LOCATION_PERMISSION_CHANGE = "location_permission_change";
     private static final String EVENT_LOCATION_SETTING_CHANGE = "location_setting_change";
 
+    // Event types buffered for JS
+    static final String EVENT_DRIVE_START = "driveStart";
+    static final String EVENT_DRIVE_END = "driveEnd";
+    static final String EVENT_DRIVE_RESUME = "driveResume";
+    static final String EVENT_DRIVE_ANALYZED = "driveAnalyzed";
+    static final String EVENT_ACCIDENT = "accident";
+    static final String EVENT_SETTINGS_CHANGE = "settingsChange";
+
+    private static final String[] EVENT_TYPES = {
+            EVENT_DRIVE_START, EVENT_DRIVE_END, EVENT_DRIVE_RESUME, EVENT_DRIVE_ANALYZED, EVENT_ACCIDENT,
+            EVENT_SETTINGS_CHANGE
+    };
+
+    static boolean isEventType(String type) {
+        for (String eventType : EVENT_TYPES) {
+            if (eventType.equals(type)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Systrace sections around the conversion and dispatch paths.
+    private static final String TRACE_GET_ACTIVE_DRIVE = PluginActionRegistry.traceSection("getActiveDriveInfo");
+    private static final String TRACE_FLUSH_EVENTS = PluginActionRegistry.traceSection("flushEvents");
+
     private final Context context;
 
-    // Callbacks
-    private CallbackContext processStartOfDriveCallback;
-    private CallbackContext processEndOfDriveCallback;
+    static final String DELEGATE_LISTENER_ID = "delegate";
 
-    private SharedPreferences prefs;
-    private static ZendriveManager sharedInstance;
+    // JS listeners per event type
+    private final EventListenerRegistry listeners = new EventListenerRegistry();
 
-    public static synchronized ZendriveManager getSharedInstance() {
-        if (sharedInstance == null) {
+    // Events that could not be delivered yet, flushed when the WebView resumes or a
+    // listener registers.
+    private final PendingEventBuffer pendingEvents = new PendingEventBuffer(PendingEventBuffer.DEFAULT_CAPACITY);
+    private volatile boolean webViewActive = true;
+
+    private final AtomicReference<ActiveDriveSnapshot> activeDrive =
+            new AtomicReference<>(ActiveDriveSnapshot.UNKNOWN);
+    private volatile CallbackContext activeDriveChangeCallback;
+
+    private final DriveInfoEncoder driveInfoEncoder = new DriveInfoEncoder();
+    private volatile DriveInfoEncoder.WaypointEncoding waypointEncoding = DriveInfoEncoder.WaypointEncoding.OBJECTS;
+    private volatile WaypointSimplifier waypointSimplifier = WaypointSimplifier.NONE;
+
+    private final PluginStateStore stateStore;
+    private final AccidentPriorityLane accidents;
+    private final PluginMetrics metrics = PluginMetrics.getInstance();
+    private final InDriveNotificationUpdater inDriveNotification;
+    private static final AtomicReference<ZendriveManager> sharedInstance = new AtomicReference<>();
+
+    public static ZendriveManager getSharedInstance() {
+        ZendriveManager manager = sharedInstance.get();
+        if (manager == null) {
             throw new IllegalStateException("This class has to be initialized first!");
         }
-        return sharedInstance;
+        return manager;
     }
 
+    /**
+     * Same as {@link #getSharedInstance()} but returns null instead of throwing when the
+     * manager has not been initialized.
+     */
+    static ZendriveManager getSharedInstanceOrNull() {
+        return sharedInstance.get();
+    }
+
+    /**
+     * Creates the shared instance unless one exists. Safe to call concurrently; only the caller
+     * that installs the instance replays the journal.
+     */
     public static void init(Context context) {
-        if (sharedInstance != null) {
+        if (sharedInstance.get() != null) {
             return;
         }
-        sharedInstance = new ZendriveManager(context);
+        final ZendriveManager manager = new ZendriveManager(context);
+        DriveEventJournal journal = DriveEventJournal.getInstance(context);
+        // Receivers journal under the same lock until the instance is published, and dispatch
+        // to it directly afterwards, so live events always queue behind the journaled ones.
+        synchronized (journal) {
+            if (sharedInstance.get() != null) {
+                return;
+            }
+            // Events that arrived while the plugin was not running in this process.
+            journal.replay(manager.pendingEvents::add);
+            sharedInstance.set(manager);
+        }
     }
 
     private ZendriveManager(Context context) {
         this.context = context.getApplicationContext();
-        prefs = PreferenceManager.getDefaultSharedPreferences(context);
+        stateStore = PluginStateStore.getInstance(context);
+        stateStore.warm();
+        accidents = AccidentPriorityLane.getInstance(context);
+        inDriveNotification = new InDriveNotificationUpdater(context);
     }
 
-    public static synchronized void teardown(Context context, final CallbackContext callbackContext) {
-        if (callbackContext != null) {
-            Zendrive.teardown(context, zendriveOperationResult -> {
-                if (zendriveOperationResult.isSuccess()) {
-                    callbackContext.success();
-                } else {
-                    callbackContext.error(zendriveOperationResult.getErrorMessage());
-                }
-            });
+    /**
+     * Tears the SDK down. The manager stays, with its JS listeners and settings, so that a
+     * later setup works without re-initializing the plugin; only the drive state is reset.
+     */
+    public static void teardown(Context context, final ZendriveOperationCallback callback) {
+        ZendriveSdk.get().teardown(context, callback);
+        ZendriveManager manager = sharedInstance.get();
+        if (manager != null) {
+            manager.setActiveDrive(ActiveDriveSnapshot.NO_DRIVE);
         }
-        sharedInstance = null;
     }
 
     public void setProcessStartOfDriveDelegateCallback(JSONArray args, final CallbackContext callbackContext)
             throws JSONException {
-        PluginResult result = new PluginResult(PluginResult.Status.NO_RESULT);
-        if (null != this.processStartOfDriveCallback) {
-            /*
-             * Delete old callback Sending NO_RESULT doesn't call any js callback method
-             * Setting keepCallback to false would make sure that the callback is deleted
-             * from memory after this call
-             */
-            result.setKeepCallback(false);
+        setDelegateCallback(EVENT_DRIVE_START, args, callbackContext);
+    }
+
+    public void setProcessEndOfDriveDelegateCallback(JSONArray args, final CallbackContext callbackContext)
+            throws JSONException {
+        setDelegateCallback(EVENT_DRIVE_END, args, callbackContext);
+    }
+
+    /**
+     * The delegate callbacks set through {@code registerForDelegateCallbacks} occupy one slot per
+     * event type; setting a new one releases the old one.
+     */
+    private void setDelegateCallback(String type, JSONArray args, CallbackContext callbackContext)
+            throws JSONException {
+        if (null == callbackContext) {
+            return;
         }
-        if (null != callbackContext) {
-            Boolean hasCallback = args.getBoolean(0);
-            if (hasCallback) {
-                this.processStartOfDriveCallback = callbackContext;
-            } else {
-                this.processStartOfDriveCallback = null;
-            }
+        if (args.getBoolean(0)) {
+            addEventListener(type, DELEGATE_LISTENER_ID, null,
+                    DriveEventFilter.fromJson(args.optJSONObject(1)), callbackContext);
+        } else {
+            listeners.remove(type, DELEGATE_LISTENER_ID);
+            PluginResult result = new PluginResult(PluginResult.Status.NO_RESULT);
+            result.setKeepCallback(false);
             callbackContext.sendPluginResult(result);
         }
     }
 
-    public void setProcessEndOfDriveDelegateCallback(JSONArray args, final CallbackContext callbackContext)
-            throws JSONException {
+    /**
+     * Adds a JS listener for {@code type}. Any number of listeners can be registered per type;
+     * registering again with the same {@code listenerId} replaces the earlier one. The listener
+     * receives only the top level {@code fields} of each event, or all of them if null, and
+     * only the events {@code filter} accepts, or all of them if null.
+     */
+    public void addEventListener(String type, String listenerId, Set<String> fields,
+                                 DriveEventFilter filter, CallbackContext callbackContext) {
         PluginResult result = new PluginResult(PluginResult.Status.NO_RESULT);
-        if (null != this.processEndOfDriveCallback) {
-            /*
-             * Delete old callback Sending NO_RESULT doesn't call any js callback method
-             * Setting keepCallback to false would make sure that the callback is deleted
-             * from memory after this call
-             */
-            result.setKeepCallback(false);
+        result.setKeepCallback(true);
+        callbackContext.sendPluginResult(result);
+        EventListenerRegistry.Listener listener = new EventListenerRegistry.Listener(listenerId, callbackContext, fields, filter);
+        listeners.add(type, listener);
+        if (EVENT_ACCIDENT.equals(type)) {
+            sendPendingAccidents(listener);
         }
-        if (null != callbackContext) {
-            Boolean hasCallback = args.getBoolean(0);
-            if (hasCallback) {
-                this.processEndOfDriveCallback = callbackContext;
-            } else {
-                this.processEndOfDriveCallback = null;
-            }
-            callbackContext.sendPluginResult(result);
+        flushPendingEvents(type);
+    }
+
+    public void removeEventListener(String type, String listenerId) {
+        listeners.remove(type, listenerId);
+    }
+
+    /**
+     * The page was reloaded; every JS callback we hold is gone.
+     */
+    public void onReset() {
+        listeners.clear();
+        activeDriveChangeCallback = null;
+    }
+
+    public void setEventBufferCapacity(int capacity) {
+        pendingEvents.setCapacity(capacity);
+    }
+
+    /**
+     * The WebView went to the background; events are buffered until {@link #onResume()}.
+     */
+    public void onPause() {
+        webViewActive = false;
+    }
+
+    public void onResume() {
+        webViewActive = true;
+        // Changes while paused were not pushed; bring the subscriber up to date.
+        CallbackContext listener = activeDriveChangeCallback;
+        ActiveDriveSnapshot snapshot = activeDrive.get();
+        if (listener != null && snapshot != ActiveDriveSnapshot.UNKNOWN) {
+            sendActiveDrive(listener, snapshot);
+        }
+        for (String type : EVENT_TYPES) {
+            flushPendingEvents(type);
         }
     }
 
-    public void onDriveStart(DriveStartInfo driveStartInfo) {
-        if (processStartOfDriveCallback == null || processStartOfDriveCallback.isFinished()) {
+    /**
+     * Delivers the events the receiver journaled while its queue overflowed. The drive state
+     * is read back from the SDK, as the journaled starts and ends never updated it.
+     */
+    void replayJournal() {
+        DriveEventJournal.getInstance(context).replay(pendingEvents::add);
+        refreshActiveDrive();
+        for (String type : EVENT_TYPES) {
+            flushPendingEvents(type);
+        }
+    }
+
+    /**
+     * Delivers an event to its JS listeners, or buffers it if there is no live listener or
+     * the WebView is paused. Listeners always receive an array of events. The event is only
+     * encoded once it is delivered.
+     */
+    void dispatchEvent(DriveEvent event) {
+        pendingEvents.add(event);
+        flushPendingEvents(event.type);
+    }
+
+    private void flushPendingEvents(String type) {
+        if (!webViewActive || !listeners.hasLiveListener(type)) {
             return;
         }
+        Trace.beginSection(TRACE_FLUSH_EVENTS);
         try {
-            JSONObject driveStartInfoObject = new JSONObject();
-            driveStartInfoObject.put(START_TIMESTAMP_KEY, driveStartInfo.startTimeMillis);
+            flushPendingEventsLocked(type);
+        } finally {
+            Trace.endSection();
+        }
+    }
+
+    private void flushPendingEventsLocked(String type) {
+        // Serialize flushes so batches of one type reach JS in order.
+        synchronized (pendingEvents) {
+            if (!pendingEvents.hasEvents(type)) {
+                return;
+            }
+            List<DriveEvent> events = pendingEvents.drain(type);
+            long dropped = pendingEvents.takeDroppedCount();
+            if (dropped > 0) {
+                Log.w(TAG, dropped + " buffered events were dropped before they could be delivered");
+                metrics.recordDroppedEvents(dropped);
+            }
+            // Listeners with the same filter and fields share one encoded batch. Filters are
+            // applied first, so events a listener would discard are never encoded for it.
+            Map<DriveEventFilter, List<DriveEvent>> accepted = new HashMap<>();
+            Map<DriveEventFilter, Map<Set<String>, EncodedJsonArray>> batches = new HashMap<>();
+            for (EventListenerRegistry.Listener listener : listeners.get(type)) {
+                if (!listener.isLive()) {
+                    continue;
+                }
+                List<DriveEvent> listenerEvents = events;
+                if (listener.filter != null) {
+                    listenerEvents = accepted.get(listener.filter);
+                    if (listenerEvents == null) {
+                        listenerEvents = filter(events, listener.filter);
+                        accepted.put(listener.filter, listenerEvents);
+                    }
+                    if (listenerEvents.isEmpty()) {
+                        continue;
+                    }
+                }
+                Map<Set<String>, EncodedJsonArray> byFields = batches.get(listener.filter);
+                if (byFields == null) {
+                    byFields = new HashMap<>();
+                    batches.put(listener.filter, byFields);
+                }
+                EncodedJsonArray batch = byFields.get(listener.fields);
+                if (batch == null) {
+                    batch = encodeBatch(listenerEvents, listener.fields);
+                    byFields.put(listener.fields, batch);
+                    metrics.recordEventPayload(type, batch.toString().length());
+                }
+                PluginResult result = new PluginResult(PluginResult.Status.OK, batch);
+                result.setKeepCallback(true);
+                listener.callbackContext.sendPluginResult(result);
+            }
+        }
+    }
 
-            if (null != driveStartInfo.startLocation) {
-                JSONObject driveStartLocationObject = new JSONObject();
-                driveStartLocationObject.put(LATITUDE_KEY, driveStartInfo.startLocation.latitude);
-                driveStartLocationObject.put(LONGITUDE_KEY, driveStartInfo.startLocation.longitude);
-                driveStartInfoObject.put(START_LOCATION_KEY, driveStartLocationObject);
-            } else {
-                driveStartInfoObject.put(START_LOCATION_KEY, JSONObject.NULL);
+    private static List<DriveEvent> filter(List<DriveEvent> events, DriveEventFilter filter) {
+        List<DriveEvent> accepted = new ArrayList<>(events.size());
+        for (DriveEvent event : events) {
+            if (filter.accepts(event)) {
+                accepted.add(event);
             }
+        }
+        return accepted;
+    }
 
-            PluginResult result = new PluginResult(PluginResult.Status.OK, driveStartInfoObject);
-            result.setKeepCallback(true);
-            processStartOfDriveCallback.sendPluginResult(result);
-        } catch (JSONException e) {
-            e.printStackTrace();
+    private static EncodedJsonArray encodeBatch(List<DriveEvent> events, Set<String> fields) {
+        List<String> encoded = new ArrayList<>(events.size());
+        for (DriveEvent event : events) {
+            try {
+                encoded.add(event.encode(fields));
+            } catch (JSONException | RuntimeException e) {
+                e.printStackTrace();
+            }
+        }
+        return EncodedJsonArray.of(encoded);
+    }
+
+    public void onDriveStart(DriveStartInfo driveStartInfo) {
+        setActiveDrive(ActiveDriveSnapshot.of(driveStartInfo));
+        dispatchEvent(DriveEvent.driveStart(driveStartInfo));
+    }
+
+    static JSONObject toDriveStartJson(DriveStartInfo driveStartInfo, Set<String> fields) throws JSONException {
+        JSONObject driveStartInfoObject = new JSONObject();
+        if (DriveEvent.wants(fields, START_TIMESTAMP_KEY)) {
+            driveStartInfoObject.put(START_TIMESTAMP_KEY, driveStartInfo.startTimeMillis);
+        }
+        if (DriveEvent.wants(fields, START_LOCATION_KEY)) {
+            driveStartInfoObject.put(START_LOCATION_KEY, DriveEvent.toLocationJson(driveStartInfo.startLocation));
         }
+        return driveStartInfoObject;
     }
 
+    /**
+     * Information about the drive in progress, or null if there is none. Served from the
+     * cached snapshot; the SDK is only asked if nothing has been observed yet.
+     */
     public JSONObject getActiveDriveInfo(Context context) {
+        Trace.beginSection(TRACE_GET_ACTIVE_DRIVE);
         try {
-            JSONObject activeDriveInfoObject = new JSONObject();
-            ActiveDriveInfo activeDriveInfo = Zendrive.getActiveDriveInfo(context);
-            activeDriveInfoObject.put(START_TIMESTAMP_KEY, activeDriveInfo.startTimeMillis);
-            activeDriveInfoObject.put(TRACKING_ID_KEY,
-                    (activeDriveInfo.trackingId != null) ? activeDriveInfo.trackingId : JSONObject.NULL);
-            activeDriveInfoObject.put(SESSION_ID_KEY,
-                    (activeDriveInfo.sessionId != null) ? activeDriveInfo.sessionId : JSONObject.NULL);
-            activeDriveInfoObject.put(INSURANCE_PERIOD_KEY,
-                    (activeDriveInfo.insurancePeriod != null) ? GetPeriodInt(activeDriveInfo.insurancePeriod) : JSONObject.NULL);
-            return activeDriveInfoObject;
+            ActiveDriveSnapshot snapshot = activeDrive.get();
+            if (snapshot == ActiveDriveSnapshot.UNKNOWN) {
+                snapshot = refreshActiveDrive();
+            }
+            return snapshot.toJson();
+        } finally {
+            Trace.endSection();
+        }
+    }
+
+    /**
+     * Re-reads the active drive from the SDK and publishes it, unless a drive event replaced
+     * the snapshot in the meantime.
+     */
+    ActiveDriveSnapshot refreshActiveDrive() {
+        ActiveDriveSnapshot before = activeDrive.get();
+        ActiveDriveSnapshot fresh;
+        try {
+            fresh = ActiveDriveSnapshot.of(ZendriveSdk.get().getActiveDriveInfo(context));
         } catch (Exception e) {
             e.printStackTrace();
+            return before == ActiveDriveSnapshot.UNKNOWN ? ActiveDriveSnapshot.NO_DRIVE : before;
+        }
+        if (!publishActiveDrive(before, fresh)) {
+            return activeDrive.get();
         }
-        return null;
+        return fresh;
     }
-	
-    public void onDriveEnd(DriveInfo driveInfo) {
-        if (processEndOfDriveCallback == null || processEndOfDriveCallback.isFinished()) {
+
+    /**
+     * The insurance period changed, which also changes the active drive's period and tracking id.
+     */
+    public void onInsurancePeriodChanged() {
+        refreshActiveDrive();
+    }
+
+    private boolean publishActiveDrive(ActiveDriveSnapshot expected, ActiveDriveSnapshot snapshot) {
+        if (!activeDrive.compareAndSet(expected, snapshot)) {
+            return false;
+        }
+        if (expected == ActiveDriveSnapshot.UNKNOWN || !expected.sameDriveAs(snapshot)) {
+            notifyActiveDriveChanged(snapshot);
+            inDriveNotification.onActiveDriveChanged(snapshot);
+        }
+        return true;
+    }
+
+    private void setActiveDrive(ActiveDriveSnapshot snapshot) {
+        ActiveDriveSnapshot current;
+        do {
+            current = activeDrive.get();
+        } while (!publishActiveDrive(current, snapshot));
+    }
+
+    public void setActiveDriveChangeCallback(JSONArray args, final CallbackContext callbackContext)
+            throws JSONException {
+        boolean hasCallback = args.getBoolean(0);
+        CallbackContext previous = this.activeDriveChangeCallback;
+        this.activeDriveChangeCallback = hasCallback ? callbackContext : null;
+        if (previous != null && !previous.isFinished()) {
+            // Release the old JS callback.
+            PluginResult release = new PluginResult(PluginResult.Status.NO_RESULT);
+            release.setKeepCallback(false);
+            previous.sendPluginResult(release);
+        }
+        if (hasCallback) {
+            // Start the subscriber off with the current state.
+            ActiveDriveSnapshot snapshot = activeDrive.get();
+            sendActiveDrive(callbackContext, snapshot == ActiveDriveSnapshot.UNKNOWN ? refreshActiveDrive() : snapshot);
+        } else {
+            PluginResult result = new PluginResult(PluginResult.Status.NO_RESULT);
+            result.setKeepCallback(false);
+            callbackContext.sendPluginResult(result);
+        }
+    }
+
+    private void notifyActiveDriveChanged(ActiveDriveSnapshot snapshot) {
+        CallbackContext listener = activeDriveChangeCallback;
+        if (listener != null && webViewActive) {
+            sendActiveDrive(listener, snapshot);
+        }
+    }
+
+    private static void sendActiveDrive(CallbackContext listener, ActiveDriveSnapshot snapshot) {
+        if (listener.isFinished()) {
             return;
         }
-        try {
-            JSONObject driveInfoObject = new JSONObject();
-            driveInfoObject.put(START_TIMESTAMP_KEY, driveInfo.startTimeMillis);
-            driveInfoObject.put(END_TIMESTAMP_KEY, driveInfo.endTimeMillis);
+        JSONObject json = snapshot.toJson();
+        PluginResult result = json != null
+                ? new PluginResult(PluginResult.Status.OK, json)
+                : new PluginResult(PluginResult.Status.OK, (String) null);
+        result.setKeepCallback(true);
+        listener.sendPluginResult(result);
+    }
+	
+    public void onDriveEnd(DriveInfo driveInfo) {
+        setActiveDrive(ActiveDriveSnapshot.NO_DRIVE);
+        dispatchEvent(DriveEvent.driveEnd(driveInfo, waypointSimplifier, waypointEncoding, driveInfoEncoder));
+    }
 
-            driveInfoObject.put(AVERAGE_SPEED_KEY, driveInfo.averageSpeed);
-            driveInfoObject.put(DISTANCE_KEY, driveInfo.distanceMeters);
+    /**
+     * Turns the live in-drive notification on or off and sets how often it may be updated.
+     */
+    public void setLiveDriveNotification(boolean enabled, long intervalMillis) {
+        inDriveNotification.setIntervalMillis(intervalMillis);
+        inDriveNotification.setEnabled(enabled);
+    }
 
-            int waypointsCount = 0;
-            if (null != driveInfo.waypoints) {
-                waypointsCount = driveInfo.waypoints.size();
-            }
-            JSONArray waypointsArray = new JSONArray();
-            for (int i = 0; i < waypointsCount; i++) {
-                LocationPointWithTimestamp locationPoint = driveInfo.waypoints.get(i);
-
-                JSONObject driveLocationObject = new JSONObject();
-                driveLocationObject.put(LATITUDE_KEY, locationPoint.location.latitude);
-                driveLocationObject.put(LONGITUDE_KEY, locationPoint.location.longitude);
-                waypointsArray.put(driveLocationObject);
-            }
-            driveInfoObject.put(WAYPOINTS_KEY, waypointsArray);
+    /**
+     * The live in-drive notification, or null if none is showing.
+     */
+    Notification getInDriveNotification() {
+        return inDriveNotification.getNotification();
+    }
+
+    public void setWaypointSimplifier(WaypointSimplifier simplifier) {
+        this.waypointSimplifier = simplifier == null ? WaypointSimplifier.NONE : simplifier;
+    }
+
+    public void setWaypointEncoding(DriveInfoEncoder.WaypointEncoding encoding) {
+        this.waypointEncoding = encoding;
+    }
 
-            PluginResult result = new PluginResult(PluginResult.Status.OK, driveInfoObject);
-            result.setKeepCallback(true);
-            processEndOfDriveCallback.sendPluginResult(result);
+    DriveInfoEncoder.WaypointEncoding getWaypointEncoding() {
+        return waypointEncoding;
+    }
+
+    WaypointSimplifier getWaypointSimplifier() {
+        return waypointSimplifier;
+    }
+
+    public void onDriveResume(DriveResumeInfo driveResumeInfo) {
+        setActiveDrive(ActiveDriveSnapshot.of(driveResumeInfo));
+        dispatchEvent(DriveEvent.driveResume(driveResumeInfo));
+    }
+
+    /**
+     * Accidents skip the event buffer and are sent right away, even while the WebView is
+     * paused; see {@link AccidentPriorityLane}.
+     */
+    public void onAccident(AccidentInfo accidentInfo) {
+        long receivedElapsedMillis = SystemClock.elapsedRealtime();
+        long receivedAtMillis = System.currentTimeMillis();
+        DriveEvent event = DriveEvent.accident(accidentInfo, receivedAtMillis);
+        try {
+            accidents.record(accidentInfo.accidentId, receivedAtMillis, event.encode(null));
         } catch (JSONException e) {
             e.printStackTrace();
         }
+        boolean delivered = sendNow(event);
+        if (delivered) {
+            accidents.recordDelivery(receivedElapsedMillis);
+        }
+        if (!delivered || !webViewActive) {
+            accidents.notifyUser();
+        }
     }
 
-    public void onDriveResume(DriveResumeInfo driveResumeInfo) {
+    /**
+     * JS handled the accident; it is no longer re-sent to new listeners.
+     */
+    public void acknowledgeAccident(String accidentId) {
+        accidents.acknowledge(accidentId);
+    }
 
+    /**
+     * Sends the unacknowledged accidents to every live accident listener, e.g. after an
+     * accident was persisted while the manager was being created.
+     */
+    void sendPendingAccidents() {
+        for (EventListenerRegistry.Listener listener : listeners.get(EVENT_ACCIDENT)) {
+            sendPendingAccidents(listener);
+        }
     }
 
-    public void onAccident(AccidentInfo accidentInfo) {
+    private void sendPendingAccidents(EventListenerRegistry.Listener listener) {
+        List<AccidentPriorityLane.PendingAccident> pending = accidents.getPending();
+        if (pending.isEmpty() || !listener.isLive()) {
+            return;
+        }
+        List<String> encoded = new ArrayList<>(pending.size());
+        for (AccidentPriorityLane.PendingAccident accident : pending) {
+            encoded.add(accident.encodedEvent);
+        }
+        EncodedJsonArray batch = EncodedJsonArray.of(encoded);
+        metrics.recordEventPayload(EVENT_ACCIDENT, batch.toString().length());
+        PluginResult result = new PluginResult(PluginResult.Status.OK, batch);
+        result.setKeepCallback(true);
+        listener.callbackContext.sendPluginResult(result);
+    }
 
+    /**
+     * Sends {@code event} to every live listener of its type without buffering.
+     *
+     * @return whether any listener was sent the event.
+     */
+    private boolean sendNow(DriveEvent event) {
+        boolean sent = false;
+        for (EventListenerRegistry.Listener listener : listeners.get(event.type)) {
+            if (!listener.isLive()) {
+                continue;
+            }
+            try {
+                EncodedJsonArray batch = EncodedJsonArray.of(Collections.singletonList(event.encode(listener.fields)));
+                metrics.recordEventPayload(event.type, batch.toString().length());
+                PluginResult result = new PluginResult(PluginResult.Status.OK, batch);
+                result.setKeepCallback(true);
+                listener.callbackContext.sendPluginResult(result);
+                sent = true;
+            } catch (JSONException e) {
+                e.printStackTrace();
+            }
+        }
+        return sent;
     }
 
     public void onLocationPermissionsChange(boolean granted) {
@@ -272,10 +662,11 @@ public class ZendriveManager {
     }
 
     public void onDriveAnalyzed(AnalyzedDriveInfo analyzedDriveInfo) {
-
+        dispatchEvent(DriveEvent.driveAnalyzed(analyzedDriveInfo, waypointSimplifier, waypointEncoding,
+                driveInfoEncoder));
     }
 
-    public int GetPeriodInt(ZendriveInsurancePeriod period) {
+    public static int GetPeriodInt(ZendriveInsurancePeriod period) {
         switch (period) {
             case Period1: return 1;
             case Period2: return 2;
@@ -290,11 +681,11 @@ public class ZendriveManager {
     }
 
     public String getTrackingId() {
-        return prefs.getString(TRACKING_ID_KEY, null);
+        return stateStore.getTrackingId();
     }
 
     public void setTrackingId(String trackingId) {
-        prefs.edit().putString(TRACKING_ID_KEY, trackingId).apply();
+        stateStore.setTrackingId(trackingId);
     }
 
     public String generateTrackingKey() {
@@ -304,10 +695,6 @@ public class ZendriveManager {
     }
 
     public String generateTrackingKeyIfNull() {
-        String trackingId = getTrackingId();
-        if (getTrackingId() == null)
-            trackingId = generateTrackingKey();
-
-        return trackingId;
+        return stateStore.getOrSetTrackingId(((Long) System.currentTimeMillis()).toString());
     }
 }
@@ -1,5 +1,6 @@
 package com.zendrive.phonegap;
 
+import android.app.Notification;
 import android.content.Context;
 import android.os.Build;
 
@@ -38,8 +39,11 @@ public class ZendriveNotificationProviderImpl implements ZendriveNotificationPro
     @Override
     @RequiresApi(Build.VERSION_CODES.O)
     public ZendriveNotificationContainer getInDriveNotificationContainer(@NonNull Context context) {
+        // Keep showing the live drive details if the plugin already posted them.
+        ZendriveManager manager = ZendriveManager.getSharedInstanceOrNull();
+        Notification liveNotification = manager != null ? manager.getInDriveNotification() : null;
         return new ZendriveNotificationContainer(
                 NotificationUtility.FOREGROUND_MODE_NOTIFICATION_ID,
-                NotificationUtility.createInDriveNotification(context));
+                liveNotification != null ? liveNotification : NotificationUtility.createInDriveNotification(context));
     }
 }
@@ -0,0 +1,63 @@
+package com.zendrive.phonegap;
+
+import android.content.Context;
+
+import com.zendrive.sdk.ActiveDriveInfo;
+import com.zendrive.sdk.ZendriveConfiguration;
+import com.zendrive.sdk.ZendriveDriveDetectionMode;
+import com.zendrive.sdk.ZendriveOperationCallback;
+import com.zendrive.sdk.ZendriveSettingsCallback;
+
+/**
+ * The Zendrive SDK calls the plugin makes, so that they can be served by something other than
+ * the SDK. {@link DefaultZendriveSdk} forwards to the static {@code Zendrive} and
+ * {@code ZendriveInsurance} methods; the JVM benchmarks in {@code jvm/benchmarks} install a
+ * {@code SimulatedZendriveSdk} that replays drive traces instead.
+ * The plugin always goes through {@link #get()}.
+ */
+interface ZendriveSdk {
+
+    void setup(Context context, ZendriveConfiguration configuration, ZendriveOperationCallback callback);
+
+    boolean isSDKSetup(Context context);
+
+    void teardown(Context context, ZendriveOperationCallback callback);
+
+    void setZendriveDriveDetectionMode(Context context, ZendriveDriveDetectionMode mode,
+                                       ZendriveOperationCallback callback);
+
+    void startDrive(Context context, String trackingId, ZendriveOperationCallback callback);
+
+    void stopManualDrive(Context context, ZendriveOperationCallback callback);
+
+    void startSession(Context context, String sessionId);
+
+    void stopSession(Context context);
+
+    ActiveDriveInfo getActiveDriveInfo(Context context);
+
+    void getZendriveSettings(Context context, ZendriveSettingsCallback callback);
+
+    void startPeriod1(Context context, ZendriveOperationCallback callback);
+
+    void startDriveWithPeriod2(Context context, String trackingId, ZendriveOperationCallback callback);
+
+    void startDriveWithPeriod3(Context context, String trackingId, ZendriveOperationCallback callback);
+
+    void stopPeriod(Context context, ZendriveOperationCallback callback);
+
+    /**
+     * The implementation in use.
+     */
+    static ZendriveSdk get() {
+        return DefaultZendriveSdk.current;
+    }
+
+    /**
+     * Replaces the implementation, e.g. with a simulated one for benchmarks and tests.
+     * Must be called before the plugin is initialized.
+     */
+    static void install(ZendriveSdk sdk) {
+        DefaultZendriveSdk.current = sdk != null ? sdk : DefaultZendriveSdk.INSTANCE;
+    }
+}
@@ -45,24 +45,287 @@ Zendrive.ZendriveCallback = function (processStartOfDrive, processEndOfDrive, pr
     this.processLocationDenied = processLocationDenied;
 };
 
-Zendrive.registerForDelegateCallbacks = function (zendriveCallback) {
+/**
+ * Native side delivers drive events in batches (arrays), buffering them while the app is in the
+ * background. Unwraps a batch and invokes the callback once per event, in order.
+ */
+var eachEvent = function (callback) {
+    if (null == callback) {
+        return null;
+    }
+    return function (events) {
+        if (!Array.isArray(events)) {
+            callback(events);
+            return;
+        }
+        for (var i = 0; i < events.length; i++) {
+            callback(events[i]);
+        }
+    };
+};
+
+/**
+ * Conditions a drive event must meet to be delivered; events that fail them are dropped on the
+ * native side before they are serialized. A condition only applies to events that carry the
+ * value it checks, e.g. minDistanceMeters does not hold back a drive start. Accidents are
+ * always delivered. Android only.
+ *
+ * @typedef {Object} Zendrive.ZendriveEventFilter
+ * @property {Number} [minDistanceMeters] - Minimum drive distance.
+ * @property {Number} [minDurationMillis] - Minimum drive duration.
+ * @property {Boolean} [isValid] - Only drives the SDK classified as a car drive (true) or
+ * only those it did not (false).
+ * @property {Number[]} [insurancePeriods] - Insurance periods (0 to 3) the drive may be in.
+ * @property {String} [trackingIdPrefix] - Prefix the drive's trackingId must start with.
+ */
+
+/**
+ * @param {Object} zendriveCallback - Delegate callbacks; null clears them all.
+ * @param {Zendrive.ZendriveEventFilter} [filter] - Applied to processStartOfDrive and
+ * processEndOfDrive.
+ */
+Zendrive.registerForDelegateCallbacks = function (zendriveCallback, filter) {
     var callbackNotNull = (null != zendriveCallback);
+    filter = filter || null;
 
     // We are allowing to clear out existing individual callbacks by sending null
     // for callback and the bool as false for first argument
     var processStartOfDriveCallback = callbackNotNull ? zendriveCallback.processStartOfDrive : null;
-    exec(processStartOfDriveCallback, null, "Zendrive", "setProcessStartOfDriveDelegateCallback",
-        [(null != processStartOfDriveCallback), processStartOfDriveCallback]);
+    exec(eachEvent(processStartOfDriveCallback), null, "Zendrive", "setProcessStartOfDriveDelegateCallback",
+        [(null != processStartOfDriveCallback), filter]);
 
     var processEndOfDriveCallback = callbackNotNull ? zendriveCallback.processEndOfDrive : null;
-    exec(processEndOfDriveCallback, null, "Zendrive", "setProcessEndOfDriveDelegateCallback",
-        [(null != processEndOfDriveCallback)]);
+    exec(eachEvent(processEndOfDriveCallback), null, "Zendrive", "setProcessEndOfDriveDelegateCallback",
+        [(null != processEndOfDriveCallback), filter]);
 
     var processLocationDeniedCallback = callbackNotNull ? zendriveCallback.processLocationDenied : null;
     exec(processLocationDeniedCallback, null, "Zendrive", "setProcessLocationDeniedDelegateCallback",
         [(null != processLocationDeniedCallback)]);
 };
 
+/**
+ * Drive event types that can be subscribed to with @{@link Zendrive.addEventListener}.
+ * @enum {String}
+ */
+Zendrive.ZendriveEventType = {
+    /** Receives a @{@link Zendrive.ZendriveDriveStartInfo}. */
+    DRIVE_START: "driveStart",
+
+    /** Receives a @{@link Zendrive.ZendriveDriveInfo}. */
+    DRIVE_END: "driveEnd",
+
+    /**
+     * Receives the resumed drive: driveId, startTimestamp, trackingId, sessionId and
+     * insurancePeriod.
+     */
+    DRIVE_RESUME: "driveResume",
+
+    /**
+     * Receives the analyzed drive: the fields of a @{@link Zendrive.ZendriveDriveInfo} plus
+     * driveId, trackingId, sessionId, insurancePeriod, driveType, maxSpeed and score.
+     */
+    DRIVE_ANALYZED: "driveAnalyzed",
+
+    /**
+     * Receives the accident: accidentId, driveId, timestamp, location, confidence,
+     * confidenceNumber, trackingId, sessionId and receivedAt (when the device received it).
+     * Accidents are not buffered: they are sent as soon as they are received and again to
+     * every new listener until they are acknowledged with @{@link Zendrive.acknowledgeAccident}.
+     */
+    ACCIDENT: "accident",
+
+    /**
+     * Receives the SDK's settings health when its errors or warnings change: errors and warnings
+     * (current setting types), errorsAdded, errorsRemoved, warningsAdded, warningsRemoved and
+     * checkedAt.
+     */
+    SETTINGS_CHANGE: "settingsChange"
+};
+
+var eventListeners = [];
+var nextEventListenerId = 1;
+
+/**
+ * Adds a listener for a drive event type. Unlike @{@link Zendrive.registerForDelegateCallbacks},
+ * any number of listeners can be registered for the same type. Android only.
+ *
+ * @param {Zendrive.ZendriveEventType} type - Event type to listen for.
+ * @param {Function} callback - Called once per event.
+ * @param {Zendrive.failureCallback} errorCallback - Called if the listener could not be added.
+ * @param {Object} [options]
+ * @param {String[]} [options.fields] - Top level fields to receive, e.g. ["score"] for
+ * DRIVE_ANALYZED. All fields are sent if omitted. Fields that are not asked for are never
+ * serialized on the native side.
+ * @param {Zendrive.ZendriveEventFilter} [options.filter] - Only events meeting these conditions
+ * are delivered.
+ */
+Zendrive.addEventListener = function (type, callback, errorCallback, options) {
+    var id = "listener" + (nextEventListenerId++);
+    var fields = (options && options.fields) ? options.fields : null;
+    var filter = (options && options.filter) ? options.filter : null;
+    eventListeners.push({type: type, callback: callback, id: id});
+    exec(eachEvent(callback), errorCallback, "Zendrive", "addEventListener", [type, id, fields, filter]);
+};
+
+/**
+ * Removes a listener added with @{@link Zendrive.addEventListener}.
+ *
+ * @param {Zendrive.ZendriveEventType} type - Event type the listener was added for.
+ * @param {Function} callback - The callback that was passed to addEventListener.
+ */
+Zendrive.removeEventListener = function (type, callback) {
+    for (var i = 0; i < eventListeners.length; i++) {
+        var listener = eventListeners[i];
+        if (listener.type === type && listener.callback === callback) {
+            eventListeners.splice(i, 1);
+            exec(null, null, "Zendrive", "removeEventListener", [type, listener.id]);
+            return;
+        }
+    }
+};
+
+/**
+ * Acknowledges an accident received by an ACCIDENT listener, so it is no longer re-sent and
+ * its notification is removed. Android only.
+ *
+ * @param {String} accidentId - The accidentId of the accident.
+ */
+Zendrive.acknowledgeAccident = function (accidentId, successCallback, errorCallback) {
+    exec(successCallback, errorCallback, "Zendrive", "acknowledgeAccident", [accidentId]);
+};
+
+/**
+ * Shows the distance and insurance period of the current drive in the in-drive foreground
+ * notification, with the elapsed time as a running clock. The notification is updated at
+ * most once per interval and only when its text changed. Enabled by default. Android only.
+ *
+ * @param {Boolean} enabled - False to show the static in-drive notification instead.
+ * @param {Number} [intervalSeconds] - Minimum time between updates. Defaults to 15, at least 1.
+ */
+Zendrive.setLiveDriveNotification = function (enabled, intervalSeconds, successCallback, errorCallback) {
+    exec(successCallback, errorCallback, "Zendrive", "setLiveDriveNotification",
+        [!!enabled, intervalSeconds == null ? null : intervalSeconds]);
+};
+
+/**
+ * Returns the last known settings health without asking the SDK: errors and warnings (setting
+ * types) and checkedAt, the time of the check, or null if none has completed yet. In that case
+ * a check is started and its result is sent to SETTINGS_CHANGE listeners. Android only.
+ *
+ * @param {Function} successCallback - Called with the settings health.
+ * @param {Zendrive.failureCallback} errorCallback
+ */
+Zendrive.getSettingsHealth = function (successCallback, errorCallback) {
+    exec(successCallback, errorCallback, "Zendrive", "getSettingsHealth", []);
+};
+
+/**
+ * Returns a snapshot of the plugin's native metrics. Android only.
+ *
+ * For every action: calls, errors, and histograms of queueWaitMicros (time until the call
+ * started running), handlerMicros (time the native handler ran, including synchronous SDK
+ * calls) and completionMicros (time until the result was sent). For every event type a
+ * histogram of payloadBytes per batch sent to JS, and droppedEvents, the number of buffered
+ * events dropped because the buffer was full. Histograms have count, sum, max and counts
+ * per bucket; the bucket bounds are latencyBoundsMicros and payloadBoundsBytes, with one more
+ * bucket for larger values.
+ *
+ * @param {Function} successCallback - Called with the snapshot.
+ * @param {Zendrive.failureCallback} errorCallback
+ * @param {Boolean} [reset] - Clear the metrics after taking the snapshot.
+ */
+Zendrive.getMetrics = function (successCallback, errorCallback, reset) {
+    exec(successCallback, errorCallback, "Zendrive", "getMetrics", [!!reset]);
+};
+
+/**
+ * Runs several commands with one call across the bridge. Commands run in order on the native
+ * side, each one after the previous has completed. Android only.
+ *
+ * Every command is an object with the native action name and its arguments, e.g.
+ * {action: "setup", args: [config]}, {action: "startSession", args: [sessionId]},
+ * {action: "setDriveDetectionMode", args: [mode]}, {action: "goOnDuty"}. Actions that keep
+ * their callback (delegate callbacks, event listeners, setActiveDriveChangeCallback) cannot be
+ * batched.
+ *
+ * The success callback receives one array with an entry per command: action, status ("ok",
+ * "error" or "skipped") and result, the value the action passes to its own callback.
+ *
+ * @param {Object[]} commands - Commands to run.
+ * @param {Function} successCallback - Called with the per-command results.
+ * @param {Zendrive.failureCallback} errorCallback - Called if the batch itself is malformed.
+ * @param {Object} [options]
+ * @param {Boolean} [options.stopOnError=true] - Skip the remaining commands after one fails;
+ * when false every command runs.
+ */
+Zendrive.batch = function (commands, successCallback, errorCallback, options) {
+    var stopOnError = !(options && options.stopOnError === false);
+    exec(successCallback, errorCallback, "Zendrive", "batch", [commands, {stopOnError: stopOnError}]);
+};
+
+/**
+ * Returns one page of the drives stored on the device, newest first. Drives are stored when
+ * they end and updated once they are analyzed. Android only.
+ *
+ * The success callback receives {drives, cursor}. Every drive has driveId, startTimestamp,
+ * endTimestamp, distance, averageSpeed, maxSpeed, trackingId, sessionId, insurancePeriod,
+ * driveType, analyzed and waypointCount. Pass cursor back to get the next page; it is null on
+ * the last page.
+ *
+ * @param {Object} [options]
+ * @param {Number} [options.from] - Earliest start time in milliseconds, inclusive.
+ * @param {Number} [options.to] - Latest start time in milliseconds, exclusive.
+ * @param {Number} [options.period] - Only drives in this insurance period (1, 2 or 3).
+ * @param {String} [options.trackingId] - Only drives with this tracking id.
+ * @param {Number} [options.limit=50] - Drives per page, at most 200.
+ * @param {String} [options.cursor] - Cursor of the previous page.
+ * @param {Function} successCallback - Called with the page.
+ * @param {Zendrive.failureCallback} errorCallback
+ */
+Zendrive.queryDrives = function (options, successCallback, errorCallback) {
+    exec(successCallback, errorCallback, "Zendrive", "queryDrives", [options || {}]);
+};
+
+/**
+ * Returns the waypoints stored for a drive. Android only.
+ *
+ * @param {String} driveId - Drive id from @{@link Zendrive.queryDrives}.
+ * @param {Function} successCallback - Called with the waypoints.
+ * @param {Zendrive.failureCallback} errorCallback - Called if none are stored.
+ * @param {String} [encoding] - "objects", "columnar" or "delta"; defaults to the encoding set
+ * with @{@link Zendrive.setWaypointEncoding}.
+ */
+Zendrive.getDriveWaypoints = function (driveId, successCallback, errorCallback, encoding) {
+    exec(successCallback, errorCallback, "Zendrive", "getDriveWaypoints", [driveId, encoding || null]);
+};
+
+/**
+ * Returns the distance and time per insurance period of the current duty shift, or of the last
+ * one if the driver is off duty. A shift starts with @{@link Zendrive.goOnDuty} and ends with
+ * @{@link Zendrive.goOffDuty}. Android only.
+ *
+ * The success callback receives active, shiftStart, shiftEnd (null while active), period (the
+ * current one), periods ({"1": {meters, millis, drives}, "2": .., "3": ..}), totalMeters and
+ * totalMillis. Time in the current period is included up to now, and so is the distance of the
+ * drive in progress as the SDK reports it when this is called.
+ *
+ * @param {Function} successCallback - Called with the totals.
+ * @param {Zendrive.failureCallback} errorCallback
+ */
+Zendrive.getShiftTotals = function (successCallback, errorCallback) {
+    exec(successCallback, errorCallback, "Zendrive", "getShiftTotals", []);
+};
+
+/**
+ * Sets how many undelivered drive events are kept while no listener is registered or the app is
+ * in the background. When the limit is reached the oldest event is dropped. Android only.
+ *
+ * @param {Number} capacity - Maximum number of buffered events. Defaults to 64.
+ */
+Zendrive.setEventBufferCapacity = function (capacity, successCallback, errorCallback) {
+    exec(successCallback, errorCallback, "Zendrive", "setEventBufferCapacity", [capacity]);
+};
+
 /**
  * Initializes the Zendrive library to automatically detect driving and collect data.
  * Client code should call this method before anything else in the Zendrive API.
@@ -133,6 +396,18 @@ Zendrive.getActiveDriveInfo = function (callback) {
     exec(activeDriveCallback, null, "Zendrive", "getActiveDriveInfo", []);
 };
 
+/**
+ * Subscribes to changes of the active drive instead of polling @{@link Zendrive.getActiveDriveInfo}.
+ * The callback is called right away with the current state, and again whenever a drive starts,
+ * resumes or ends, or the insurance period changes. Android only.
+ *
+ * @param {Zendrive.activeDriveCallback} callback - Receives the active drive, or null if there is
+ * none. Pass null to unsubscribe.
+ */
+Zendrive.setActiveDriveChangeCallback = function (callback) {
+    exec(callback, null, "Zendrive", "setActiveDriveChangeCallback", [(null != callback)]);
+};
+
 /**
  * This should be called to indicate the end of a drive started by invoking @{@link Zendrive.startDrive}
  *
@@ -182,9 +457,116 @@ Zendrive.setDriveDetectionMode = function (driveDetectionMode) {
     exec(null, null, "Zendrive", "setDriveDetectionMode", [driveDetectionMode]);
 };
 
+/**
+ * Waypoint layouts for @{@link Zendrive.ZendriveDriveInfo}.waypoints. Android only; iOS always
+ * sends objects.
+ * @enum {String}
+ */
+Zendrive.ZendriveWaypointEncoding = {
+    /** Array of @{@link Zendrive.ZendriveLocationPoint}. This is the default. */
+    OBJECTS: "objects",
+
+    /** Parallel latitude, longitude and timestamp arrays. */
+    COLUMNAR: "columnar",
+
+    /** Parallel arrays of fixed-point values, each entry a delta to the previous one. Smallest payload. */
+    DELTA: "delta"
+};
+
+/**
+ * Selects how waypoints are encoded in end of drive payloads. Use @{@link Zendrive.decodeWaypoints}
+ * to get @{@link Zendrive.ZendriveLocationPoint}s back from any encoding.
+ *
+ * @param {Zendrive.ZendriveWaypointEncoding} encoding
+ */
+Zendrive.setWaypointEncoding = function (encoding, successCallback, errorCallback) {
+    exec(successCallback, errorCallback, "Zendrive", "setWaypointEncoding", [encoding]);
+};
+
+/**
+ * @class Options that reduce the number of waypoints sent with end of drive payloads. Stages
+ * run in the order listed and a stage is skipped when its value is 0. The first and last
+ * waypoint are always kept. Android only.
+ * @constructor
+ */
+Zendrive.ZendriveWaypointSimplification = function () {
+    /**
+     * Drop waypoints closer in time than this to the previous kept waypoint.
+     * @type {Number}
+     */
+    this.minIntervalMillis = 0;
+
+    /**
+     * Douglas-Peucker tolerance in meters. Waypoints closer than this to the simplified
+     * line are dropped.
+     * @type {Number}
+     */
+    this.toleranceMeters = 0;
+
+    /**
+     * Maximum number of waypoints to send, sampled evenly along the drive. Must be at least 2.
+     * @type {Number}
+     */
+    this.maxPoints = 0;
+};
+
+/**
+ * Sets the waypoint simplification applied to end of drive payloads. This overrides
+ * @{@link Zendrive.ZendriveConfiguration}.waypointSimplification.
+ *
+ * @param {Zendrive.ZendriveWaypointSimplification} simplification - null to send every waypoint.
+ */
+Zendrive.setWaypointSimplification = function (simplification, successCallback, errorCallback) {
+    exec(successCallback, errorCallback, "Zendrive", "setWaypointSimplification", [simplification]);
+};
+
+/**
+ * Converts the waypoints of a @{@link Zendrive.ZendriveDriveInfo} in any
+ * @{@link Zendrive.ZendriveWaypointEncoding} into an array of location points. Columnar and delta
+ * encoded points also carry a timestamp.
+ *
+ * @param {Object|Array} waypoints - driveInfo.waypoints as received.
+ * @returns {Array}
+ */
+Zendrive.decodeWaypoints = function (waypoints) {
+    if (null == waypoints || Array.isArray(waypoints)) {
+        return waypoints || [];
+    }
+    var points = [];
+    var count = waypoints.latitude.length;
+    var delta = (waypoints.encoding === "delta");
+    var latitude = 0, longitude = 0, timestamp = 0;
+    for (var i = 0; i < count; i++) {
+        if (delta) {
+            latitude += waypoints.latitude[i];
+            longitude += waypoints.longitude[i];
+            timestamp += waypoints.timestamp[i];
+            points.push({
+                latitude: latitude / waypoints.scale,
+                longitude: longitude / waypoints.scale,
+                timestamp: timestamp
+            });
+        } else {
+            points.push({
+                latitude: waypoints.latitude[i],
+                longitude: waypoints.longitude[i],
+                timestamp: waypoints.timestamp[i]
+            });
+        }
+    }
+    return points;
+};
+
 /*************************************************************************************************
 ********* Fairmatic Additions ********************************************************************
 **************************************************************************************************/
+/*
+ * Insurance period transitions (pickupPassenger, dropoffPassenger, acceptPassengerRequest,
+ * cancelPassengerRequest, goOnDuty, goOffDuty) run one at a time. A request made while another
+ * one waits replaces the waiting one; the replaced request completes with the newer one, its
+ * success callback receiving {coalesced: true, appliedAction, insurancePeriod} for the
+ * transition that was applied instead.
+ */
 Zendrive.pickupPassenger = function(successCallback, errorCallback) {
     exec(successCallback, errorCallback, "Zendrive", "pickupPassenger", []);
 	return true;
@@ -345,6 +727,12 @@ Zendrive.ZendriveConfiguration = function (applicationKey, driverId) {
      * @type {Zendrive.ZendriveDriveDetectionMode}
      */
     this.driveDetectionMode = Zendrive.ZendriveDriveDetectionMode.ZendriveDriveDetectionModeInsurance;
+
+    /**
+     * Optional simplification of the waypoints sent at the end of a drive. Android only.
+     * @type {Zendrive.ZendriveWaypointSimplification}
+     */
+    this.waypointSimplification = null;
 };
 
 /**